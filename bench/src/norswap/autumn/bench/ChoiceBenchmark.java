@@ -0,0 +1,87 @@
+package norswap.autumn.bench;
+
+import norswap.autumn.Autumn;
+import norswap.autumn.DSL;
+import norswap.autumn.ParseOptions;
+import norswap.autumn.ParseResult;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link norswap.autumn.parsers.Choice} as a function of its number of alternatives
+ * ({@link #width}). The alternatives are distinct keywords, and the input is a sequence of
+ * keywords picked uniformly at random, so that on average half of the alternatives are tried
+ * before finding the match.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ChoiceBenchmark
+{
+    // ---------------------------------------------------------------------------------------------
+
+    @Param({"2", "8", "32"})
+    public int width;
+
+    @Param("65536")
+    public int size;
+
+    // ---------------------------------------------------------------------------------------------
+
+    private final ParseOptions options = ParseOptions.well_formedness_check(false).get();
+
+    private DSL.rule root;
+    private String input;
+
+    // ---------------------------------------------------------------------------------------------
+
+    private static String keyword (int i) {
+        return String.format("k%02d;", i);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Setup
+    public void setup()
+    {
+        DSL dsl = new DSL();
+        Object[] alternatives = new Object[width];
+        for (int i = 0; i < width; ++i)
+            alternatives[i] = dsl.str(keyword(i));
+        root = dsl.choice(alternatives).at_least(0);
+
+        Random random = new Random(Corpora.SEED);
+        StringBuilder b = new StringBuilder(size + 4);
+        while (b.length() < size)
+            b.append(keyword(random.nextInt(width)));
+        input = b.toString();
+
+        ParseResult result = Autumn.parse(root, input, ParseOptions.get());
+        if (!result.full_match)
+            throw new IllegalStateException(result.toString());
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Benchmark public ParseResult choice (Throughput throughput)
+    {
+        throughput.bytes += input.length();
+        return Autumn.parse(root, input, options);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
@@ -0,0 +1,136 @@
+package norswap.autumn.bench;
+
+import norswap.utils.IO;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Deterministic benchmark inputs: generated JSON and XML documents, and Java files read from a
+ * directory (by default, the sources of Autumn itself).
+ */
+public final class Corpora
+{
+    // ---------------------------------------------------------------------------------------------
+
+    private Corpora() {}
+
+    // ---------------------------------------------------------------------------------------------
+
+    /** Default seed of the generated corpora. */
+    public static final long SEED = 42;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns a JSON document of at least {@code size} characters: an array of random values
+     * (objects, arrays, strings, numbers and constants) nested at most 4 levels deep.
+     */
+    public static String json (int size, long seed)
+    {
+        Random random = new Random(seed);
+        StringBuilder b = new StringBuilder(size + 1024);
+        b.append("[\n");
+        do {
+            if (b.length() > 2) b.append(",\n");
+            json_value(b, random, 0);
+        } while (b.length() < size);
+        b.append("\n]");
+        return b.toString();
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private static void json_value (StringBuilder b, Random random, int depth)
+    {
+        switch (random.nextInt(depth < 4 ? 7 : 5))
+        {
+            case 0: json_string(b, random); break;
+            case 1: b.append(random.nextInt(100_000)); break;
+            case 2: b.append(random.nextInt(1000)).append('.').append(random.nextInt(1000))
+                     .append("e-").append(random.nextInt(10)); break;
+            case 3: b.append(random.nextBoolean() ? "true" : "false"); break;
+            case 4: b.append("null"); break;
+            case 5:
+                b.append("[");
+                for (int i = random.nextInt(6); i > 0; --i) {
+                    json_value(b, random, depth + 1);
+                    if (i > 1) b.append(", ");
+                }
+                b.append("]");
+                break;
+            default:
+                b.append("{ ");
+                for (int i = random.nextInt(6); i > 0; --i) {
+                    json_string(b, random);
+                    b.append(": ");
+                    json_value(b, random, depth + 1);
+                    if (i > 1) b.append(", ");
+                }
+                b.append(" }");
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private static void json_string (StringBuilder b, Random random)
+    {
+        b.append('"');
+        for (int i = 1 + random.nextInt(12); i > 0; --i)
+            b.append(random.nextInt(20) == 0 ? "\\n" : "" + (char) ('a' + random.nextInt(26)));
+        b.append('"');
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns an XML document of at least {@code size} characters, made of nested tags (without
+     * attributes) and text.
+     */
+    public static String xml (int size, long seed)
+    {
+        Random random = new Random(seed);
+        StringBuilder b = new StringBuilder(size + 1024);
+        b.append("<root>\n");
+        while (b.length() < size)
+            xml_tag(b, random, 0);
+        b.append("</root>");
+        return b.toString();
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private static void xml_tag (StringBuilder b, Random random, int depth)
+    {
+        String name = "t" + random.nextInt(20);
+        b.append('<').append(name).append('>');
+        for (int i = random.nextInt(depth < 5 ? 5 : 1); i >= 0; --i) {
+            if (depth < 5 && random.nextInt(3) == 0)
+                xml_tag(b, random, depth + 1);
+            else
+                for (int j = 1 + random.nextInt(8); j > 0; --j)
+                    b.append("word").append(random.nextInt(100)).append(j > 1 ? " " : "\n");
+        }
+        b.append("</").append(name).append(">\n");
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the contents of the Java files under the given directory.
+     */
+    public static List<String> java (String directory) throws IOException
+    {
+        List<String> files = new ArrayList<>();
+        for (Path path: IO.glob("**/*.java", Paths.get(directory)))
+            files.add(IO.slurp("" + path));
+        if (files.isEmpty())
+            throw new IllegalArgumentException("no Java files in " + Paths.get(directory).toAbsolutePath());
+        return files;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
@@ -0,0 +1,192 @@
+package norswap.autumn.bench;
+
+import norswap.autumn.Autumn;
+import norswap.autumn.DSL;
+import norswap.autumn.ParseOptions;
+import norswap.autumn.ParseResult;
+import norswap.lang.java.Grammar;
+import norswap.lang.java.GrammarFast;
+import norswap.lang.java.GrammarTokens;
+import norswap.lang.java.JavaCorpus;
+import norswap.lang.java.Lexer;
+import norswap.lang.java.Token;
+import norswap.lang.json.JSON;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end benchmarks for the example grammars: JSON and XML on generated documents of {@link
+ * #size} characters (see {@link Corpora}), and the Java grammars on the Java files under {@link
+ * #java_corpus} (by default the sources of Autumn itself, relative to the working directory). If
+ * {@link #java_corpus} is {@code synthetic}, the Java grammars run on {@link #size} characters of
+ * generated files instead (see {@link JavaCorpus}).
+ *
+ * <p>{@code java_tokens} measures parsing with {@link GrammarTokens} over pre-lexed tokens, while
+ * throughput is still counted in characters of the original files.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GrammarBenchmarks
+{
+    // ---------------------------------------------------------------------------------------------
+
+    @Param("1048576")
+    public int size;
+
+    @Param("src")
+    public String java_corpus;
+
+    // ---------------------------------------------------------------------------------------------
+
+    private final ParseOptions options = ParseOptions.well_formedness_check(false).get();
+
+    private DSL.rule json;
+    private DSL.rule xml;
+    private DSL.rule java;
+    private DSL.rule java_fast;
+    private DSL.rule java_tokens;
+
+    private String json_input;
+    private String xml_input;
+    private List<String> java_inputs;
+    private List<List<Token>> token_inputs;
+    private long java_size;
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Setup
+    public void setup() throws IOException, ReflectiveOperationException
+    {
+        json = new JSON().root;
+        json_input = Corpora.json(size, Corpora.SEED);
+        check("json", json, json_input);
+
+        // SimpleXML lives in the default package, and so can't be imported.
+        Object simple_xml = Class.forName("SimpleXML").getConstructor().newInstance();
+        xml = (DSL.rule) simple_xml.getClass().getField("tag").get(simple_xml);
+        xml_input = Corpora.xml(size, Corpora.SEED);
+        check("xml", xml, xml_input);
+
+        java = new Grammar().root;
+        java_fast = new GrammarFast().root;
+        java_tokens = new GrammarTokens().root;
+        Autumn.parse(java, "class Test {}", ParseOptions.get());
+        Autumn.parse(java_fast, "class Test {}", ParseOptions.get());
+        Autumn.parse(java_tokens, Arrays.asList(new Lexer("class Test {}").lex()), ParseOptions.get());
+
+        java_inputs = new ArrayList<>();
+        token_inputs = new ArrayList<>();
+        java_size = 0;
+        int skipped = 0;
+
+        List<String> files = java_corpus.equals("synthetic")
+            ? JavaCorpus.files(size, Corpora.SEED)
+            : Corpora.java(java_corpus);
+
+        for (String input: files)
+        {
+            List<Token> tokens;
+            try {
+                tokens = Arrays.asList(new Lexer(input).lex());
+            } catch (RuntimeException e) {
+                tokens = null;
+            }
+
+            // Skip files that one of the grammars does not support, so that all Java benchmarks
+            // measure the same corpus.
+            if (tokens == null
+                    || !Autumn.parse(java, input, options).full_match
+                    || !Autumn.parse(java_fast, input, options).full_match
+                    || !Autumn.parse(java_tokens, tokens, options).full_match) {
+                ++ skipped;
+                continue;
+            }
+
+            java_inputs.add(input);
+            token_inputs.add(tokens);
+            java_size += input.length();
+        }
+
+        if (skipped > 0)
+            System.err.println("warning: skipped " + skipped + " Java files that failed to parse");
+
+        if (java_inputs.isEmpty())
+            throw new IllegalStateException("no parseable Java file in " + java_corpus);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private static void check (String name, DSL.rule rule, String input)
+    {
+        ParseResult result = Autumn.parse(rule, input, ParseOptions.get());
+        if (!result.full_match)
+            throw new IllegalStateException(name + ": " + result);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private void java (DSL.rule rule, Throughput throughput, Blackhole blackhole)
+    {
+        for (String input: java_inputs)
+            blackhole.consume(Autumn.parse(rule, input, options));
+        throughput.bytes += java_size;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Benchmark public ParseResult json (Throughput throughput)
+    {
+        throughput.bytes += json_input.length();
+        return Autumn.parse(json, json_input, options);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Benchmark public ParseResult xml (Throughput throughput)
+    {
+        throughput.bytes += xml_input.length();
+        return Autumn.parse(xml, xml_input, options);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Benchmark public void java_grammar (Throughput throughput, Blackhole blackhole) {
+        java(java, throughput, blackhole);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Benchmark public void java_grammar_fast (Throughput throughput, Blackhole blackhole) {
+        java(java_fast, throughput, blackhole);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Benchmark public void java_tokens (Throughput throughput, Blackhole blackhole)
+    {
+        for (List<Token> tokens: token_inputs)
+            blackhole.consume(Autumn.parse(java_tokens, tokens, options));
+        throughput.bytes += java_size;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
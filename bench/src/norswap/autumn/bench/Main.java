@@ -0,0 +1,72 @@
+package norswap.autumn.bench;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Entry point of the benchmark jar: runs the JMH benchmarks selected by the command line (all of
+ * them by default, any JMH option is accepted) with the GC profiler enabled, then prints a summary
+ * of the throughput (in MB/s of input, see {@link Throughput}), allocation rate (in MB/s) and
+ * allocation per operation (in bytes) of each benchmark.
+ */
+public final class Main
+{
+    // ---------------------------------------------------------------------------------------------
+
+    private Main() {}
+
+    // ---------------------------------------------------------------------------------------------
+
+    public static void main (String[] args) throws RunnerException, CommandLineOptionException
+    {
+        Options options = new OptionsBuilder()
+            .parent(new CommandLineOptions(args))
+            .addProfiler(GCProfiler.class)
+            .build();
+
+        Collection<RunResult> results = new Runner(options).run();
+
+        System.out.println();
+        System.out.println(String.format("%-60s %12s %14s %14s",
+            "Benchmark", "MB/s", "alloc MB/s", "alloc B/op"));
+
+        for (RunResult run: results)
+        {
+            String label = run.getParams().getBenchmark()
+                .replace(Main.class.getPackage().getName() + ".", "");
+            for (String key: run.getParams().getParamsKeys())
+                label += " " + key + "=" + run.getParams().getParam(key);
+
+            Map<String, Result> secondary = run.getSecondaryResults();
+            System.out.println(String.format("%-60s %12.1f %14.1f %14.0f", label,
+                score(secondary, "bytes") / 1e6,
+                score(secondary, "gc.alloc.rate"),
+                score(secondary, "gc.alloc.rate.norm")));
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the score of the secondary result whose label ends with {@code suffix} (profiler
+     * results are prefixed), or NaN if missing.
+     */
+    private static double score (Map<String, Result> results, String suffix)
+    {
+        for (Map.Entry<String, Result> entry: results.entrySet())
+            if (entry.getKey().endsWith(suffix))
+                return entry.getValue().getScore();
+        return Double.NaN;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
@@ -0,0 +1,140 @@
+package norswap.autumn.bench;
+
+import norswap.autumn.Autumn;
+import norswap.autumn.DSL;
+import norswap.autumn.ParseOptions;
+import norswap.autumn.ParseResult;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Micro-benchmarks for individual parser primitives, each parsing a repetitive input of {@link
+ * #size} characters.
+ *
+ * <ul>
+ * <li>{@code string_match}: repeated literal string ({@link DSL#str}).</li>
+ * <li>{@code char_predicate}: repeated character predicate ({@link DSL#cpred}).</li>
+ * <li>{@code repeat}: {@link norswap.autumn.parsers.Repeat} over {@link DSL#any}.</li>
+ * <li>{@code memo_hit}: every item is parsed twice, the second time from the memo table.</li>
+ * <li>{@code memo_miss}: every item is looked up once in the memo table, without ever hitting.</li>
+ * <li>{@code log_rollback}: every item pushes a value then backtracks, undoing the push.</li>
+ * </ul>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PrimitiveBenchmarks extends DSL
+{
+    // ---------------------------------------------------------------------------------------------
+
+    @Param("65536")
+    public int size;
+
+    // ---------------------------------------------------------------------------------------------
+
+    private final ParseOptions options = ParseOptions.well_formedness_check(false).get();
+
+    private String letters;
+    private String items;
+
+    // ---------------------------------------------------------------------------------------------
+
+    public rule string_match = str("abcdefgh").at_least(0);
+
+    public rule char_predicate = cpred(Character::isLetter).at_least(0);
+
+    public rule repeat = any.at_least(0);
+
+    public rule item = seq(alpha.at_least(1), ";");
+
+    public rule memo_item = item.memo();
+
+    public rule memo_hit = choice(seq(memo_item, "!"), memo_item).at_least(0);
+
+    public rule memo_miss = memo_item.at_least(0);
+
+    public rule pushed_item = item.as_val(true);
+
+    public rule log_rollback = choice(seq(pushed_item, "!"), item).at_least(0);
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Setup
+    public void setup()
+    {
+        StringBuilder b = new StringBuilder(size);
+        while (b.length() < size) b.append("abcdefgh");
+        letters = b.substring(0, size - size % 8);
+
+        b.setLength(0);
+        for (int i = 0; b.length() < size; ++i)
+            b.append((char) ('a' + i % 26)).append("bcdefg;");
+        items = b.toString();
+
+        // validate the benchmarks and run the well-formedness check once
+        check(string_match, letters);
+        check(char_predicate, letters);
+        check(repeat, letters);
+        check(memo_hit, items);
+        check(memo_miss, items);
+        check(log_rollback, items);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private static void check (rule rule, String input)
+    {
+        ParseResult result = Autumn.parse(rule, input, ParseOptions.get());
+        if (!result.full_match)
+            throw new IllegalStateException(result.toString());
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private ParseResult parse (rule rule, String input, Throughput throughput)
+    {
+        throughput.bytes += input.length();
+        return Autumn.parse(rule, input, options);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Benchmark public ParseResult string_match (Throughput throughput) {
+        return parse(string_match, letters, throughput);
+    }
+
+    @Benchmark public ParseResult char_predicate (Throughput throughput) {
+        return parse(char_predicate, letters, throughput);
+    }
+
+    @Benchmark public ParseResult repeat (Throughput throughput) {
+        return parse(repeat, letters, throughput);
+    }
+
+    @Benchmark public ParseResult memo_hit (Throughput throughput) {
+        return parse(memo_hit, items, throughput);
+    }
+
+    @Benchmark public ParseResult memo_miss (Throughput throughput) {
+        return parse(memo_miss, items, throughput);
+    }
+
+    @Benchmark public ParseResult log_rollback (Throughput throughput) {
+        return parse(log_rollback, items, throughput);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
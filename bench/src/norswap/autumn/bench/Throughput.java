@@ -0,0 +1,27 @@
+package norswap.autumn.bench;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Counts the input parsed by a benchmark. JMH reports {@link #bytes} as a rate (a secondary
+ * result), which {@link Main} converts to MB/s.
+ *
+ * <p>Inputs are measured in input positions (characters or tokens), which for the bundled corpora
+ * (ASCII text) are bytes. Token inputs are measured by the size of the text they were lexed from.
+ */
+@State(Scope.Thread)
+@AuxCounters(AuxCounters.Type.OPERATIONS)
+public class Throughput
+{
+    /** Size of the input parsed during the current iteration. */
+    public long bytes;
+
+    @Setup(Level.Iteration)
+    public void reset() {
+        bytes = 0;
+    }
+}
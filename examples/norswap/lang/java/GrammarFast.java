@@ -3,6 +3,7 @@ package norswap.lang.java;
 import norswap.autumn.DSL;
 import norswap.autumn.StackAction;
 import norswap.autumn.parsers.StringMatch;
+import norswap.autumn.util.CharClass;
 import norswap.lang.java.ast.*;
 import norswap.lang.java.ast.TypeDeclaration.Kind;
 import norswap.utils.NArrays;
@@ -15,16 +16,26 @@ import static norswap.lang.java.ast.UnaryOperator.*;
 
 public final class GrammarFast extends DSL
 {
+    /// CHARACTER CLASSES ==========================================================================
+
+    // Computed once, as converting a predicate tests every code point.
+
+    private static final CharClass WHITESPACE =
+        CharClass.of(Character::isWhitespace);
+    private static final CharClass ID_START =
+        CharClass.of(Character::isJavaIdentifierStart);
+    private static final CharClass ID_PART =
+        CharClass.of(c -> c != 0 && Character.isJavaIdentifierPart(c));
+
     /// LEXICAL ====================================================================================
 
     // Whitespace ----------------------------------------------------------------------------------
 
-    public rule space_char          = cpred(Character::isWhitespace);
+    public rule space_char          = cpred(WHITESPACE);
     public rule not_line            = seq(str("\n").not(), any);
-    public rule line_comment        = seq("//", not_line.at_least(0), str("\n").opt());
-
+    public rule line_comment        = seq("//", scan_until("\n"), str("\n").opt());
     public rule not_comment_term    = seq(str("*/").not(), any);
-    public rule multi_comment       = seq("/*", not_comment_term.at_least(0), "*/");
+    public rule multi_comment       = seq("/*", scan_until("*/"), "*/");
 
     public rule whitespace          = choice(space_char, line_comment, multi_comment);
 
@@ -145,8 +156,8 @@ public final class GrammarFast extends DSL
 
     // Identifiers ---------------------------------------------------------------------------------
 
-    public rule id_start    = cpred(Character::isJavaIdentifierStart);
-    public rule id_part     = cpred(c -> c != 0 && Character.isJavaIdentifierPart(c));
+    public rule id_start    = cpred(ID_START);
+    public rule id_part     = cpred(ID_PART);
 
     public rule keywords = choice(NArrays.map(NArrays.array(
         _boolean, _byte, _char, _double, _float, _long, _short, _void, _abstract, _default,
@@ -0,0 +1,183 @@
+package norswap.lang.java;
+
+import norswap.autumn.DSL;
+import norswap.autumn.Parser;
+import norswap.autumn.parsers.Collect;
+import norswap.autumn.parsers.Repeat;
+import norswap.autumn.parsers.Sequence;
+import norswap.autumn.parsers.TokenParser;
+import norswap.autumn.visitors.InputGenerator;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates synthetic Java files for benchmarks and regression tests, using an {@link
+ * InputGenerator} configured for {@link Grammar}.
+ *
+ * <p>Identifiers, literals and whitespace are picked from fixed lists, and the weights favor
+ * common constructs (e.g. method declarations over nested types), so that the files vaguely look
+ * like real code. The files are syntactically valid but meaningless. The same seed always
+ * yields the same files.
+ */
+public final class JavaCorpus
+{
+    // ---------------------------------------------------------------------------------------------
+
+    private JavaCorpus() {}
+
+    // ---------------------------------------------------------------------------------------------
+
+    /** Target size of each generated file. */
+    public static final int FILE_SIZE = 8192;
+
+    // ---------------------------------------------------------------------------------------------
+
+    private static final String[] NAMES = {
+        "a", "b", "i", "j", "n", "x", "y", "id", "key", "value", "count", "size", "name", "list",
+        "map", "node", "item", "index", "result", "buffer", "parser", "input", "output", "left",
+        "right", "get", "set", "add", "run", "apply", "visit", "parse", "String", "Object",
+        "List", "Map", "Node", "Parser", "Result", "Foo", "Bar", "T", "E" };
+
+    private static final String[] WORDS = {
+        "", "a", "hello", "world", "foo bar", "%d items", "\\n", "\\\"quoted\\\"", "x = " };
+
+    private static final String[] WHITESPACE = {
+        " ", " ", " ", " ", " ", " ", " ", " ", " ", " ", " ", " ", "\n", "\n    ",
+        " /* comment */ ", " // comment\n" };
+
+    // ---------------------------------------------------------------------------------------------
+
+    private static String pick (Random random, String[] strings) {
+        return strings[random.nextInt(strings.length)];
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the parser under a list-building rule, e.g. the repetition in {@code
+     * stmt.at_least(0).collect()}.
+     */
+    private static Parser unwrap (DSL.rule rule)
+    {
+        Parser parser = rule.get();
+        return parser instanceof Collect ? ((Collect) parser).child : parser;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the parser underlying a token rule, which is also the parser referenced by token
+     * choices (e.g. {@link Grammar#literal}).
+     */
+    private static Parser token (DSL.rule rule)
+    {
+        Parser parser = rule.get();
+        return parser instanceof TokenParser ? ((TokenParser) parser).target : parser;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns a generator for {@code grammar}.root, using the given seed.
+     */
+    public static InputGenerator generator (Grammar grammar, long seed)
+    {
+        Grammar g = grammar;
+
+        // literal = token_choice(...).word().push(...)
+        Parser literal = ((Sequence) ((Collect) g.literal.get()).child).children().get(0);
+        // type = seq(stem_type, type_dim_suffix.opt())
+        Parser type_dims = ((Sequence) g.type.get()).children().get(1);
+
+        InputGenerator generator = new InputGenerator(seed)
+            .max_depth(3)
+            .max_repeat(2)
+
+            // lexical
+            .override(g.ws.get(), random -> pick(random, WHITESPACE))
+            .override(g.iden.get(), random -> pick(random, NAMES) + " ")
+            .override(token(g.integer_literal), random -> "" + random.nextInt(1000))
+            .override(token(g.float_literal), random -> random.nextInt(100) + "." + random.nextInt(10))
+            .override(token(g.char_literal), random -> "'" + (char) ('a' + random.nextInt(26)) + "'")
+            .override(token(g.string_literal), random -> "\"" + pick(random, WORDS) + "\"")
+
+            // types
+            .max_repeat(unwrap(g.annotations), 0)
+            .max_repeat(unwrap(g.dims), 0)
+            .max_repeat(unwrap(g.dims1), 0)
+            .weights(type_dims, 8, 1)
+            .weights(unwrap(g.opt_type_args), 8, 1)
+            .weights(unwrap(g.type_params), 8, 1)
+            .weights(unwrap(g.extends_clause), 3, 1)
+            .weights(unwrap(g.implements_clause), 3, 1)
+            .weights(unwrap(g.throws_clause), 3, 1)
+            .max_repeat(g.type_union_syntax.get(), 1)
+
+            // declarations
+            .max_repeat(unwrap(g.import_decls), 6)
+            .min_repeat(unwrap(g.type_decls), 1)
+            .max_repeat(unwrap(g.type_decls), 1)
+            .weights(((Repeat) unwrap(g.type_decls)).child, 20, 1)
+            .max_repeat(unwrap(g.class_body_decls), 12)
+            .weights(g.class_body_decl.get(), 20, 1, 1)
+            .weights(g.modifier.get(), 1, 8)
+            .weights(g.type_decl_suffix.get(), 8, 2, 2, 1)
+            .weights(g.formal_param_suffix.get(), 10, 0, 1)
+            .min_repeat(unwrap(g.catch_parameter_types), 1)
+
+            // statements
+            .max_repeat(unwrap(g.statements), 8)
+            .weights(g.stmt.get(),
+                1,   // block
+                3,   // if
+                1,   // basic for
+                1,   // enhanced for
+                1,   // while
+                0.5, // do while
+                1,   // try
+                0.5, // switch
+                0.2, // synchronized
+                2,   // return
+                0.5, // throw
+                0.5, // break
+                0.5, // continue
+                0.2, // assert
+                0.1, // empty statement
+                6,   // expression statement
+                0.1, // labelled statement
+                5,   // variable declaration
+                0.1) // type declaration
+
+            // expressions
+            .weights(g.var_init.get(), 10, 1)
+            .weights(g.prefix_expr.get(), 1, 1, 20)
+            .weights(g.primary_expr.get(), 0.3, 1, 0.3, 1, 0.3, 6, 0.5, 0.2, 4)
+            .weights(literal, 4, 3, 1, 1, 1, 1, 1)
+            .weights(g.postfix_expr.get(), 4, 3, 0.2, 0.2, 0.2, 1, 0.5, 0.5, 0.2)
+            .weights(g.order_expr.get(), 4, 1);
+
+        // at most one operator, on a few precedence levels only
+        for (DSL.rule rule: new DSL.rule[] {
+                g.mult_expr, g.shift_expr, g.binary_and_expr, g.xor_expr, g.binary_or_expr,
+                g.conditional_or_expr, g.ternary_expr })
+            generator.max_repeat(rule.get(), 0);
+        for (DSL.rule rule: new DSL.rule[] {
+                g.add_expr, g.order_expr, g.eq_expr, g.conditional_and_expr, g.expr })
+            generator.max_repeat(rule.get(), 1);
+
+        return generator;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns generated Java files whose total size is at least {@code size} characters.
+     */
+    public static List<String> files (long size, long seed)
+    {
+        Grammar grammar = new Grammar();
+        return generator(grammar, seed).corpus(grammar.root.get(), size, FILE_SIZE);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
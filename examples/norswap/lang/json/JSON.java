@@ -5,7 +5,7 @@ import norswap.autumn.DSL;
 import norswap.autumn.ParseOptions;
 import norswap.autumn.ParseResult;
 import java.util.Arrays;
-import java.util.stream.Collectors;
+import java.util.HashMap;
 
 /**
  * https://www.json.org/
@@ -63,16 +63,17 @@ public final class JSON extends DSL
         word("null")  .as_val(null)));
 
     public rule pair =
-        seq(string, ":", value)
+        seq(string, word(":"), value)
         .push(xs -> xs);
 
     public rule object =
-        seq("{", pair.sep(0, ","), "}")
-        .push(xs ->
-            Arrays.stream((Object[][]) xs).collect(Collectors.toMap(x -> (String) x[0], x -> x[1])));
+        seq(word("{"), pair.sep(0, word(",")), word("}"))
+        .push(xs -> Arrays.stream(xs)
+            .map(x -> (Object[]) x)
+            .collect(HashMap::new, (map, x) -> map.put((String) x[0], x[1]), HashMap::putAll));
 
     public rule array =
-        seq("[", value.sep(0, ","), "]")
+        seq(word("["), value.sep(0, word(",")), word("]"))
         .collect().as_list(Object.class);
 
     public rule root = seq(ws, value);
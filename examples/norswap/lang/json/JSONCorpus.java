@@ -0,0 +1,66 @@
+package norswap.lang.json;
+
+import norswap.autumn.Parser;
+import norswap.autumn.parsers.LazyParser;
+import norswap.autumn.visitors.InputGenerator;
+import java.util.List;
+
+/**
+ * Generates synthetic JSON documents for benchmarks and regression tests, using an {@link
+ * InputGenerator} configured for {@link JSON}.
+ *
+ * <p>Strings are short and mostly made of plain characters, and numbers have neither leading
+ * zeroes (which {@link JSON#integer} does not accept) nor huge exponents. The same seed always
+ * yields the same documents.
+ */
+public final class JSONCorpus
+{
+    // ---------------------------------------------------------------------------------------------
+
+    private JSONCorpus() {}
+
+    // ---------------------------------------------------------------------------------------------
+
+    /** Target size of each top-level value in {@link #document}. */
+    public static final int VALUE_SIZE = 512;
+
+    // ---------------------------------------------------------------------------------------------
+
+    private static final String[] WHITESPACE = { "", " ", " ", " ", " ", " ", "\n", "\n  " };
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns a generator for {@code json}.root, using the given seed.
+     */
+    public static InputGenerator generator (JSON json, long seed)
+    {
+        Parser value = ((LazyParser) json.value.get()).child();
+
+        return new InputGenerator(seed)
+            .max_depth(5)
+            .max_repeat(6)
+            .override(json.ws.get(), random -> WHITESPACE[random.nextInt(WHITESPACE.length)])
+            .override(json.integer.get(), random -> "" + random.nextInt(100_000))
+            .override(json.fractional.get(), random -> "." + random.nextInt(1000))
+            .override(json.exponent.get(),
+                random -> (random.nextBoolean() ? "e" : "e-") + random.nextInt(20))
+            .weights(json.string_char.get(), 40, 1, 1)
+            // string, number, object, array, true, false, null
+            .weights(value, 4, 4, 1, 1, 0.5, 0.5, 0.5);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns a JSON document of at least {@code size} characters: an array of generated values.
+     */
+    public static String document (long size, long seed)
+    {
+        JSON json = new JSON();
+        List<String> values = generator(json, seed).corpus(json.root.get(), size, VALUE_SIZE);
+        return "[\n" + String.join(",\n", values) + "\n]";
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
@@ -1,11 +1,31 @@
 package norswap.autumn;
 
+import norswap.autumn.input.InputSource;
+import norswap.autumn.input.MappedInput;
+import norswap.autumn.parsers.CompiledParser;
+import norswap.autumn.visitors.ChoiceDispatcher;
+import norswap.utils.ArrayListLong;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
 
 import static java.util.Objects.requireNonNull;
 
 /**
- * This class holds the {@code run} methods, which are the entry points to start a parse.
+ * This class holds the {@code run} methods, which are the entry points to start a parse, the
+ * {@code parse_all} methods, which parse batches of inputs in parallel, as well as the {@code
+ * compile} methods, which can be used to speed up the parsers passed to them, and
+ * other optimization passes.
  */
 public final class Autumn
 {
@@ -40,11 +60,26 @@ public final class Autumn
      */
     public static ParseResult parse (Parser parser, String string, ParseOptions options)
     {
-        requireNonNull(parser,  "Parser cannot be null.");
         requireNonNull(string,  "Input string cannot be null.");
+        return parse(parser, InputSource.of(string), options);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Parses {@code input} with {@code parser} and the given parse options.
+     *
+     * <p>This lets you pick the representation of the input, see {@link InputSource}.
+     *
+     * <p>Use {@code ParseOptions.get()} to get a default set of options.
+     */
+    public static ParseResult parse (Parser parser, InputSource input, ParseOptions options)
+    {
+        requireNonNull(parser,  "Parser cannot be null.");
+        requireNonNull(input,   "Input source cannot be null.");
         requireNonNull(options, "Parse options cannot be null.");
         try {
-            return Parse.run(parser, string, null, options);
+            return Parse.run(parser, input, null, options);
         } catch (StackOverflowError e) {
             throw new PotentiallyMalformedGrammarError(e);
         }
@@ -52,6 +87,27 @@ public final class Autumn
 
     // ---------------------------------------------------------------------------------------------
 
+    /**
+     * Parses the UTF-8 file at {@code path} with {@code parser} and the given parse options.
+     *
+     * <p>The file is memory-mapped and parsed in place, without being read into the heap. Positions
+     * in the result are byte offsets in the file: see {@link MappedInput} for the implications.
+     * To translate these into line/column positions, map the file yourself using {@link
+     * MappedInput#map}, pass it to {@link #parse(Parser, InputSource, ParseOptions)} and build a
+     * {@link LineMap} over the same input.
+     *
+     * <p>Use {@code ParseOptions.get()} to get a default set of options.
+     *
+     * @throws java.io.UncheckedIOException if the file cannot be opened or mapped.
+     */
+    public static ParseResult parse (Parser parser, Path path, ParseOptions options)
+    {
+        requireNonNull(path, "Input path cannot be null.");
+        return parse(parser, MappedInput.map(path), options);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
     /**
      * Parses {@code list} with {@code parser} and the given parse options.
      *
@@ -95,5 +151,355 @@ public final class Autumn
         return parse(rule.get(), list, options);
     }
 
+    /**
+     * Parses {@code input} with {@code rule} and the given parse options.
+     *
+     * <p>Use {@code ParseOptions.get()} to get a default set of options.
+     */
+    public static ParseResult parse (DSL.rule rule, InputSource input, ParseOptions options)
+    {
+        requireNonNull(rule, "Rule cannot be null.");
+        return parse(rule.get(), input, options);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Parses the UTF-8 file at {@code path} with {@code rule} and the given parse options.
+     *
+     * @see #parse(Parser, Path, ParseOptions)
+     */
+    public static ParseResult parse (DSL.rule rule, Path path, ParseOptions options)
+    {
+        requireNonNull(rule, "Rule cannot be null.");
+        return parse(rule.get(), path, options);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Maximum number of inputs parsed ahead of the input whose result is being delivered, per
+     * available processor.
+     */
+    private static final int BATCH_WINDOW = 4;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Parses each string of {@code inputs} with {@code parser} and the given parse options. The
+     * parses run in parallel on {@code executor} (or the common {@link ForkJoinPool} if null),
+     * and their results are returned in input order.
+     *
+     * <p>The grammar's well-formedness is checked only once, before starting (if enabled in the
+     * options). The parsers must not hold state outside of {@link ParseState}.
+     *
+     * <p>An exception that is not caught by a parse (e.g. a failure to read an input), or a stack
+     * overflow (reported as a {@link PotentiallyMalformedGrammarError}), does not abort the batch:
+     * it is reported in the {@link ParseResult#thrown} field of that input's result, which counts
+     * as a failure. Other errors (e.g. {@link OutOfMemoryError}) abort the batch, and are thrown
+     * by this method.
+     *
+     * <p>Use {@code ParseOptions.get()} to get a default set of options.
+     */
+    public static BatchResult parse_all
+            (Parser parser, List<String> inputs, ParseOptions options, Executor executor)
+    {
+        requireNonNull(inputs, "Input list cannot be null.");
+        return parse_batch(parser,
+            inputs.stream().map(s -> () -> new BatchInput(InputSource.of(s), utf8_length(s))),
+            options, executor, null);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Parses each UTF-8 file of {@code paths} with {@code parser} and the given parse options,
+     * as per {@link #parse(Parser, Path, ParseOptions)}. The files are mapped and parsed in
+     * parallel on {@code executor} (or the common {@link ForkJoinPool} if null), and their results
+     * are returned in input order.
+     *
+     * @see #parse_all(Parser, List, ParseOptions, Executor)
+     */
+    public static BatchResult parse_all
+            (Parser parser, Stream<Path> paths, ParseOptions options, Executor executor)
+    {
+        requireNonNull(paths, "Path stream cannot be null.");
+        return parse_batch(parser, paths.map(Autumn::map_batch_input), options, executor, null);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Like {@link #parse_all(Parser, Stream, ParseOptions, Executor)}, but passes the results to
+     * {@code consumer} (on the calling thread, in input order) instead of retaining them. Only a
+     * bounded number of files are parsed ahead of the file whose result is being consumed.
+     *
+     * <p>The {@link BatchResult#results} list of the returned object is empty.
+     */
+    public static BatchResult parse_all (Parser parser, Stream<Path> paths, ParseOptions options,
+            Executor executor, Consumer<ParseResult> consumer)
+    {
+        requireNonNull(paths,    "Path stream cannot be null.");
+        requireNonNull(consumer, "Consumer cannot be null.");
+        return parse_batch(parser, paths.map(Autumn::map_batch_input), options, executor, consumer);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Parses each string of {@code inputs} with {@code rule}, as per {@link #parse_all(Parser,
+     * List, ParseOptions, Executor)}.
+     */
+    public static BatchResult parse_all
+            (DSL.rule rule, List<String> inputs, ParseOptions options, Executor executor)
+    {
+        requireNonNull(rule, "Rule cannot be null.");
+        return parse_all(rule.get(), inputs, options, executor);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Parses each file of {@code paths} with {@code rule}, as per {@link #parse_all(Parser,
+     * Stream, ParseOptions, Executor)}.
+     */
+    public static BatchResult parse_all
+            (DSL.rule rule, Stream<Path> paths, ParseOptions options, Executor executor)
+    {
+        requireNonNull(rule, "Rule cannot be null.");
+        return parse_all(rule.get(), paths, options, executor);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /** An input of a batch, with its size in bytes (see {@link BatchResult#sizes}). */
+    private static final class BatchInput
+    {
+        final InputSource input;
+        final long size;
+
+        BatchInput (InputSource input, long size) {
+            this.input = input;
+            this.size = size;
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns a supplier that maps the UTF-8 file at {@code path}, whose size is its length in
+     * bytes.
+     */
+    private static Supplier<BatchInput> map_batch_input (Path path)
+    {
+        return () -> {
+            MappedInput input = MappedInput.map(path);
+            return new BatchInput(input, input.length());
+        };
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the number of bytes in the UTF-8 encoding of {@code string}, without encoding it.
+     */
+    private static long utf8_length (String string)
+    {
+        long length = 0;
+        for (int i = 0; i < string.length(); ++i) {
+            char c = string.charAt(i);
+            length += c < 0x80 ? 1 : c < 0x800 || Character.isSurrogate(c) ? 2 : 3;
+        }
+        return length;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /** A parse result with its measurements. */
+    private static final class Timed
+    {
+        final ParseResult result;
+        final long time;
+        final long size;
+
+        Timed (ParseResult result, long time, long size) {
+            this.result = result;
+            this.time = time;
+            this.size = size;
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Implements the {@code parse_all} methods. If {@code consumer} is null, the results are
+     * retained in the returned object.
+     */
+    private static BatchResult parse_batch (Parser parser, Stream<Supplier<BatchInput>> inputs,
+            ParseOptions options, Executor executor, Consumer<ParseResult> consumer)
+    {
+        requireNonNull(parser,  "Parser cannot be null.");
+        requireNonNull(options, "Parse options cannot be null.");
+        Executor exec = executor != null ? executor : ForkJoinPool.commonPool();
+
+        if (options.well_formedness_check)
+            Parse.check_well_formed(parser);
+
+        long t0 = System.nanoTime();
+        int window = BATCH_WINDOW * Runtime.getRuntime().availableProcessors();
+        ArrayDeque<CompletableFuture<Timed>> pending = new ArrayDeque<>();
+        ArrayList<ParseResult> results = new ArrayList<>();
+        ArrayListLong times = new ArrayListLong();
+        ArrayListLong sizes = new ArrayListLong();
+        int failures = 0;
+
+        Iterator<Supplier<BatchInput>> it = inputs.iterator();
+        while (it.hasNext() || !pending.isEmpty())
+        {
+            if (it.hasNext() && pending.size() < window) {
+                Supplier<BatchInput> input = it.next();
+                pending.add(CompletableFuture.supplyAsync(
+                    () -> parse_timed(parser, input, options), exec));
+                continue;
+            }
+
+            Timed timed = join(pending.remove());
+            times.add(timed.time);
+            sizes.add(timed.size);
+            if (!timed.result.full_match) ++ failures;
+            if (consumer != null)
+                consumer.accept(timed.result);
+            else
+                results.add(timed.result);
+        }
+
+        long[] times_array = new long[times.size()];
+        long[] sizes_array = new long[sizes.size()];
+        for (int i = 0; i < times_array.length; ++i) {
+            times_array[i] = times.get(i);
+            sizes_array[i] = sizes.get(i);
+        }
+
+        return new BatchResult(results, times_array, sizes_array, failures,
+            System.nanoTime() - t0);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Parses {@code input} with {@code parser}, initializing the parse states with {@code states},
+     * keeping track of the examined input ({@link Parse#track_examined}) and skipping the
+     * well-formedness check. Used by {@link IncrementalParse}.
+     */
+    static ParseResult reparse (Parser parser, InputSource input, ParseOptions options,
+            Map<Object, Object> states)
+    {
+        try {
+            return Parse.run_unchecked(parser, input, null, options, states, true);
+        } catch (StackOverflowError e) {
+            throw new PotentiallyMalformedGrammarError(e);
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Parses a single input of a batch. Exceptions thrown while reading the input or parsing it,
+     * as well as stack overflows, are caught and reported in the result (see {@link
+     * ParseResult#thrown}), so that they do not abort the rest of the batch. Other errors (e.g.
+     * {@link OutOfMemoryError}) are not caught, and abort the batch.
+     */
+    private static Timed parse_timed (Parser parser, Supplier<BatchInput> supplier,
+            ParseOptions options)
+    {
+        long t0 = System.nanoTime();
+        long size = 0;
+        try {
+            BatchInput input = supplier.get();
+            size = input.size;
+            t0 = System.nanoTime();
+            ParseResult result = Parse.run_unchecked(parser, input.input, null, options);
+            return new Timed(result, System.nanoTime() - t0, size);
+        } catch (StackOverflowError e) {
+            return new Timed(ParseResult.failed(parser, options,
+                new PotentiallyMalformedGrammarError(e)), System.nanoTime() - t0, size);
+        } catch (Exception e) {
+            return new Timed(ParseResult.failed(parser, options, e), System.nanoTime() - t0,
+                size);
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Waits for the completion of {@code future}, rethrowing the exception that caused it to
+     * complete exceptionally, if any.
+     */
+    private static <T> T join (CompletableFuture<T> future)
+    {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Error) throw (Error) cause;
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            throw e;
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Compiles {@code parser} into a {@link CompiledParser}, which matches the same thing but
+     * avoids most of the per-invocation overhead of {@link Parser#parse}. See {@link
+     * ParserCompiler} for details.
+     *
+     * <p>The parser graph must be fully built before being compiled.
+     */
+    public static CompiledParser compile (Parser parser)
+    {
+        requireNonNull(parser, "Parser cannot be null.");
+        return new ParserCompiler().compile(parser);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Compiles the parser of {@code rule}, as per {@link #compile(Parser)}.
+     */
+    public static CompiledParser compile (DSL.rule rule)
+    {
+        requireNonNull(rule, "Rule cannot be null.");
+        return compile(rule.get());
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Installs first-character dispatch tables on all {@link norswap.autumn.parsers.Choice}
+     * parsers reachable through {@code parser}, letting them skip the alternatives that cannot
+     * match the next input character. See {@link ChoiceDispatcher} for details.
+     *
+     * <p>The parser graph must be fully built before calling this, and this must be called before
+     * {@link #compile(Parser)}.
+     */
+    public static void dispatch_choices (Parser parser)
+    {
+        requireNonNull(parser, "Parser cannot be null.");
+        new ChoiceDispatcher().dispatch(parser);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Installs first-character dispatch tables on the parser of {@code rule}, as per {@link
+     * #dispatch_choices(Parser)}.
+     */
+    public static void dispatch_choices (DSL.rule rule)
+    {
+        requireNonNull(rule, "Rule cannot be null.");
+        dispatch_choices(rule.get());
+    }
+
     // ---------------------------------------------------------------------------------------------
-}
\ No newline at end of file
+}
@@ -0,0 +1,128 @@
+package norswap.autumn;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The results of a batch of parses, returned by one of the {@link Autumn} {@code parse_all}
+ * methods.
+ *
+ * <p>All arrays (and {@link #results}, if the results were retained) are indexed by the position of
+ * the input in the batch.
+ */
+public final class BatchResult
+{
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * The results of the parses, in input order, or an empty list if the results were passed to a
+     * consumer instead.
+     *
+     * <p>If reading or parsing an input threw an exception that the parse did not catch, the result
+     * for that input is unsuccessful and holds the exception in {@link ParseResult#thrown}. If the
+     * input could not be read, its size is 0.
+     */
+    public final List<ParseResult> results;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * The time taken by each parse, in nanoseconds (excluding the time taken to read the input).
+     */
+    public final long[] parse_times;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * The size of each input in bytes: the size of the file for files, and the size of the UTF-8
+     * encoding of the string for strings.
+     */
+    public final long[] sizes;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * The number of inputs that were not fully matched ({@link ParseResult#full_match}).
+     */
+    public final int failures;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * The wall-clock time taken by the whole batch, in nanoseconds.
+     */
+    public final long wall_time;
+
+    // ---------------------------------------------------------------------------------------------
+
+    BatchResult (List<ParseResult> results, long[] parse_times, long[] sizes, int failures,
+            long wall_time)
+    {
+        this.results = Collections.unmodifiableList(results);
+        this.parse_times = parse_times;
+        this.sizes = sizes;
+        this.failures = failures;
+        this.wall_time = wall_time;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * The number of inputs in the batch.
+     */
+    public int size() {
+        return sizes.length;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * The sum of the sizes of all inputs (see {@link #sizes}).
+     */
+    public long total_size()
+    {
+        long total = 0;
+        for (long size: sizes) total += size;
+        return total;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * The sum of the times taken by each parse, in nanoseconds. When parsing in parallel, this is
+     * usually larger than {@link #wall_time}.
+     */
+    public long total_parse_time()
+    {
+        long total = 0;
+        for (long time: parse_times) total += time;
+        return total;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * The aggregate throughput of the batch, in megabytes (10^6 bytes, see {@link #sizes}) per
+     * second of wall-clock time.
+     */
+    public double throughput() {
+        return wall_time == 0 ? 0 : total_size() * 1e3 / wall_time;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public String toString()
+    {
+        return "BatchResult{" +
+            "inputs: " + size() +
+            ", failures: " + failures +
+            ", size: " + String.format("%,d", total_size()) +
+            ", wall: " + Duration.ofNanos(wall_time) +
+            ", parse: " + Duration.ofNanos(total_parse_time()) +
+            ", throughput: " + String.format("%.2f MB/s", throughput()) +
+            '}';
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
@@ -2,6 +2,8 @@ package norswap.autumn;
 
 import norswap.autumn.memo.*;
 import norswap.autumn.parsers.*;
+import norswap.autumn.util.CharClass;
+import norswap.autumn.util.SplitScanner;
 import norswap.utils.NArrays;
 import norswap.utils.Slot;
 import norswap.utils.Util;
@@ -10,6 +12,7 @@ import java.lang.reflect.Modifier;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.function.BinaryOperator;
 import java.util.function.Function;
 import java.util.function.IntPredicate;
 import java.util.function.Predicate;
@@ -397,6 +400,27 @@ public class DSL
 
     // ---------------------------------------------------------------------------------------------
 
+    /**
+     * Returns a {@link ScanUntil} parser that consumes input up to (but excluding) the first
+     * occurrence of {@code terminator}, or up to the end of the input.
+     */
+    public rule scan_until (String terminator) {
+        return new rule(new ScanUntil(terminator));
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns a {@link ScanUntil} parser that consumes input up to (but excluding) the first
+     * character matched by the {@link CharPredicate} parser {@code stop} that is not preceded by
+     * the {@code escape} character (-1 for none), or up to the end of the input.
+     */
+    public rule scan_until (Object stop, int escape) {
+        return new rule(new ScanUntil(char_predicate(stop), escape));
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
     /**
      * A {@link CharPredicate} that matches a single character.
      */
@@ -442,6 +466,81 @@ public class DSL
 
     // ---------------------------------------------------------------------------------------------
 
+    /**
+     * Returns a {@link CharPredicate} parser that matches the characters matched by any of the
+     * given {@link CharPredicate} parsers.
+     *
+     * <p>If all the parsers use a {@link CharClass}, so does the result.
+     */
+    public rule char_union (Object... parsers) {
+        return char_algebra("|", parsers, CharClass::union, IntPredicate::or);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns a {@link CharPredicate} parser that matches the characters matched by all the
+     * given {@link CharPredicate} parsers.
+     *
+     * <p>If all the parsers use a {@link CharClass}, so does the result.
+     */
+    public rule char_inter (Object... parsers) {
+        return char_algebra("&", parsers, CharClass::intersection, IntPredicate::and);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns a {@link CharPredicate} parser that matches the characters not matched by the
+     * given {@link CharPredicate} parser, excluding the nul character (which stands for the end
+     * of the input).
+     *
+     * <p>If the parser uses a {@link CharClass}, so does the result.
+     */
+    public rule char_not (Object parser)
+    {
+        CharPredicate pred = char_predicate(parser);
+        IntPredicate predicate = pred.char_class != null
+            ? pred.char_class.negate()
+            : pred.predicate.negate().and(c -> c != 0);
+        return new rule(new CharPredicate("[^" + pred + "]", predicate));
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private CharPredicate char_predicate (Object parser)
+    {
+        Parser p = compile(parser);
+        if (!(p instanceof CharPredicate))
+            throw new IllegalArgumentException("not a CharPredicate parser: " + p);
+        return (CharPredicate) p;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private rule char_algebra (String sep, Object[] parsers,
+            BinaryOperator<CharClass> class_op, BinaryOperator<IntPredicate> pred_op)
+    {
+        if (parsers.length == 0)
+            throw new IllegalArgumentException("no parsers given");
+
+        CharPredicate[] preds = NArrays.map(parsers, new CharPredicate[0], this::char_predicate);
+        boolean classes = Arrays.stream(preds).allMatch(p -> p.char_class != null);
+        IntPredicate predicate = classes ? preds[0].char_class : preds[0].predicate;
+        StringBuilder name = new StringBuilder("[").append(preds[0]);
+
+        for (int i = 1; i < preds.length; ++i) {
+            predicate = classes
+                ? class_op.apply((CharClass) predicate, preds[i].char_class)
+                : pred_op.apply(predicate, preds[i].predicate);
+            name.append(" ").append(sep).append(" ").append(preds[i]);
+        }
+
+        return new rule(new CharPredicate(name.append("]").toString(), predicate));
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
     /**
      * Returns an {@link ObjectPredicate} parser with name "opred".
      */
@@ -893,6 +992,30 @@ public class DSL
 
         // -----------------------------------------------------------------------------------------
 
+        /**
+         * Returns a {@link SplitRepeat} parser that matches at least {@code min} repetition of the
+         * parser, separated by the {@code separator} parser, like {@link #sep}, but parses large
+         * repetitions in parallel, using {@code scanner} to find the boundaries between items.
+         */
+        public rule sep_split (int min, Object separator, SplitScanner scanner) {
+            return new rule(new SplitRepeat(min, parser, compile(separator), scanner,
+                SplitRepeat.DEFAULT_CHUNK_SIZE, null));
+        }
+
+        // -----------------------------------------------------------------------------------------
+
+        /**
+         * Returns a {@link SplitRepeat} parser that matches at least {@code min} times the parser,
+         * like {@link #at_least}, but parses large repetitions in parallel, using {@code scanner}
+         * to find the boundaries between items.
+         */
+        public rule at_least_split (int min, SplitScanner scanner) {
+            return new rule(new SplitRepeat(min, parser, null, scanner,
+                SplitRepeat.DEFAULT_CHUNK_SIZE, null));
+        }
+
+        // -----------------------------------------------------------------------------------------
+
         /**
          * Returns a {@link Sequence} composed of the parser followed by the whitespace parser
          * {@link #ws}.
@@ -903,6 +1026,17 @@ public class DSL
 
         // -----------------------------------------------------------------------------------------
 
+        /**
+         * Returns a {@link Cut} wrapping the parser: after the parser succeeds, the enclosing
+         * choice won't try its other alternatives, and the parse is committed if no backtracking is
+         * possible anymore.
+         */
+        public rule cut() {
+            return new rule(new Cut(parser));
+        }
+
+        // -----------------------------------------------------------------------------------------
+
         /**
          * Returns a {@link GuardedRecursion} wrapping the parser.
          */
@@ -0,0 +1,195 @@
+package norswap.autumn;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+
+/**
+ * Assigns compact identifiers to the parsers of a grammar, identified by its root parser. These
+ * identifiers are assigned densely (from 0) within the grammar, so they can be used to index arrays
+ * holding per-parser data, whose size then depends on the size of the grammar rather than on the
+ * number of parsers created so far in the JVM.
+ *
+ * <p>The index of a grammar is obtained with {@link #of(Parser)}, and created on first use. All
+ * parsers reachable from the root (through {@link Parser#children()}) receive their ids at that
+ * time, and the index never changes afterwards. Parsers that are not reported as children (or added
+ * to the graph later) have no id in the grammar.
+ *
+ * <p>Similarly, the parse states reported by these parsers ({@link Parser#parse_states()}) receive
+ * a dense slot index, used to store their data in the parse (see {@link ParseState#data}).
+ *
+ * <p>Instances of this class are immutable, and thus thread-safe. A parser that is part of multiple
+ * grammars (e.g. a sub-rule used as the root of a parse) has a separate id in each of them. The
+ * first grammar to index a parser or parse state is its home grammar: the id in that grammar is
+ * stored in the object itself, and retrieved without hashing. The ids in other grammars are looked
+ * up in an immutable map held by the index.
+ */
+public final class GrammarIndex
+{
+    // ---------------------------------------------------------------------------------------------
+
+    /** The root parser of the grammar. */
+    public final Parser root;
+
+    // ---------------------------------------------------------------------------------------------
+
+    private final IdentityHashMap<Parser, Integer> ids = new IdentityHashMap<>();
+    private final Parser[] parsers;
+
+    // ---------------------------------------------------------------------------------------------
+
+    private final IdentityHashMap<ParseState<?>, Integer> state_ids = new IdentityHashMap<>();
+
+    // ---------------------------------------------------------------------------------------------
+
+    private GrammarIndex (Parser root)
+    {
+        this.root = root;
+        ArrayList<Parser> parsers = new ArrayList<>();
+        ArrayList<ParseState<?>> states = new ArrayList<>();
+        ArrayDeque<Parser> todo = new ArrayDeque<>();
+        todo.push(root);
+        while (!todo.isEmpty()) {
+            Parser parser = todo.pop();
+            if (ids.containsKey(parser)) continue;
+            ids.put(parser, parsers.size());
+            parsers.add(parser);
+            for (ParseState<?> state: parser.parse_states())
+                if (!state_ids.containsKey(state)) {
+                    state_ids.put(state, states.size());
+                    states.add(state);
+                }
+            for (Parser child: parser.children())
+                todo.push(child);
+        }
+        this.parsers = parsers.toArray(new Parser[0]);
+
+        // The first grammar to index a parser or state becomes its home, so that its id in that
+        // grammar can be retrieved without hashing.
+        synchronized (GrammarIndex.class) {
+            for (int i = 0; i < this.parsers.length; ++i)
+                if (this.parsers[i].home == null)
+                    this.parsers[i].home = new Home(this, i);
+            for (int i = 0; i < states.size(); ++i)
+                if (states.get(i).home == null)
+                    states.get(i).home = new Home(this, i);
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the index of the grammar whose root is {@code root}, creating it if needed.
+     */
+    public static GrammarIndex of (Parser root)
+    {
+        GrammarIndex index = root.grammar_index;
+        if (index != null) return index;
+        synchronized (root) {
+            if (root.grammar_index == null)
+                root.grammar_index = new GrammarIndex(root);
+            return root.grammar_index;
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the identifier of {@code parser} in this grammar, or -1 if it doesn't have one. Only
+     * hashes the parser if it was first indexed by another grammar.
+     */
+    public int id (Parser parser)
+    {
+        Home home = parser.home;
+        if (home == null) return -1; // would have been claimed by this grammar
+        if (home.grammar == this) return home.id;
+        Integer id = ids.get(parser);
+        return id != null ? id : -1;
+    }
+
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the identifier of {@code parser} in its home grammar if that is this grammar, or -1
+     * otherwise. Never hashes.
+     */
+    public int home_id (Parser parser)
+    {
+        Home home = parser.home;
+        return home != null && home.grammar == this ? home.id : -1;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the home grammar of {@code parser} (the first grammar that indexed it), or null if it
+     * wasn't indexed yet.
+     */
+    public static GrammarIndex home (Parser parser)
+    {
+        Home home = parser.home;
+        return home != null ? home.grammar : null;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the parser with the given identifier.
+     */
+    public Parser parser (int id) {
+        return parsers[id];
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * The number of parsers in the grammar, which is an upper bound on the identifiers.
+     */
+    public int size() {
+        return parsers.length;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the slot index of {@code state} in this grammar, or -1 if it doesn't have one. Only
+     * hashes the state if it was first indexed by another grammar.
+     */
+    public int state_index (ParseState<?> state)
+    {
+        Home home = state.home;
+        if (home == null) return -1; // would have been claimed by this grammar
+        if (home.grammar == this) return home.id;
+        Integer id = state_ids.get(state);
+        return id != null ? id : -1;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * The number of parse states in the grammar, which is an upper bound on their slot index.
+     */
+    public int state_count() {
+        return state_ids.size();
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * The identifier of an object in the first grammar that indexed it (its home grammar). Written
+     * once, when that grammar is created; being immutable, it can be read without synchronization.
+     */
+    static final class Home
+    {
+        final GrammarIndex grammar;
+        final int id;
+
+        Home (GrammarIndex grammar, int id) {
+            this.grammar = grammar;
+            this.id = id;
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
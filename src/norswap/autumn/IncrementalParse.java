@@ -0,0 +1,136 @@
+package norswap.autumn;
+
+import norswap.autumn.input.InputSource;
+import norswap.autumn.memo.Memoizer;
+import norswap.autumn.parsers.Memo;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Parses a text that is edited over time (e.g. in an editor), reusing the memoized results of the
+ * previous parse after each edit.
+ *
+ * <p>After an edit ({@link #edit}), the memoizers of the previous parse (the parse states holding a
+ * {@link Memoizer}, e.g. those of {@link Memo} parsers or of the {@link DSL#tokens}) are shifted
+ * past the edit ({@link Memoizer#shift}): entries that examined input in the edited region are
+ * discarded, and entries after it have their positions shifted by the size difference. The new
+ * text is then parsed, the memoizers answering for all the unaffected regions.
+ *
+ * <p>The time taken by a reparse thus depends on how the grammar memoizes: to make it scale with
+ * the size of the edit rather than the size of the input, memoize the repeated units of the
+ * grammar (e.g. statements or class members) in a {@link norswap.autumn.memo.MemoTable} ({@link
+ * DSL.rule#memo()}). The parse must still walk the sequence of these units, but each unaffected
+ * unit is a single memo lookup.
+ *
+ * <p>Requirements and caveats:
+ * <ul>
+ *     <li>Only the results of memoizers that implement {@link Memoizer#shift} are reused
+ *     ({@link norswap.autumn.memo.MemoTable} and {@link norswap.autumn.memo.MemoCache}).</li>
+ *     <li>Results whose side-effects are not limited to value stack operations are not reused.</li>
+ *     <li>Reused results push the same values as in the previous parse: positions recorded in these
+ *     values (e.g. in AST nodes) are not shifted.</li>
+ *     <li>Parsers must not look behind their initial position, and must report lookahead beyond
+ *     one character (see {@link Parse#examined}).</li>
+ *     <li>Reused failed results do not record errors: the reported error position may differ from
+ *     that of a full parse.</li>
+ *     <li>Compiled parsers ({@link Autumn#compile}) run their original parser graph, as their
+ *     compiled nodes do not report the input they examine.</li>
+ * </ul>
+ *
+ * <p>Instances of this class are not thread-safe.
+ */
+public final class IncrementalParse
+{
+    // ---------------------------------------------------------------------------------------------
+
+    public final Parser parser;
+
+    // ---------------------------------------------------------------------------------------------
+
+    public final ParseOptions options;
+
+    // ---------------------------------------------------------------------------------------------
+
+    private String text;
+    private ParseResult result;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Parses {@code text} with {@code parser} and the given parse options. The well-formedness
+     * check ({@link ParseOptions#well_formedness_check}) is only performed for this initial parse.
+     */
+    public IncrementalParse (Parser parser, String text, ParseOptions options)
+    {
+        requireNonNull(parser,  "Parser cannot be null.");
+        requireNonNull(text,    "Input string cannot be null.");
+        requireNonNull(options, "Parse options cannot be null.");
+        this.parser = parser;
+        this.options = options;
+        this.text = text;
+        if (options.well_formedness_check)
+            Parse.check_well_formed(parser);
+        this.result = Autumn.reparse(parser, InputSource.of(text), options,
+            Collections.emptyMap());
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Parses {@code text} with {@code rule} and the given parse options.
+     *
+     * @see #IncrementalParse(Parser, String, ParseOptions)
+     */
+    public IncrementalParse (DSL.rule rule, String text, ParseOptions options) {
+        this(rule.get(), text, options);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * The current text.
+     */
+    public String text() {
+        return text;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * The result of the last parse.
+     */
+    public ParseResult result() {
+        return result;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Replaces the {@code removed} code points starting at code point {@code offset} of the
+     * current text by {@code inserted}, then reparses the text, reusing the results of the previous
+     * parse that are not affected by the edit. Returns the new parse result.
+     */
+    public ParseResult edit (int offset, int removed, String inserted)
+    {
+        int begin = text.offsetByCodePoints(0, offset);
+        int end   = text.offsetByCodePoints(begin, removed);
+        text = text.substring(0, begin) + inserted + text.substring(end);
+
+        int inserted_length = inserted.codePointCount(0, inserted.length());
+        TextEdit edit = new TextEdit(offset, removed, inserted_length);
+        Map<Object, Object> states = new HashMap<>();
+
+        for (Map.Entry<Object, Object> state: result.parse_states.entrySet()) {
+            if (!(state.getValue() instanceof Memoizer)) continue;
+            Memoizer shifted = ((Memoizer) state.getValue()).shift(edit);
+            if (shifted != null) states.put(state.getKey(), shifted);
+        }
+
+        return result = Autumn.reparse(parser, InputSource.of(text), options, states);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
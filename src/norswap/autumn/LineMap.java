@@ -1,5 +1,6 @@
 package norswap.autumn;
 
+import norswap.autumn.input.InputSource;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -19,7 +20,12 @@ import java.util.List;
  * in order to bring the column index in line with the next multiple of the tab size. The tab size
  * is also customizable (defaulting to 4).
  * <p>
- * The valid offset range is [0 - string.length]
+ * A line map can also be built over an {@link InputSource}, in which case offsets are positions in
+ * that input (code point indices, or byte offsets for a {@link norswap.autumn.input.MappedInput}),
+ * which is what parse positions refer to. Line maps built from a string use the same positions as
+ * a parse over that string.
+ * <p>
+ * The valid offset range is [0 - input.length()]
  * <p>
  * There are as many line indices as the number of newline character in the files + 1
  * (the first line).
@@ -35,12 +41,20 @@ public final class LineMap
     // ---------------------------------------------------------------------------------------------
 
     /**
-     * The string over which the lines are mapped.
+     * The string over which the lines are mapped, or null if this map was created from an
+     * {@link InputSource}.
      */
     public final String string;
 
     // ---------------------------------------------------------------------------------------------
 
+    /**
+     * The input over which the lines are mapped.
+     */
+    public final InputSource input;
+
+    // ---------------------------------------------------------------------------------------------
+
     /**
      * Array containing the offset of the first character of each line.
      */
@@ -67,17 +81,30 @@ public final class LineMap
 
     // ---------------------------------------------------------------------------------------------
 
-    public LineMap (String string, int tab_size, int column_start)
+    public LineMap (String string, int tab_size, int column_start) {
+        this(string, InputSource.of(string), tab_size, column_start);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    public LineMap (InputSource input, int tab_size, int column_start) {
+        this(null, input, tab_size, column_start);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private LineMap (String string, InputSource input, int tab_size, int column_start)
     {
         this.string       = string;
+        this.input        = input;
         this.tab_size     = tab_size;
         this.column_start = column_start;
 
         List<Integer> positions = new ArrayList<>();
         positions.add(0);
 
-        for (int i = 0; i < string.length(); ++i)
-            if (string.charAt(i) == '\n')
+        for (int i = 0; i < input.length(); ++i)
+            if (input.char_at(i) == '\n')
                 positions.add(i + 1);
 
         line_positions = positions.stream().mapToInt(i -> i).toArray();
@@ -91,6 +118,12 @@ public final class LineMap
 
     // ---------------------------------------------------------------------------------------------
 
+    public LineMap (InputSource input) {
+        this(input, 4, 1);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
     /**
      * Returns a string representing the given offset, using the given line map.
      *
@@ -124,7 +157,7 @@ public final class LineMap
      */
     public int line_from (int offset)
     {
-        if (offset < 0 || string.length() < offset)
+        if (offset < 0 || input.length() < offset)
             throw new IndexOutOfBoundsException("offset " + offset);
 
         final int index = Arrays.binarySearch(line_positions, offset);
@@ -149,7 +182,7 @@ public final class LineMap
         int col = 0;
 
         for (int i = line_offset; i < offset; ++i)
-            col += (string.charAt(i) == '\t') ? (tab_size - col % tab_size) : 1;
+            col += (input.char_at(i) == '\t') ? (tab_size - col % tab_size) : 1;
 
         return col + column_start;
     }
@@ -208,7 +241,7 @@ public final class LineMap
 
         while (column_index + column_start < column)
         {
-            char c = string.charAt(line_offset + column_offset);
+            int c = input.char_at(line_offset + column_offset);
             if (c == '\n') throw no_column(line, column);
             column_index += (c == '\t') ? (tab_size - column_index % tab_size) : 1;
             ++column_offset;
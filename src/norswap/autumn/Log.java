@@ -1,8 +1,8 @@
 package norswap.autumn;
 
-import norswap.autumn.util.ArrayStack;
-import norswap.utils.Vanilla;
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 
@@ -13,21 +13,117 @@ import java.util.List;
  * <p>Usually, this is only modified through the {@link #apply} methods. Parsers automatically
  * undo side-effects on failure through {@link #rollback}. A list of recently applied
  * side-effects can be acquired through {@link #delta}.
+ *
+ * <p>Operations on the parse's value stack ({@link Parse#stack}) do not go through {@link
+ * SideEffect} objects. Instead, they are recorded as an opcode and an operand (the pushed item or
+ * the popped items), in two parallel arrays. Undoing a run of pushes is a single truncation of the
+ * value stack, and undoing pops pushes back the recorded items — no closure is allocated or
+ * called. Arbitrary side-effects are logged alongside these typed entries, with their undo
+ * function.
+ *
+ * <p>The lists returned by {@link #delta} do not contain one entry per logged operation. Instead,
+ * each run of consecutive value stack operations is condensed into its net effect: a number of
+ * items to pop and an immutable slice of items to push, which {@link #apply(List)} replays in
+ * constant time (besides copying the slice). Other side-effects are kept between these runs, so
+ * that they are replayed in their original order with respect to the stack operations.
+ *
+ * <p>When a {@link norswap.autumn.parsers.Cut} commits the parse, all entries in the log are
+ * discarded ({@link #commit}), as they can no longer be undone. Indices (e.g. {@link #size()})
+ * keep counting from the start of the parse. Trying to roll back past the commit point aborts
+ * the parse, which fails.
  */
-public final class Log extends ArrayStack<SideEffect.Applied>
+public final class Log
 {
     // ---------------------------------------------------------------------------------------------
 
+    // Opcodes for the log entries.
+    static final byte EFFECT = 0, PUSH = 1, POP = 2, POP_N = 3, PUSH_N = 4;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * The value stack whose operations are recorded as typed entries (normally {@link
+     * Parse#stack}). Operations on other stacks sharing this log are logged as side-effects.
+     */
+    SideEffectingArrayStack stack;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /** The counters of the parse ({@link Parse#stats}), or null. */
+    ParseStats stats;
+
+    // ---------------------------------------------------------------------------------------------
+
+    private byte[] ops = new byte[64];
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * The operands of {@link #ops}: a {@link SideEffect.Applied} for {@link #EFFECT}, the pushed
+     * item for {@link #PUSH}, the popped item for {@link #POP}, the array of popped items for
+     * {@link #POP_N} and the array of pushed items for {@link #PUSH_N}.
+     */
+    private Object[] operands = new Object[64];
+
+    // ---------------------------------------------------------------------------------------------
+
+    /** Number of entries stored in {@link #ops} and {@link #operands}. */
+    private int size = 0;
+
+    /** Number of committed entries, which are not stored anymore. */
+    private int base = 0;
+
+    // ---------------------------------------------------------------------------------------------
+
     Log () {}
 
     // ---------------------------------------------------------------------------------------------
 
+    /**
+     * Number of side-effects in the log.
+     */
+    public int size() {
+        return base + size;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Appends a typed entry to the log.
+     */
+    void record (byte op, Object operand)
+    {
+        if (size == ops.length) {
+            ops = Arrays.copyOf(ops, size * 2);
+            operands = Arrays.copyOf(operands, size * 2);
+        }
+        ops[size] = op;
+        operands[size++] = operand;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Pushes the given items onto {@link #stack}, logging a single entry.
+     * The array must not be modified afterwards.
+     */
+    void push_all (Object[] items)
+    {
+        stack.raw_push_all(items);
+        record(PUSH_N, items);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
     /**
      * Applies the given side-effect and adds it to the log of applied side effects.
      */
     public void apply (SideEffect effect)
     {
-        add(effect.apply());
+        if (effect instanceof StackEffect && ((StackEffect) effect).stack == stack)
+            ((StackEffect) effect).replay(stack);
+        else
+            record(EFFECT, effect.apply());
     }
 
     // ---------------------------------------------------------------------------------------------
@@ -35,10 +131,34 @@ public final class Log extends ArrayStack<SideEffect.Applied>
     /**
      * Applies a list of side-effects in order. Usually the list was obtained by a previous call to
      * {@link #delta}.
+     *
+     * <p>A {@link #portable} delta obtained from the log of another parse is replayed on the value
+     * stack of this log.
      */
     public void apply (List<SideEffect> delta)
     {
-        delta.forEach(this::apply);
+        if (delta instanceof Delta && (((Delta) delta).stack == stack || portable(delta))) {
+            for (SideEffect effect: ((Delta) delta).entries)
+                if (effect instanceof StackEffect)
+                    ((StackEffect) effect).replay(stack);
+                else
+                    apply(effect);
+            return;
+        }
+        for (SideEffect effect: delta)
+            apply(effect);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns true if the given delta (obtained from {@link #delta}) only consists of value stack
+     * operations, meaning that it can be applied to the log of another parse (see {@link
+     * TextEdit#shift}).
+     */
+    public static boolean portable (List<SideEffect> delta)
+    {
+        return delta.isEmpty() || delta instanceof Delta && ((Delta) delta).portable;
     }
 
     // ---------------------------------------------------------------------------------------------
@@ -49,22 +169,149 @@ public final class Log extends ArrayStack<SideEffect.Applied>
      */
     public void rollback (int log_target_size)
     {
-        for (int i = size(); i > log_target_size; --i)
-            pop().undo.run();
+        if (log_target_size < base)
+            throw CutFailure.INSTANCE;
+
+        if (stats != null)
+            stats.rolled_back += base + size - log_target_size;
+
+        log_target_size -= base;
+
+        while (size > log_target_size)
+        {
+            int i = size - 1;
+            switch (ops[i])
+            {
+                case PUSH:
+                    int n = 1;
+                    while (i - n >= log_target_size && ops[i - n] == PUSH) ++n;
+                    stack.raw_truncate(stack.size() - n);
+                    Arrays.fill(operands, size - n, size, null);
+                    size -= n;
+                    continue;
+                case POP:
+                    stack.raw_push(operands[i]);
+                    break;
+                case POP_N:
+                    stack.raw_push_all((Object[]) operands[i]);
+                    break;
+                case PUSH_N:
+                    stack.raw_truncate(stack.size() - ((Object[]) operands[i]).length);
+                    break;
+                default:
+                    ((SideEffect.Applied) operands[i]).undo.run();
+            }
+            operands[i] = null;
+            size = i;
+        }
     }
 
     // ---------------------------------------------------------------------------------------------
 
-
     /**
-     * Returns a list of side effects (without undo functions!) whose index {@code i} are such that
-     * {@code log_start_index <= i < log.size()}, in increasing index order.
+     * Returns a list of side effects (without undo functions!) equivalent to the entries whose
+     * index {@code i} are such that {@code log_start_index <= i < log.size()}.
+     *
+     * <p>Each run of operations on the value stack is condensed into its net effect (see the class
+     * documentation). The other side-effects appear between these runs, in increasing index order.
      */
     public List<SideEffect> delta (int log_start_index)
     {
-        return log_start_index == size()
-            ? Collections.emptyList()
-            : Vanilla.map(from(log_start_index), it -> it.effect);
+        // Committed entries can't be replayed, but the delta is never needed for a position
+        // before the commit point (the parse would have to roll back past it).
+        log_start_index = Math.max(0, log_start_index - base);
+
+        if (log_start_index == size)
+            return Collections.emptyList();
+
+        ArrayList<SideEffect> entries = new ArrayList<>(2);
+        boolean portable = true;
+        int start = log_start_index;
+
+        for (int i = log_start_index; i < size; ++i) {
+            if (ops[i] != EFFECT) continue;
+            add_stack_run(entries, start, i);
+            entries.add(((SideEffect.Applied) operands[i]).effect);
+            portable = false;
+            start = i + 1;
+        }
+
+        add_last_stack_run(entries, start);
+        return new Delta(stack, entries.toArray(new SideEffect[0]), portable);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Adds the net effect of the value stack operations whose index {@code i} are such that {@code
+     * start <= i < end} to {@code entries}. The pushed items are retrieved from the log, as they
+     * may have been popped from the stack since.
+     */
+    private void add_stack_run (ArrayList<SideEffect> entries, int start, int end)
+    {
+        if (start == end) return;
+
+        ArrayList<Object> pushed = new ArrayList<>();
+        int pop_count = 0;
+
+        for (int i = start; i < end; ++i) {
+            switch (ops[i]) {
+                case PUSH:
+                    pushed.add(operands[i]);
+                    break;
+                case PUSH_N:
+                    Collections.addAll(pushed, (Object[]) operands[i]);
+                    break;
+                default:
+                    int n = ops[i] == POP ? 1 : ((Object[]) operands[i]).length;
+                    int m = Math.min(n, pushed.size());
+                    pushed.subList(pushed.size() - m, pushed.size()).clear();
+                    pop_count += n - m;
+            }
+        }
+
+        add_stack_run(entries, pop_count, pushed.toArray());
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Adds the net effect of the value stack operations from index {@code start} to the end of the
+     * log to {@code entries}. The pushed items are still at the top of the stack, and are copied
+     * from there.
+     */
+    private void add_last_stack_run (ArrayList<SideEffect> entries, int start)
+    {
+        // Track the stack size relative to its size at start, and its lowest point.
+        int current = 0;
+        int lowest = 0;
+
+        for (int i = start; i < size; ++i) {
+            switch (ops[i]) {
+                case PUSH:   ++ current; break;
+                case PUSH_N: current += ((Object[]) operands[i]).length; break;
+                case POP:    -- current; break;
+                default:     current -= ((Object[]) operands[i]).length;
+            }
+            lowest = Math.min(lowest, current);
+        }
+
+        int pushed = current - lowest;
+        Object[] slice = pushed == 0
+            ? NO_ITEMS
+            : stack.from(stack.size() - pushed).toArray();
+
+        add_stack_run(entries, -lowest, slice);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private void add_stack_run (ArrayList<SideEffect> entries, int pop_count, Object[] pushed)
+    {
+        if (pop_count > 0)
+            entries.add(new StackEffect(stack, POP_N, new Object[pop_count]));
+        if (pushed.length > 0)
+            entries.add(new StackEffect(stack, PUSH_N, pushed));
     }
 
     // ---------------------------------------------------------------------------------------------
@@ -72,10 +319,150 @@ public final class Log extends ArrayStack<SideEffect.Applied>
     /**
      * Returns a list of applied side effects (with undo function) whose index {@code i} are such
      * that {@code log_start_index <= i < log.size()}, in increasing index order.
+     *
+     * <p>Typed entries are converted to {@link SideEffect.Applied} objects on the fly.
      */
     public List<SideEffect.Applied> delta_applied (int log_start_index)
     {
-        return new ArrayList<>(from(log_start_index));
+        log_start_index = Math.max(0, log_start_index - base);
+        ArrayList<SideEffect.Applied> delta = new ArrayList<>(size - log_start_index);
+        for (int i = log_start_index; i < size; ++i) {
+            if (ops[i] == EFFECT) {
+                delta.add((SideEffect.Applied) operands[i]);
+            } else {
+                StackEffect effect = new StackEffect(stack, ops[i], operands[i]);
+                delta.add(new SideEffect.Applied(effect, effect::undo_recorded));
+            }
+        }
+        return delta;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Discards all entries in the log, making them impossible to roll back. Used by {@link
+     * Parse#commit()}.
+     */
+    void commit()
+    {
+        Arrays.fill(operands, 0, size, null);
+        base += size;
+        size = 0;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Thrown when trying to roll back past the commit point, caught in {@link Parse#run}.
+     */
+    static final class CutFailure extends RuntimeException
+    {
+        private static final long serialVersionUID = 1L;
+
+        static final CutFailure INSTANCE = new CutFailure();
+
+        private CutFailure () {
+            super("Cannot backtrack past a cut.", null, false, false);
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private static final Object[] NO_ITEMS = new Object[0];
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * A condensed delta, returned by {@link #delta}. Its entries are the custom side-effects of the
+     * delta, and {@link #POP_N} and {@link #PUSH_N} {@link StackEffect}s standing for the runs of
+     * value stack operations between them. {@link #apply(List)} recognizes it and replays the stack
+     * effects directly.
+     */
+    private static final class Delta extends AbstractList<SideEffect>
+    {
+        final SideEffectingArrayStack stack;
+        final SideEffect[] entries;
+
+        /** Whether all entries are stack effects, see {@link #portable(List)}. */
+        final boolean portable;
+
+        Delta (SideEffectingArrayStack stack, SideEffect[] entries, boolean portable) {
+            this.stack = stack;
+            this.entries = entries;
+            this.portable = portable;
+        }
+
+        @Override public int size() {
+            return entries.length;
+        }
+
+        @Override public SideEffect get (int index) {
+            return entries[index];
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * A typed log entry, packaged as a side-effect so that it can be returned by {@link #delta}
+     * and {@link #delta_applied}. Re-applying it to the log of the same stack records a typed entry
+     * again. For {@link #POP_N}, the operand is only used for its length when re-applying.
+     */
+    private static final class StackEffect implements SideEffect
+    {
+        final SideEffectingArrayStack stack;
+        final byte op;
+        final Object operand;
+
+        StackEffect (SideEffectingArrayStack stack, byte op, Object operand) {
+            this.stack = stack;
+            this.op = op;
+            this.operand = operand;
+        }
+
+        int length() {
+            return ((Object[]) operand).length;
+        }
+
+        /** Replays the operation on the given stack, which may differ from {@link #stack}. */
+        void replay (SideEffectingArrayStack stack)
+        {
+            switch (op) {
+                case PUSH:   stack.push(operand); break;
+                case POP:    stack.pop(); break;
+                case POP_N:  stack.pop(length()); break;
+                default:     stack.log.push_all((Object[]) operand);
+            }
+        }
+
+        /** Undoes the recorded operation, whose operand holds the actual popped items. */
+        void undo_recorded()
+        {
+            switch (op) {
+                case PUSH:   stack.raw_pop(); break;
+                case POP:    stack.raw_push(operand); break;
+                case POP_N:  stack.raw_push_all((Object[]) operand); break;
+                default:     stack.raw_truncate(stack.size() - length());
+            }
+        }
+
+        @Override public Runnable __apply()
+        {
+            switch (op) {
+                case PUSH:
+                    stack.raw_push(operand);
+                    return stack::raw_pop;
+                case POP:
+                    Object item = stack.raw_pop();
+                    return () -> stack.raw_push(item);
+                case POP_N:
+                    Object[] items = stack.raw_pop(length());
+                    return () -> stack.raw_push_all(items);
+                default:
+                    stack.raw_push_all((Object[]) operand);
+                    return () -> stack.raw_truncate(stack.size() - length());
+            }
+        }
     }
 
     // ---------------------------------------------------------------------------------------------
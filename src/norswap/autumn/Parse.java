@@ -1,20 +1,23 @@
 package norswap.autumn;
 
+import norswap.autumn.input.InputSource;
+import norswap.autumn.jfr.Events;
+import norswap.autumn.memo.Memoizer;
+import norswap.autumn.parsers.Choice;
+import norswap.autumn.parsers.Cut;
 import norswap.autumn.parsers.Bounded;
 import norswap.autumn.parsers.Not;
 import norswap.autumn.visitors.WellFormednessChecker;
-import norswap.utils.ArrayListLong;
-import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.PrimitiveIterator.OfInt;
 import java.util.stream.Stream;
 
 /**
  * The context associated with <i>a parse</i>, which is the the invocation of a (root) parser on
- * some input — either a String ({@link #string}) or a list ({@link #list}).
+ * some input — either a string ({@link #string}, an {@link InputSource}) or a list ({@link #list}).
  *
  * <p>Instances of this class cannot be created by the user, instead they are generated by one of
  * the {@link Autumn} {@code .run} methods. However, custom {@link Parser} implementations
@@ -51,6 +54,28 @@ public final class Parse
 
     // ---------------------------------------------------------------------------------------------
 
+    /**
+     * One past the furthest input position examined by the parse so far.
+     *
+     * <p>{@link Parser#parse} accounts for the input between the initial position of a parser and
+     * its final position, plus one character of lookahead. Parsers that look further ahead (e.g.
+     * when failing to match a string) must report it via {@link #examine(int)}.
+     *
+     * <p>This is used to determine which memoized results are invalidated by an edit of the input
+     * (see {@link IncrementalParse}), and is only maintained if {@link #track_examined} is set.
+     */
+    public int examined = 0;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Whether {@link #examined} must be maintained. Only set for the parses of an {@link
+     * IncrementalParse}, as this costs a few percents of the parse time.
+     */
+    public final boolean track_examined;
+
+    // ---------------------------------------------------------------------------------------------
+
     /**
      * The position one past the last input position.
      *
@@ -65,9 +90,10 @@ public final class Parse
     // ---------------------------------------------------------------------------------------------
 
     /**
-     * One of the two forms of input the parse may have.
+     * One of the two forms of input the parse may have: a sequence of code points, stored in an
+     * {@link InputSource}.
      */
-    public final int[] string;
+    public final InputSource string;
 
     // ---------------------------------------------------------------------------------------------
 
@@ -85,6 +111,30 @@ public final class Parse
 
     // ---------------------------------------------------------------------------------------------
 
+    /**
+     * The index of the grammar being parsed (rooted at the parser the parse was started with),
+     * whose compact parser ids are used to record per-parser data.
+     */
+    public final GrammarIndex grammar;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * False during the first phase of a {@link ParseOptions#two_phase} parse, in which case {@link
+     * Parser#parse} does not keep track of errors.
+     */
+    public final boolean track_errors;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * True if this parse was created by {@link #fork(int)}. Forked parses run on an executor, and
+     * must not wait on other tasks of that executor.
+     */
+    public boolean forked = false;
+
+    // ---------------------------------------------------------------------------------------------
+
     /**
      * The list of side-effects that have been applied during this parse.
      */
@@ -99,6 +149,51 @@ public final class Parse
 
     // ---------------------------------------------------------------------------------------------
 
+    /**
+     * Set by {@link Cut} when it succeeds. A {@link Choice} clears it before trying each of its
+     * alternatives, and does not try further alternatives if it is set after an alternative fails.
+     */
+    public boolean cut = false;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * When greater than 0, a {@link Cut} does not commit the parse (see {@link #commit()}).
+     *
+     * <p>Parsers that roll back the side-effects of their children as part of a successful parse
+     * must increment this while running these children, otherwise the rollback would abort the
+     * parse after a commit.
+     */
+    public int cut_barriers = 0;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * The number of running parsers that can still recover from a failure of their child by
+     * trying something else, and would thus need to backtrack: {@link Choice}, {@link
+     * norswap.autumn.parsers.Optional}, the optional iterations of repetitions, lookaheads, {@link
+     * norswap.autumn.parsers.Memo}, ...
+     *
+     * <p>A {@link Cut} only commits the parse if this is 0, ignoring the innermost enclosing
+     * choice (see {@link #choice_backtrack_points}), which the cut commits to anyway. Otherwise, a
+     * later failure would be handled differently depending on whether there is anything to roll
+     * back in the log.
+     *
+     * <p>Custom parsers that may recover from the failure of a child must increment this while
+     * running that child.
+     */
+    public int backtrack_points = 0;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * The value of {@link #backtrack_points} when the innermost running {@link Choice} started, or
+     * -1 if no choice is running.
+     */
+    public int choice_backtrack_points = -1;
+
+    // ---------------------------------------------------------------------------------------------
+
     /**
      * Use this map to store custom parsing state data. If state changes must be undone when
      * backtracking (as is usual), the state data should usually be modified exclusively through a
@@ -112,10 +207,11 @@ public final class Parse
     // ---------------------------------------------------------------------------------------------
 
     /**
-     * List of {@link ParseState} used during this parse, i.e. parse states whose data
-     * are registered in {@link #state_data}.
+     * The data of the {@link ParseState}s used during this parse (also registered in {@link
+     * #state_data}), indexed by their slot index in the grammar ({@link
+     * GrammarIndex#state_index}).
      */
-    ArrayList<ParseState<?>> parse_states = new ArrayList<>();
+    final Object[] state_slots;
 
     // ---------------------------------------------------------------------------------------------
 
@@ -142,34 +238,191 @@ public final class Parse
     // ---------------------------------------------------------------------------------------------
 
     /**
-     * A stack used to record the execution time of completed parser invocations in tracing mode
-     * ({@link ParseOptions#trace}).
+     * The per-parser metrics to report in tracing mode ({@link ParseOptions#trace}).
+     *
+     * <p>Can be reused accross parses using {@link ParseOptions#metrics}, and so is only updated
+     * at the end of the parse, from {@link #trace_metrics}.
      */
-    final ArrayListLong trace_timings;
+    final ParseMetrics parse_metrics;
 
     // ---------------------------------------------------------------------------------------------
 
     /**
-     * Maps parser names to a set of parser metrics.
-     *
-     * <p>Can be reused accross parses using {@link ParseOptions#metrics}.
+     * The metrics recorded during this parse in tracing mode ({@link ParseOptions#trace}), added
+     * to {@link #parse_metrics} at the end of the parse.
      */
-    final ParseMetrics parse_metrics;
+    final ParseMetrics trace_metrics;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * In tracing mode, the number of parser invocations in progress.
+     */
+    int trace_depth;
 
     // ---------------------------------------------------------------------------------------------
 
-    private Parse (String string, List<?> list, ParseOptions options)
+    /**
+     * In tracing mode, maps each invocation depth (see {@link #trace_depth}) to the time spent so
+     * far in the children of the invocation in progress at that depth.
+     */
+    long[] trace_children;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * In tracing mode, maps parser ids (in {@link #grammar}) to their number of invocations in
+     * progress (so a parser is recursing when > 1).
+     */
+    int[] trace_active;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * The counters of this parse if {@link ParseOptions#counters} is set, null otherwise.
+     */
+    public final ParseStats stats;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * The stack of the rules being invoked, if {@link ParseOptions#profiler} is set, null
+     * otherwise.
+     */
+    final RuleProfiler.RuleStack rule_stack;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Whether rule invocations must be observed, for {@link #rule_stack} or for {@link
+     * ParseOptions#jfr} events.
+     */
+    final boolean observe_rules;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Whether {@link Parser#parse} must take its instrumented path, which is the case if any of
+     * {@link ParseOptions#trace}, {@link #observe_rules}, {@link #track_examined} or {@link #stats}
+     * is set, or if {@link #track_errors} isn't. Computed once, so that a parse without any of these
+     * features only tests this flag.
+     */
+    final boolean instrumented;
+
+    // ---------------------------------------------------------------------------------------------
+
+    private Parse (InputSource string, List<?> list, ParseOptions options, GrammarIndex grammar,
+            boolean track_errors, boolean track_examined, ParseStats stats)
     {
         assert string != null && list == null || string == null && list != null;
 
         options = options != null ? options : ParseOptions.get();
-        this.string = string != null ? string.codePoints().toArray() : null;
+        this.string = string;
         this.list = list;
-        this.end_of_input = this.string != null ? this.string.length : list.size();
+        this.end_of_input = string != null ? string.length() : list.size();
         this.options = options;
+        this.grammar = grammar;
+        this.state_slots = new Object[grammar.state_count()];
+        this.track_errors = track_errors;
+        this.track_examined = track_examined;
+        this.stats = stats;
+        log.stats = stats;
+        rule_stack = options.profiler != null ? new RuleProfiler.RuleStack() : null;
+        observe_rules = rule_stack != null || options.jfr;
+        instrumented = options.trace || !track_errors || observe_rules || track_examined
+            || stats != null;
         call_stack = options.record_call_stack ? new ParserCallStack() : null;
-        trace_timings = options.trace ? new ArrayListLong(256) : null;
         parse_metrics = options.trace ? options.metrics.get() : null;
+        trace_metrics = options.trace ? new ParseMetrics(grammar) : null;
+        trace_children = options.trace ? new long[256] : null;
+        trace_active = options.trace ? new int[grammar.size()] : null;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Registers the start of an invocation of the parser whose id in {@link #grammar} is {@code id}
+     * (-1 for a parser that is not part of the grammar) in tracing mode, and returns its depth (see
+     * {@link #trace_depth}).
+     */
+    int trace_enter (int id)
+    {
+        int depth = ++ trace_depth;
+        if (depth == trace_children.length)
+            trace_children = Arrays.copyOf(trace_children, 2 * depth);
+        trace_children[depth] = 0;
+        if (id >= 0) ++ trace_active[id];
+        return depth;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Registers the end of an invocation of the parser with the given {@code id} at {@code depth}
+     * (as returned by {@link #trace_enter}), which took {@code time} nanoseconds, in tracing mode.
+     *
+     * <p>The invocation of a parser that is not part of the grammar is not recorded, its self time
+     * is accounted for in the self time of its caller instead.
+     */
+    void trace_exit (int id, int depth, long time)
+    {
+        trace_depth = depth - 1;
+
+        if (id < 0) {
+            trace_children[depth - 1] += trace_children[depth];
+            return;
+        }
+
+        trace_children[depth - 1] += time;
+        ParseMetrics metrics = trace_metrics;
+        ++ metrics.invocations[id];
+        metrics.self_times[id] += time - trace_children[depth];
+        if (-- trace_active[id] == 0)
+            metrics.total_times[id] += time;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns a new parse over the same input and with the same options, starting at {@code pos}
+     * and with the same {@link #end_of_input}, but otherwise in a fresh state (empty value stack,
+     * no errors, no parse state). Used to parse parts of the input in parallel (see {@link
+     * norswap.autumn.parsers.SplitRepeat}).
+     */
+    public Parse fork (int pos)
+    {
+        Parse fork = new Parse(string, list, options, grammar, track_errors, track_examined,
+            stats != null ? new ParseStats() : null);
+        fork.pos = pos;
+        fork.end_of_input = end_of_input;
+        fork.forked = true;
+        return fork;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Throws a {@link MalformedGrammarError} if the grammar is not well-formed (see {@link
+     * ParseOptions#well_formedness_check}).
+     */
+    static void check_well_formed (Parser parser)
+    {
+        WellFormednessChecker checker = new WellFormednessChecker();
+
+        if (!checker.well_formed(parser))
+        {
+            StringBuilder b = new StringBuilder();
+
+            for (Parser p: checker.left_recursives)
+                b   .append("\n- Left-recursive parser cycle detected, passing through parser: ")
+                    .append(p);
+
+            for (Parser p: checker.nullable_repetitions)
+                b   .append("\n- Nullable repetition detected: ")
+                    .append(p);
+
+            throw new MalformedGrammarError(b.toString(), checker);
+        }
     }
 
     // ---------------------------------------------------------------------------------------------
@@ -177,37 +430,102 @@ public final class Parse
     /**
      * @see Autumn#parse
      */
-    static ParseResult run (Parser parser, String string, List<?> list, ParseOptions options)
+    static ParseResult run (Parser parser, InputSource string, List<?> list, ParseOptions options)
     {
         if (options.well_formedness_check)
-        {
-            WellFormednessChecker checker = new WellFormednessChecker();
+            check_well_formed(parser);
+
+        return run_unchecked(parser, string, list, options);
+    }
 
-            if (!checker.well_formed(parser))
-            {
-                StringBuilder b = new StringBuilder();
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Like {@link #run}, but ignores {@link ParseOptions#well_formedness_check}.
+     */
+    static ParseResult run_unchecked
+            (Parser parser, InputSource string, List<?> list, ParseOptions options)
+    {
+        return run_unchecked(parser, string, list, options, Collections.emptyMap(), false);
+    }
 
-                for (Parser p: checker.left_recursives)
-                    b   .append("\n- Left-recursive parser cycle detected, passing through parser: ")
-                        .append(p);
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Like {@link #run_unchecked(Parser, InputSource, List, ParseOptions)}, but initializes {@link
+     * #state_data} with {@code states} (used to reuse memoized results, see {@link
+     * IncrementalParse}), and sets {@link #track_examined}.
+     */
+    static ParseResult run_unchecked (Parser parser, InputSource string, List<?> list,
+            ParseOptions options, Map<Object, Object> states, boolean track_examined)
+    {
+        options = options != null ? options : ParseOptions.get();
 
-                for (Parser p: checker.nullable_repetitions)
-                    b   .append("\n- Nullable repetition detected: ")
-                        .append(p);
+        if (!options.jfr)
+            return run_phases(parser, string, list, options, states, track_examined);
 
-                throw new MalformedGrammarError(b.toString(), checker);
-            }
+        Object event = Events.begin_parse();
+        ParseResult result = run_phases(parser, string, list, options, states, track_examined);
+        Events.end_parse(event, result, string != null ? string.length() : list.size());
+        return result;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Implementation of {@link #run_unchecked(Parser, InputSource, List, ParseOptions, Map,
+     * boolean)}, handling {@link ParseOptions#two_phase}.
+     */
+    private static ParseResult run_phases (Parser parser, InputSource string, List<?> list,
+            ParseOptions options, Map<Object, Object> states, boolean track_examined)
+    {
+        boolean counters = options.counters || options.jfr;
+        GrammarIndex grammar = GrammarIndex.of(parser);
+
+        if (options.two_phase && !options.trace)
+        {
+            Parse parse = new Parse(
+                string, list, options.first_phase(), grammar, false, track_examined,
+                counters ? new ParseStats() : null);
+            parse.state_data.putAll(states);
+            ParseResult result = execute(parser, parse, options);
+
+            // A full match does not depend on the error bookkeeping.
+            if (result.full_match)
+                return result;
+
+            // The memoizers may hold results of the first phase, which recorded no errors.
+            // The counters of the first phase are discarded along with its result.
+            states = Collections.emptyMap();
         }
 
-        Parse parse = new Parse(string, list, options);
+        Parse parse = new Parse(string, list, options, grammar, true, track_examined,
+            counters ? new ParseStats() : null);
+        parse.state_data.putAll(states);
+        return execute(parser, parse, options);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Runs {@code parser} on {@code parse} and returns the result. {@code options} are the options
+     * reported in the result.
+     */
+    private static ParseResult execute (Parser parser, Parse parse, ParseOptions options)
+    {
         Throwable thrown = null;
         boolean success = false;
+        if (parse.rule_stack != null)
+            parse.options.profiler.register(parse.rule_stack);
         try { success = parser.parse(parse); }
+        catch (Log.CutFailure e) { success = false; }
         catch (StackOverflowError e) { throw e; } // (1)
         catch (Throwable t) { thrown = t; }
         finally {
-            for (ParseState<?> state: parse.parse_states)
-                state.discard_cache(parse);
+            if (parse.parse_metrics != null)
+                parse.parse_metrics.add(parse.trace_metrics);
+            if (parse.rule_stack != null)
+                parse.options.profiler.unregister(parse.rule_stack);
         }
 
         // (1) wrapped in PotentiallyMalformedGrammarError in Autumn#parse
@@ -251,7 +569,8 @@ public final class Parse
             parse.stack,
             parse.state_data,
             error_call_stack,
-            parse.parse_metrics);
+            parse.parse_metrics,
+            parse.stats);
     }
 
     // ---------------------------------------------------------------------------------------------
@@ -290,7 +609,7 @@ public final class Parse
     public int input_length()
     {
         return string != null
-            ? string.length
+            ? string.length()
             : list.size();
     }
 
@@ -298,13 +617,13 @@ public final class Parse
 
     /**
      * Returns the character from {@link #string} at the given index,
-     * or 0 if {@code index == string.length}.
+     * or 0 if {@code index == end_of_input}.
      */
     public int char_at (int index)
     {
         assert string != null;
         return index != end_of_input
-            ? string[index]
+            ? string.char_at(index)
             : 0;
     }
 
@@ -324,6 +643,18 @@ public final class Parse
 
     // ---------------------------------------------------------------------------------------------
 
+    /**
+     * Records that the parse examined the input up to {@code end} (exclusive), see {@link
+     * #examined}. Does nothing if {@link #track_examined} is not set.
+     */
+    public void examine (int end)
+    {
+        if (track_examined && end > examined)
+            examined = end;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
     /**
      * Returns true if the given string candidate appears in the parse's input string at the given
      * index. This function is safe even if the string candidate is longer than the remaining input.
@@ -331,48 +662,68 @@ public final class Parse
     public boolean match (int index, String candidate)
     {
         assert string != null;
-
-        OfInt it = Arrays.stream(string, index, string.length).iterator();
-        return candidate.codePoints().sequential().allMatch((c) -> it.hasNext() && c == it.next());
+        if (track_examined) examine(index + candidate.length());
+        return string.match(index, candidate);
     }
 
+    // ---------------------------------------------------------------------------------------------
+
     /**
-     * Returns true if the given string candidate appears in the parse's input string at the given
-     * index. This function is safe even if the string candidate is longer than the remaining input.
+     * Returns true if the given code points appear in the parse's input string at the given
+     * index. This function is safe even if the candidate is longer than the remaining input.
      */
     public boolean match (int index, int[] candidate)
     {
         assert string != null;
+        if (track_examined) examine(index + candidate.length);
+        return string.match(index, candidate);
+    }
+
+    // ---------------------------------------------------------------------------------------------
 
-        if(index + candidate.length > string.length)
-        	return false;
-        for(int i = 0; i < candidate.length; i++)
-        	if(string[index + i] != candidate[i])
-        		return false;
-        
-        return true;
+    /**
+     * Returns the substring of the parse's input string between {@code begin} (inclusive) and
+     * {@code end} (exclusive). Both indices are measured in code points. {@code end} is clamped
+     * to the length of the input.
+     */
+    public String substring (int begin, int end)
+    {
+        assert string != null;
+        return string.substring(begin, end);
     }
 
-	/**
-	 * Constructs a substring of the parser's input.
-	 * 
-	 * The substring begins at the specified beginIndex and extends to the code point
-	 * at index endIndex - 1. Thus the number of code points in the substring is
-	 * endIndex-beginIndex.
-	 * 
-	 * All indexes are measured in code points rather than characters.
-	 * 
-	 * @param beginIndex the beginning index, inclusive.
-	 * @param endIndex the ending index, exclusive.
-	 * @return the specified substring
-	 * @throws IllegalArgumentException If any invalid Unicode code point is found
-	 * @throws IndexOutOfBoundsException If the beginIndex is out of bounds
-	 */
-	public String substring(int beginIndex, int endIndex) {
-		return new String(string, beginIndex, Math.min(string.length, endIndex)-beginIndex);
-	}
+    // ---------------------------------------------------------------------------------------------
 
+    /**
+     * Whether a {@link Cut} can commit the parse: no parser is running that may roll back the
+     * side-effects of the cut ({@link #cut_barriers}) or recover from a later failure ({@link
+     * #backtrack_points}), except for the innermost enclosing choice.
+     */
+    public boolean can_commit()
+    {
+        return cut_barriers == 0
+            && (backtrack_points == 0
+                || backtrack_points == 1 && choice_backtrack_points == 0);
+    }
+
+    // ---------------------------------------------------------------------------------------------
 
+    /**
+     * Commits the parse at the current position: the side-effects in {@link #log} are discarded and
+     * can no longer be undone, and memoized results (held in a {@link Memoizer} parse state)
+     * starting before the current position are forgotten.
+     *
+     * <p>From there on, a failure that would need to backtrack past this point causes the whole
+     * parse to fail. This is called by a {@link Cut} when {@link #can_commit()} holds, and should
+     * normally not be called directly.
+     */
+    public void commit()
+    {
+        log.commit();
+        for (Object data: state_data.values())
+            if (data instanceof Memoizer)
+                ((Memoizer) data).forget_before(pos);
+    }
 
     // ---------------------------------------------------------------------------------------------
 }
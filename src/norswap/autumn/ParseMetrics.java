@@ -4,16 +4,138 @@ import java.util.HashMap;
 import java.util.Map;
 
 /**
- * A set of per-parser performance metrics ({@link ParserMetrics}), which are collected
- * when a parse is running in tracing mode ({@link ParseOptions#TRACE}).
+ * A set of per-parser performance metrics, which are collected when a parse is running in tracing
+ * mode ({@link ParseOptions#trace}).
  *
- * <p>Currently just a wrapper around a {@code Map[Parser, ParserMetrics]}.
+ * <p>The metrics are stored in primitive arrays indexed by the compact ids that the {@link
+ * GrammarIndex} of the parsed grammar assigns to its parsers, and the arrays are sized by the
+ * grammar. A parser stores its id in its home grammar (the first grammar that indexed it), so that
+ * recording an invocation amounts to a few field reads and array writes. Only the parsers that are
+ * shared with a grammar indexed earlier have their id looked up in a map. Use {@link #metrics()} or
+ * {@link #get(Parser)} to read the metrics as {@link ParserMetrics} objects.
+ *
+ * <p>Each parse records its metrics separately, and adds them to this object when it completes. As
+ * such, the same instance can be used to aggregate the metrics of parses running concurrently. The
+ * metrics should be read once these parses have completed. The parses may use different grammars
+ * (root parsers): the metrics are then kept separately for each grammar, and aggregated per parser
+ * when read.
  */
 public final class ParseMetrics
 {
     // ---------------------------------------------------------------------------------------------
 
-    public final Map<Parser, ParserMetrics> metrics = new HashMap<>();
+    /**
+     * The index of the grammar whose ids are used to index the arrays, or null if no metrics were
+     * recorded yet.
+     */
+    GrammarIndex index;
+
+    /** Cumulative self time per parser id, see {@link ParserMetrics#self_time}. */
+    long[] self_times;
+
+    /** Cumulative total time per parser id, see {@link ParserMetrics#total_time}. */
+    long[] total_times;
+
+    /** Number of invocations per parser id, see {@link ParserMetrics#invocations}. */
+    int[] invocations;
+
+    /** The metrics recorded for another grammar than {@link #index}, if any. */
+    private ParseMetrics next;
+
+    // ---------------------------------------------------------------------------------------------
+
+    public ParseMetrics() {
+        this(null);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Creates an object to record metrics for the parsers of the given grammar (may be null).
+     */
+    ParseMetrics (GrammarIndex index) {
+        init(index);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private void init (GrammarIndex index)
+    {
+        int size = index != null ? index.size() : 0;
+        this.index = index;
+        self_times  = new long [size];
+        total_times = new long [size];
+        invocations = new int  [size];
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Adds the metrics in {@code other} to the metrics of this object. Thread-safe.
+     */
+    public synchronized void add (ParseMetrics other)
+    {
+        if (other.index == null) return;
+        if (index == null) init(other.index);
+
+        ParseMetrics metrics = this;
+        while (metrics.index != other.index) {
+            if (metrics.next == null)
+                metrics.next = new ParseMetrics(other.index);
+            metrics = metrics.next;
+        }
+
+        for (int id = 0; id < other.invocations.length; ++id) {
+            metrics.self_times[id]  += other.self_times[id];
+            metrics.total_times[id] += other.total_times[id];
+            metrics.invocations[id] += other.invocations[id];
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the metrics for the given parser, or null if it wasn't invoked.
+     */
+    public synchronized ParserMetrics get (Parser parser)
+    {
+        ParserMetrics result = new ParserMetrics(parser);
+
+        for (ParseMetrics metrics = this; metrics != null; metrics = metrics.next) {
+            int id = metrics.index != null ? metrics.index.id(parser) : -1;
+            if (id >= 0) metrics.add_to(result, id);
+        }
+
+        return result.invocations > 0 ? result : null;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns a map from parsers to their metrics, for all the parsers that were invoked. The map
+     * is a snapshot: it isn't updated by further parses.
+     */
+    public synchronized Map<Parser, ParserMetrics> metrics()
+    {
+        HashMap<Parser, ParserMetrics> map = new HashMap<>();
+
+        for (ParseMetrics metrics = this; metrics != null; metrics = metrics.next)
+            for (int id = 0; id < metrics.invocations.length; ++id)
+                if (metrics.invocations[id] > 0)
+                    metrics.add_to(
+                        map.computeIfAbsent(metrics.index.parser(id), ParserMetrics::new), id);
+
+        return map;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private void add_to (ParserMetrics result, int id)
+    {
+        result.self_time   += self_times[id];
+        result.total_time  += total_times[id];
+        result.invocations += invocations[id];
+    }
 
     // ---------------------------------------------------------------------------------------------
 }
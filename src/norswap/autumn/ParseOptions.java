@@ -17,8 +17,8 @@ import static norswap.utils.Util.cast;
  * ParseOptionsBuilder#get()} to create the option set.
  *
  * <p>Instances may usually be reused, but beware that {@link #metrics} return an object that is
- * shared accross parses. For one, this object is not thread-safe, and for two, sharing it might not
- * be what you want.
+ * shared accross parses. This object is thread-safe (see {@link ParseMetrics}), but sharing it
+ * might not be what you want.
  *
  * <p>The canonical documentation for an option is the field through which it is accessible in
  * {@link ParseOptions}.
@@ -34,7 +34,11 @@ import static norswap.utils.Util.cast;
  *     <li>{@link #trace} = {@code false}</li>
  *     <li>{@link #record_call_stack} = {@code false}</li>
  *     <li>{@link #well_formedness_check} = {@code true}</li>
+ *     <li>{@link #two_phase} = {@code false}</li>
+ *     <li>{@link #counters} = {@code false}</li>
+ *     <li>{@link #jfr} = {@code false}</li>
  *     <li>{@link #metrics} = {@code null}</li>
+ *     <li>{@link #profiler} = {@code null}</li>
  * </ul>
  *
  * <p>The code ensures that if {@link #trace} is true/false, its corresponding {@link #metrics}
@@ -53,6 +57,10 @@ public final class ParseOptions
      * Indicates whether the parse traces its execution. This records performance metrics for each
      * parser (see {@link ParserMetrics}) into {@link Parse#parse_metrics}. Enabling this flag does
      * slow down the execution considerably (around x2 in our initial tests).
+     *
+     * <p>Only the parsers reachable from the root parser through {@link Parser#children()} are
+     * recorded. The self time of other parsers (e.g. helper parsers built internally by a parser)
+     * is accounted to their caller.
      */
     public final boolean trace;
 
@@ -78,6 +86,55 @@ public final class ParseOptions
 
     // ---------------------------------------------------------------------------------------------
 
+    /**
+     * Indicates whether the parse is performed in two phases. The first phase runs without any
+     * error bookkeeping (no furthest error tracking, no call stack). If it does not fully match the
+     * input (or throws an exception), it is discarded and the parse is run again normally, so that
+     * the {@link ParseResult} is the same as that of a normal parse.
+     *
+     * <p>This speeds up inputs that parse successfully, at the cost of parsing failing inputs
+     * twice. Combined with {@link #record_call_stack}, it makes it possible to get call stacks for
+     * failing inputs without paying for them on successful inputs.
+     *
+     * <p>Ignored if {@link #trace} is set. Parsers must not depend on the error state ({@link
+     * Parse#error}) to decide whether they match.
+     */
+    public final boolean two_phase;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Indicates whether the parse counts parser invocations, backtracking and memoization events,
+     * reported in {@link ParseResult#stats} (see {@link ParseStats}).
+     *
+     * <p>Unlike {@link #trace}, this does not measure time, and is cheap enough to be enabled in
+     * production, e.g. to spot inputs that cause excessive backtracking.
+     *
+     * <p>However, compiled parsers ({@link Autumn#compile}) run their original, uncompiled parser
+     * graph when this is set, as the compiled nodes do not count their invocations. Enabling this
+     * option thus forgoes the speedup of compilation.
+     */
+    public final boolean counters;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Indicates whether the parse emits Java Flight Recorder events: a {@link
+     * norswap.autumn.jfr.ParseEvent} for the parse, a {@link norswap.autumn.jfr.MemoEvent} for
+     * each memoizer at the end of the parse, and a {@link norswap.autumn.jfr.SlowRuleEvent} for
+     * each rule invocation that exceeds the threshold of the event.
+     *
+     * <p>The events can further be enabled, disabled and configured through the JFR settings of
+     * the recording. Requires a Java runtime that includes JFR (Java 11+, or 8u262+).
+     *
+     * <p>This option implies the recording of counters (see {@link #counters}), to report the
+     * number of invocations in the parse event. As a result, compiled parsers run their original,
+     * uncompiled parser graph when this is set.
+     */
+    public final boolean jfr;
+
+    // ---------------------------------------------------------------------------------------------
+
     /**
      * If non-null, specifies a function returning a {@link ParseMetrics} object that will receive
      * the trace measurements made during the parse. You can aggregate measurements over multiple
@@ -87,6 +144,15 @@ public final class ParseOptions
 
     // ---------------------------------------------------------------------------------------------
 
+    /**
+     * If non-null, the parse maintains a stack of the rules being invoked, which is sampled by this
+     * profiler while it is running (see {@link RuleProfiler}). The same profiler can be shared by
+     * multiple parses.
+     */
+    public final RuleProfiler profiler;
+
+    // ---------------------------------------------------------------------------------------------
+
     /**
      * A map contain user-defined options.
      */
@@ -105,15 +171,33 @@ public final class ParseOptions
 
     private ParseOptions
         (boolean trace, boolean record_call_stack, boolean well_formedness_check,
-         Supplier<ParseMetrics> metrics, HashMap<Object, Object> custom_options)
+         boolean two_phase, boolean counters, boolean jfr, Supplier<ParseMetrics> metrics,
+         RuleProfiler profiler, HashMap<Object, Object> custom_options)
     {
         this.trace = trace;
         this.record_call_stack = record_call_stack;
         this.well_formedness_check = well_formedness_check;
+        this.two_phase = two_phase;
+        this.counters = counters;
+        this.jfr = jfr;
         this.metrics = metrics;
+        this.profiler = profiler;
         this.custom_options = custom_options;
     }
 
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the options for the first phase of a {@link #two_phase} parse: the same options, but
+     * without {@link #record_call_stack}.
+     */
+    ParseOptions first_phase()
+    {
+        return !record_call_stack ? this : new ParseOptions(
+            trace, false, well_formedness_check, two_phase, counters, jfr, metrics, profiler,
+            custom_options);
+    }
+
     // =============================================================================================
 
     /**
@@ -155,6 +239,33 @@ public final class ParseOptions
 
     // ---------------------------------------------------------------------------------------------
 
+    /**
+     * Enables/disables the {@link ParseOptions#two_phase} option.
+     */
+    public static ParseOptionsBuilder two_phase (boolean enabled) {
+        return new ParseOptionsBuilder().two_phase(enabled);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Enables/disables the {@link ParseOptions#counters} option.
+     */
+    public static ParseOptionsBuilder counters (boolean enabled) {
+        return new ParseOptionsBuilder().counters(enabled);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Enables/disables the {@link ParseOptions#jfr} option.
+     */
+    public static ParseOptionsBuilder jfr (boolean enabled) {
+        return new ParseOptionsBuilder().jfr(enabled);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
     /**
      * Sets the {@link ParseOptions#metrics} option and sets {@link ParseOptions#trace}
      * to {@code metrics != null}.
@@ -165,6 +276,15 @@ public final class ParseOptions
 
     // ---------------------------------------------------------------------------------------------
 
+    /**
+     * Sets the {@link ParseOptions#profiler} option.
+     */
+    public static ParseOptionsBuilder profiler (RuleProfiler profiler) {
+        return new ParseOptionsBuilder().profiler(profiler);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
     /**
      * Returns a parse options builder with the default options (see {@link ParseOptions}).
      */
@@ -191,7 +311,11 @@ public final class ParseOptions
         private boolean trace = false;
         private boolean record_call_stack = false;
         private boolean well_formedness_check = true;
+        private boolean two_phase = false;
+        private boolean counters = false;
+        private boolean jfr = false;
         private Supplier<ParseMetrics> metrics = null;
+        private RuleProfiler profiler = null;
         private HashMap<Object, Object> custom_options = new HashMap<>();
 
         private ParseOptionsBuilder() {}
@@ -236,6 +360,33 @@ public final class ParseOptions
             return this;
         }
 
+        /**
+         * Enables/disables the {@link ParseOptions#two_phase} option.
+         */
+        public ParseOptionsBuilder two_phase (boolean enabled)
+        {
+            two_phase = enabled;
+            return this;
+        }
+
+        /**
+         * Enables/disables the {@link ParseOptions#counters} option.
+         */
+        public ParseOptionsBuilder counters (boolean enabled)
+        {
+            counters = enabled;
+            return this;
+        }
+
+        /**
+         * Enables/disables the {@link ParseOptions#jfr} option.
+         */
+        public ParseOptionsBuilder jfr (boolean enabled)
+        {
+            jfr = enabled;
+            return this;
+        }
+
         /**
          * Sets the {@link ParseOptions#metrics} option and sets {@link ParseOptions#trace}
          * to {@code metrics != null}.
@@ -247,13 +398,22 @@ public final class ParseOptions
             return this;
         }
 
+        /**
+         * Sets the {@link ParseOptions#profiler} option.
+         */
+        public ParseOptionsBuilder profiler (RuleProfiler profiler)
+        {
+            this.profiler = profiler;
+            return this;
+        }
+
         /**
          * Builds the set of options.
          */
         public ParseOptions get()
         {
-            return new ParseOptions(
-                trace, record_call_stack, well_formedness_check, metrics, custom_options);
+            return new ParseOptions(trace, record_call_stack, well_formedness_check, two_phase,
+                counters, jfr, metrics, profiler, custom_options);
         }
     }
 
@@ -2,6 +2,7 @@ package norswap.autumn;
 
 import norswap.autumn.util.ArrayStack;
 import norswap.utils.Exceptions;
+import java.util.Collections;
 import java.util.Map;
 
 import static norswap.utils.Util.cast;
@@ -115,6 +116,17 @@ public final class ParseResult
 
     // ---------------------------------------------------------------------------------------------
 
+    /**
+     * Parse counters, if the {@link ParseOptions#counters} (or {@link ParseOptions#jfr}) option was
+     * specified, null otherwise.
+     *
+     * <p>For a {@link ParseOptions#two_phase} parse, these only include the counts of the phase
+     * that produced the result, so that they are the same as for a normal parse.
+     */
+    public final ParseStats stats;
+
+    // ---------------------------------------------------------------------------------------------
+
     /**
      * The value at the top of the value stack if the parse was successful and the value stack
      * is non-empty, null otherwise.
@@ -141,7 +153,8 @@ public final class ParseResult
         ArrayStack<?> value_stack,
         Map<Object, Object> parse_states,
         ParserCallStack error_call_stack,
-        ParseMetrics parse_metrics)
+        ParseMetrics parse_metrics,
+        ParseStats stats)
     {
         this.success = success;
         this.full_match = full_match;
@@ -155,6 +168,20 @@ public final class ParseResult
         this.parse_states = parse_states;
         this.error_call_stack = error_call_stack;
         this.parse_metrics = parse_metrics;
+        this.stats = stats;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the result of a parse of {@code parser} that was aborted by {@code thrown}, which
+     * the parse itself does not catch (e.g. an error while reading the input, or a {@link
+     * PotentiallyMalformedGrammarError}). Used by the {@link Autumn} {@code parse_all} methods.
+     */
+    static ParseResult failed (Parser parser, ParseOptions options, Throwable thrown)
+    {
+        return new ParseResult(false, false, -1, thrown, parser, options, 0,
+            thrown.getMessage(), null, Collections.emptyMap(), null, null, null);
     }
 
     // ---------------------------------------------------------------------------------------------
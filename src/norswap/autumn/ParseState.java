@@ -16,7 +16,7 @@ import static norswap.utils.Util.cast;
  * case, any change to the data object ({@link Data}) must be done through a {@link SideEffect}.
  *
  * <p>This class does not actually store the parse state. Instead it is stored in the {@link
- * Parse#state_data} map. This class also includes a cache to speed up lookups.
+ * Parse#state_data} map.
  *
  * <p>Each instance of this class designates his own {@link Data} instances in the {@link
  * Parse#state_data} maps using a <b>unique</b> object key. The convention is to use a {@link Class}
@@ -32,35 +32,22 @@ import static norswap.utils.Util.cast;
  * in the {@link Parse} object is necessary because parsers are not tied to a particular parse and
  * can be reused.
  *
- * <p>This class caches a (parse, thread) pair. It's possible for multiple parse on different
- * threads to use this kind of parse state (with different instances of {@link Data} and {@link
- * Parse}!), but this class will cache the state of a single thread, while the other thread will
- * fall back on querying {@link Parse#state_data} on access. The cached thread is selected
- * non-deterministically (it's a race). After the parse that owns the cache completes, the cache is
- * evicted, enabling other threads, or another parse on the same thread, to take ownership of the
- * cache.
- *
- * <p>If for performance reasons you really require parse state caching for every thread, give each
- * thread his own copy of the parser.
+ * <p>The parse states reported by the parsers of a grammar ({@link Parser#parse_states()}) receive
+ * a dense slot index in this grammar ({@link GrammarIndex#state_index}), used to look up their data
+ * in an array held by the {@link Parse}, without going through the map. This array is as large as
+ * the number of parse states in the grammar. Other parse states are looked up in the map. Since
+ * the array belongs to the parse, instances of this class can be used by multiple parses running
+ * concurrently on different threads.
  */
 public class ParseState<Data>
 {
     // ---------------------------------------------------------------------------------------------
 
-    private class Cached
-    {
-        final Parse parse;
-        final Data data;
-
-        Cached (Parse parse) {
-            this.parse = parse;
-            this.data = get_or_init_data(parse);
-        }
-    }
-
-    // ---------------------------------------------------------------------------------------------
-
-    private Cached cached;
+    /**
+     * The slot index of this instance in the first grammar that indexed it, see {@link
+     * GrammarIndex#state_index}. Set once, when that grammar is indexed.
+     */
+    GrammarIndex.Home home;
 
     // ---------------------------------------------------------------------------------------------
 
@@ -97,7 +84,6 @@ public class ParseState<Data>
             data = init.get();
             if (data == null) throw new Error("state initialized to null");
             parse.state_data.put(key, data);
-            parse.parse_states.add(this);
         }
         return data;
     }
@@ -109,28 +95,15 @@ public class ParseState<Data>
      */
     public Data data (Parse parse)
     {
-        // There are race conditions on cached, but ultimately a single cache entry will
-        // prevail, with other threads forced to the slow path. The semantics of the function
-        // is preserved during races.
-
-        Cached c = cached;
-        if (c == null)
-            cached = c = new Cached(parse);
-        return c.parse == parse
-            ? c.data
-            : get_or_init_data(parse); // slow path
-    }
-
-    // ---------------------------------------------------------------------------------------------
-
-    /**
-     * Discard the cached parse state data. Automatically called after a parse in order to enable
-     * another thread to cache his data.
-     */
-    void discard_cache (Parse parse)
-    {
-        if (cached != null && cached.parse == parse)
-            cached = null;
+        int index = parse.grammar.state_index(this);
+        if (index < 0)
+            return get_or_init_data(parse); // not part of the grammar
+
+        Object[] slots = parse.state_slots;
+        Object data = slots[index];
+        return data != null
+            ? cast(data)
+            : cast(slots[index] = get_or_init_data(parse)); // slow path
     }
 
     // ---------------------------------------------------------------------------------------------
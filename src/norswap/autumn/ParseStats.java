@@ -0,0 +1,128 @@
+package norswap.autumn;
+
+/**
+ * Counters describing the work performed by a parse, recorded if the {@link ParseOptions#counters}
+ * option is set, and made available through {@link ParseResult#stats} (and {@link Parse#stats}
+ * during the parse).
+ *
+ * <p>No time measurements are made, making these counters cheap to record. A high number of
+ * {@link #backtracked} positions or {@link #rolled_back} log entries relative to the input size
+ * indicates inputs that trigger excessive backtracking.
+ *
+ * <p>Compiled parsers ({@link Autumn#compile}) run the original parser graph when counters are
+ * recorded.
+ *
+ * <p>Fields are public for convenience but should not be written.
+ */
+public final class ParseStats
+{
+    // ---------------------------------------------------------------------------------------------
+
+    /** Number of parser invocations ({@link Parser#parse}). */
+    public long invocations = 0;
+
+    /** Number of parser invocations that failed. */
+    public long failures = 0;
+
+    /**
+     * Number of input positions that {@link Parser#parse} rewound after failed invocations, i.e.
+     * the sum of the number of positions consumed by each failed invocation.
+     */
+    public long backtracked = 0;
+
+    /** Number of log entries undone by {@link Log#rollback}. */
+    public long rolled_back = 0;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /** Number of lookups in memoizers (memoized parsers and {@link DSL#tokens}). */
+    public long memo_lookups = 0;
+
+    /** Number of lookups in memoizers that returned a result. */
+    public long memo_hits = 0;
+
+    /** Number of results stored in memoizers. */
+    public long memo_stores = 0;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Maximum size reached by the log ({@link Parse#log}), sampled at the end of each parser
+     * invocation.
+     */
+    public int peak_log_size = 0;
+
+    /**
+     * Maximum size reached by the value stack ({@link Parse#stack}), sampled at the end of each
+     * parser invocation.
+     */
+    public int peak_stack_size = 0;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Records the end of an invocation of {@link Parser#doparse} that started at {@code pos0}.
+     * Called before the position is reset and the log rolled back.
+     */
+    void record (Parse parse, boolean success, int pos0)
+    {
+        ++ invocations;
+        if (!success) {
+            ++ failures;
+            backtracked += parse.pos - pos0;
+        }
+        int log_size = parse.log.size();
+        if (log_size > peak_log_size) peak_log_size = log_size;
+        int stack_size = parse.stack.size();
+        if (stack_size > peak_stack_size) peak_stack_size = stack_size;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Records a lookup in a memoizer, which returned a result iff {@code hit}.
+     */
+    public void memo_lookup (boolean hit)
+    {
+        ++ memo_lookups;
+        if (hit) ++ memo_hits;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Adds the counts of {@code other} (e.g. those of a forked parse, see {@link Parse#fork}) to
+     * this object. Peak sizes are combined by taking their maximum.
+     */
+    public void add (ParseStats other)
+    {
+        invocations     += other.invocations;
+        failures        += other.failures;
+        backtracked     += other.backtracked;
+        rolled_back     += other.rolled_back;
+        memo_lookups    += other.memo_lookups;
+        memo_hits       += other.memo_hits;
+        memo_stores     += other.memo_stores;
+        peak_log_size   = Math.max(peak_log_size, other.peak_log_size);
+        peak_stack_size = Math.max(peak_stack_size, other.peak_stack_size);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public String toString()
+    {
+        return "ParseStats{"
+            + "invocations: "       + invocations
+            + ", failures: "        + failures
+            + ", backtracked: "     + backtracked
+            + ", rolled_back: "     + rolled_back
+            + ", memo_lookups: "    + memo_lookups
+            + ", memo_hits: "       + memo_hits
+            + ", memo_stores: "     + memo_stores
+            + ", peak_log_size: "   + peak_log_size
+            + ", peak_stack_size: " + peak_stack_size
+            + "}";
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
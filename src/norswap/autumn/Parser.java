@@ -1,5 +1,8 @@
 package norswap.autumn;
 
+import norswap.autumn.jfr.Events;
+import java.util.Collections;
+
 /**
  * The parent class for all parsers.
  *
@@ -37,6 +40,17 @@ public abstract class Parser
 {
     // ---------------------------------------------------------------------------------------------
 
+    /** The index of the grammar rooted at this parser, see {@link GrammarIndex#of}. */
+    volatile GrammarIndex grammar_index;
+
+    /**
+     * The id of this parser in the first grammar that indexed it, see {@link GrammarIndex#id}. Set
+     * once, when that grammar is indexed.
+     */
+    GrammarIndex.Home home;
+
+    // ---------------------------------------------------------------------------------------------
+
     private String rule;
 
     // ---------------------------------------------------------------------------------------------
@@ -101,8 +115,8 @@ public abstract class Parser
      */
     public final boolean parse (Parse parse)
     {
-        if (parse.options.trace)
-            return tracing_parse(parse);
+        if (parse.instrumented)
+            return instrumented_parse(parse);
 
         int pos0 = parse.pos;
         int log0 = parse.log.size();
@@ -149,22 +163,162 @@ public abstract class Parser
 
     // ---------------------------------------------------------------------------------------------
 
+    /**
+     * Implementation of {@link #parse(Parse)} when {@link Parse#instrumented} is set. Identical to
+     * the normal case, but calls {@link #instrumented_doparse} instead of {@link #doparse}, and
+     * dispatches to {@link #tracing_parse} and {@link #plain_parse} when appropriate.
+     */
+    private boolean instrumented_parse (Parse parse)
+    {
+        if (parse.options.trace)
+            return tracing_parse(parse);
+
+        if (!parse.track_errors)
+            return plain_parse(parse);
+
+        int pos0 = parse.pos;
+        int log0 = parse.log.size();
+        int err0 = parse.error;
+        String errmsg0 = parse.error_message;
+        ParserCallStack stk0 = parse.error_call_stack;
+
+        if (parse.options.record_call_stack)
+            parse.call_stack.push(this, pos0);
+
+        boolean result = instrumented_doparse(parse);
+
+        if (exclude_errors) {
+            parse.error = err0;
+            parse.error_message = errmsg0;
+            parse.error_call_stack = stk0;
+        }
+
+        if (result) {
+            if (parse.options.record_call_stack)
+                parse.call_stack.pop();
+            return true;
+        }
+
+        if (!exclude_errors && parse.error <= pos0) {
+            parse.error = pos0;
+            //noinspection StringEquality
+            if (parse.error_message == errmsg0)
+                parse.error_message = null;
+            if (parse.options.record_call_stack)
+                parse.error_call_stack = parse.call_stack.clone();
+        }
+
+        if (parse.options.record_call_stack)
+            parse.call_stack.pop();
+
+        parse.pos = pos0;
+
+        if (parse.log.size() > log0)
+            parse.log.rollback(log0);
+
+        return false;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Calls {@link #doparse}, and performs the bookkeeping enabled in {@link Parse#instrumented}
+     * mode: observing rules ({@link #observed_doparse}), recording the examined input ({@link
+     * Parse#track_examined}) and updating the counters ({@link Parse#stats}).
+     */
+    private boolean instrumented_doparse (Parse parse)
+    {
+        int pos0 = parse.pos;
+
+        boolean result = rule != null && parse.observe_rules
+            ? observed_doparse(parse)
+            : doparse(parse);
+
+        if (parse.track_examined)
+            parse.examine(Math.max(pos0, parse.pos) + 1);
+
+        if (parse.stats != null)
+            parse.stats.record(parse, result, pos0);
+
+        return result;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Calls {@link #doparse} for this parser (which must be a rule), pushing it on the rule stack
+     * sampled by the {@link ParseOptions#profiler} and emitting a JFR event if it is slow ({@link
+     * ParseOptions#jfr}).
+     */
+    private boolean observed_doparse (Parse parse)
+    {
+        RuleProfiler.RuleStack stack = parse.rule_stack;
+
+        if (!parse.options.jfr) {
+            stack.push(this);
+            try {
+                return doparse(parse);
+            } finally {
+                stack.pop();
+            }
+        }
+
+        int pos0 = parse.pos;
+        Object event = Events.begin_rule();
+
+        if (stack != null)
+            stack.push(this);
+
+        boolean result;
+        try {
+            result = doparse(parse);
+        } finally {
+            if (stack != null)
+                stack.pop();
+        }
+
+        if (event != null)
+            Events.end_rule(event, this, pos0, parse.pos, result);
+
+        return result;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Implementation of {@link #parse(Parse)} for the first phase of a {@link
+     * ParseOptions#two_phase} parse, which does not keep track of errors.
+     */
+    private boolean plain_parse (Parse parse)
+    {
+        int pos0 = parse.pos;
+        int log0 = parse.log.size();
+
+        boolean result = instrumented_doparse(parse);
+
+        if (result)
+            return true;
+
+        parse.pos = pos0;
+
+        if (parse.log.size() > log0)
+            parse.log.rollback(log0);
+
+        return false;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
     /**
      * Implementation of {@link #parse(Parse)} for the tracing case. See {@link ParseOptions#trace}
      * for more info.
      */
     private boolean tracing_parse (Parse parse)
     {
+        int id = parse.grammar.id(this);
+        int depth = parse.trace_enter(id);
         long time0 = System.nanoTime();
 
-        int trace0 = parse.trace_timings.size();
-        ParserMetrics metrics
-            = parse.parse_metrics.metrics.computeIfAbsent(this, k -> new ParserMetrics(this));
-        ++ metrics.invocations;
-        ++ metrics.recursive_invocations;
-
-        long time1 = System.nanoTime();
-
         int pos0 = parse.pos;
         int log0 = parse.log.size();
         int err0 = parse.error;
@@ -173,7 +327,7 @@ public abstract class Parser
         if (parse.options.record_call_stack)
             parse.call_stack.push(this, pos0);
 
-        boolean result = doparse(parse);
+        boolean result = instrumented_doparse(parse);
 
         if (exclude_errors) {
             parse.error = err0;
@@ -198,26 +352,7 @@ public abstract class Parser
             parse.log.rollback(log0);
         }
 
-        long total = System.nanoTime() - time1;
-
-        long overheads = 0; // cumulative overheads time in children
-        long children = 0;  // total time spent in children (including overheads)
-        int size = parse.trace_timings.size();
-
-        for (int i = trace0; i < size; i += 2) {
-            children  += parse.trace_timings.pop();
-            overheads += parse.trace_timings.pop();
-        }
-
-        metrics.self_time += total - children;
-
-        if (--metrics.recursive_invocations == 0)
-            metrics.total_time += total - overheads;
-
-        overheads += System.nanoTime() - time0 - total;
-        parse.trace_timings.push(overheads);
-        parse.trace_timings.push(System.nanoTime() - time0);
-
+        parse.trace_exit(id, depth, System.nanoTime() - time0);
         return result;
     }
 
@@ -245,6 +380,20 @@ public abstract class Parser
 
     // ---------------------------------------------------------------------------------------------
 
+    /**
+     * Returns the parse states that this parser (but not its children) may access during the
+     * execution of its {@link #parse} method. These states receive a slot in the parses of the
+     * grammars that include this parser (see {@link GrammarIndex}), making their access faster.
+     * Other parse states still work, but are looked up in {@link Parse#state_data}.
+     *
+     * <p>Returns an empty list by default.
+     */
+    public Iterable<ParseState<?>> parse_states() {
+        return Collections.emptyList();
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
     /**
      * Returns the rule name, if any, otherwise the full string representation of this parser, as
      * per {@link #toStringFull()}.
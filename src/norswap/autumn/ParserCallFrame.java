@@ -2,6 +2,11 @@ package norswap.autumn;
 
 /**
  * Represents a parser invocation at a certain input position.
+ *
+ * <p>Frames are immutable and linked to the frame of the invocation that caused them ({@link
+ * #caller}), forming the persistent representation of a {@link ParserCallStack}. A frame can
+ * therefore be shared between the live call stack of a parse and any number of call stack
+ * snapshots.
  */
 public final class ParserCallFrame
 {
@@ -15,10 +20,26 @@ public final class ParserCallFrame
 
     // ---------------------------------------------------------------------------------------------
 
-    ParserCallFrame (Parser parser, int position)
+    /**
+     * The frame of the invocation that caused this one, or null if this is the bottom frame.
+     */
+    public final ParserCallFrame caller;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * The number of frames in the stack whose top frame is this frame (including this one).
+     */
+    public final int depth;
+
+    // ---------------------------------------------------------------------------------------------
+
+    ParserCallFrame (Parser parser, int position, ParserCallFrame caller)
     {
         this.parser = parser;
         this.position = position;
+        this.caller = caller;
+        this.depth = caller == null ? 1 : caller.depth + 1;
     }
 
     // ---------------------------------------------------------------------------------------------
@@ -1,21 +1,119 @@
 package norswap.autumn;
 
-import norswap.autumn.util.ArrayStack;
 import norswap.utils.Strings;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
 
 /**
  * A stack of {@link ParserCallFrame} representing parser invocations at a certain position.
+ *
+ * <p>The stack is represented as a linked list of immutable frames (see {@link
+ * ParserCallFrame#caller}), and this class only holds a reference to the top frame. Pushing and
+ * popping a frame are O(1), and so is taking a snapshot of the stack ({@link #clone()}), which
+ * shares all its frames with the original. This makes capturing the call stack on each new
+ * furthest error ({@link Parse#error_call_stack}) cheap, regardless of the depth of the stack.
  */
-public final class ParserCallStack extends ArrayStack<ParserCallFrame>
+public final class ParserCallStack implements Iterable<ParserCallFrame>
 {
     // ---------------------------------------------------------------------------------------------
 
+    private ParserCallFrame top;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Creates a new empty stack.
+     */
+    public ParserCallStack() {}
+
+    // ---------------------------------------------------------------------------------------------
+
+    private ParserCallStack (ParserCallFrame top) {
+        this.top = top;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
     /**
      * Pushes a new call frame onto the stack.
      */
     public void push (Parser parser, int position)
     {
-        push(new ParserCallFrame(parser, position));
+        top = new ParserCallFrame(parser, position, top);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Pops the top frame of the stack and returns it.
+     *
+     * @throws NoSuchElementException if the stack is empty
+     */
+    public ParserCallFrame pop()
+    {
+        ParserCallFrame frame = peek();
+        top = frame.caller;
+        return frame;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the top frame of the stack.
+     *
+     * @throws NoSuchElementException if the stack is empty
+     */
+    public ParserCallFrame peek()
+    {
+        if (top == null) throw new NoSuchElementException("empty call stack");
+        return top;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the top frame of the stack, or null if the stack is empty.
+     */
+    public ParserCallFrame top() {
+        return top;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the number of frames in the stack.
+     */
+    public int size() {
+        return top == null ? 0 : top.depth;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    public boolean isEmpty() {
+        return top == null;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns an array of the frames of the stack, from bottom to top.
+     */
+    public ParserCallFrame[] frames()
+    {
+        ParserCallFrame[] frames = new ParserCallFrame[size()];
+        for (ParserCallFrame frame = top; frame != null; frame = frame.caller)
+            frames[frame.depth - 1] = frame;
+        return frames;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Iterates over the frames of the stack, from bottom to top.
+     */
+    @Override public Iterator<ParserCallFrame> iterator() {
+        return Arrays.asList(frames()).iterator();
     }
 
     // ---------------------------------------------------------------------------------------------
@@ -78,11 +176,43 @@ public final class ParserCallStack extends ArrayStack<ParserCallFrame>
 
     // ---------------------------------------------------------------------------------------------
 
-    @Override public ParserCallStack clone()
+    /**
+     * Returns a snapshot of this stack, in O(1). The snapshot shares its frames with this stack,
+     * but pushing or popping frames on either does not affect the other.
+     */
+    @Override public ParserCallStack clone() {
+        return new ParserCallStack(top);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Two stacks are equal if their frames have the same parsers (by reference) and positions, in
+     * the same order. The comparison stops as soon as both stacks share a frame.
+     */
+    @Override public boolean equals (Object o)
     {
-        return (ParserCallStack) super.clone();
+        if (this == o) return true;
+        if (!(o instanceof ParserCallStack)) return false;
+        ParserCallFrame a = top, b = ((ParserCallStack) o).top;
+        while (a != b) {
+            if (a == null || b == null || a.parser != b.parser || a.position != b.position)
+                return false;
+            a = a.caller;
+            b = b.caller;
+        }
+        return true;
     }
 
     // ---------------------------------------------------------------------------------------------
-}
 
+    @Override public int hashCode()
+    {
+        int h = 1;
+        for (ParserCallFrame frame = top; frame != null; frame = frame.caller)
+            h = 31 * (31 * h + System.identityHashCode(frame.parser)) + frame.position;
+        return h;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
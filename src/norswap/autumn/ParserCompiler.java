@@ -0,0 +1,703 @@
+package norswap.autumn;
+
+import norswap.autumn.memo.MemoEntry;
+import norswap.autumn.memo.Memoizer;
+import norswap.autumn.parsers.*;
+import norswap.autumn.util.CharClass;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.IntPredicate;
+
+import static norswap.utils.Vanilla.map;
+
+/**
+ * A visitor that compiles a parser graph into a tree of specialized {@link Node}s, wrapped into
+ * a {@link CompiledParser}.
+ *
+ * <p>Each node performs exactly what {@link Parser#parse} would do for the corresponding parser,
+ * minus the handling of {@link ParseOptions#trace}, {@link ParseOptions#record_call_stack}, {@link
+ * ParseOptions#counters} and {@link ParseOptions#profiler} (the compiled parser falls back on the
+ * original graph if those are set). The bookkeeping performed by {@link Parser#parse} is
+ * specialized per node: for instance, character predicates and string matches never touch the log
+ * or the error message, so they skip saving and restoring those. Nodes call their child nodes
+ * directly, instead of going through the megamorphic {@link Parser#doparse} dispatch.
+ *
+ * <p>The following parsers are compiled: {@link Sequence}, {@link Choice}, {@link Repeat}, {@link
+ * Optional}, {@link Lookahead}, {@link Not}, {@link StringMatch}, {@link CharPredicate}, {@link
+ * Memo}, {@link Empty}, {@link Fail}, {@link LazyParser} and {@link AbstractForwarding}. All other
+ * parsers (including custom parsers) are invoked normally through {@link Parser#parse}, which means
+ * their own sub-parsers run uncompiled.
+ *
+ * <p>Compilation leaves the original parser graph untouched: the compiled nodes reference the
+ * same predicates, memoizers and parse states as the original parsers. In particular, compiled and
+ * uncompiled {@link Memo} parsers share their memoized results.
+ *
+ * <p>Use through {@link Autumn#compile(Parser)}. Each instance of this class should only be used
+ * to compile a single parser graph.
+ */
+public final class ParserCompiler implements ParserVisitor
+{
+    // ---------------------------------------------------------------------------------------------
+
+    private static final Node[] witness = new Node[0];
+
+    // ---------------------------------------------------------------------------------------------
+
+    private static HashOverloads overloads = new HashOverloads(ParserCompiler.class);
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public Overloads overloads () {
+        return overloads;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Maps parsers to their compiled nodes.
+     */
+    private final Map<Parser, Node> nodes = new HashMap<>();
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * The node built by the last call to a {@code visit} method.
+     */
+    private Node result;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Compiles the given parser.
+     */
+    public CompiledParser compile (Parser parser) {
+        return new CompiledParser(parser, node(parser));
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the compiled node for the given parser, compiling it if required.
+     *
+     * <p>Within custom overloads (cf. {@link ParserVisitor#extend}), call this to compile
+     * sub-parsers, then assign your own node using {@link #set_result(Node)}.
+     */
+    public Node node (Parser parser)
+    {
+        Node node = nodes.get(parser);
+        if (node != null)
+            return node;
+
+        // break recursion: if the parser is reached again while it is being compiled,
+        // the reference will be used
+        Ref ref = new Ref();
+        nodes.put(parser, ref);
+        result = null;
+        parser.accept(this);
+        node = result != null ? result : new Call(parser);
+        result = null;
+        ref.target = node;
+        nodes.put(parser, node);
+        return node;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Sets the compiled node for the parser being visited.
+     */
+    public void set_result (Node node) {
+        result = node;
+    }
+
+    // =============================================================================================
+
+    @Override public void default_action (Parser parser) {
+        result = new Call(parser);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public void visit (AbstractChoice parser)     { default_action(parser); }
+    @Override public void visit (AbstractPrimitive parser)  { default_action(parser); }
+    @Override public void visit (AbstractWrapper parser)    { default_action(parser); }
+    @Override public void visit (Around parser)             { default_action(parser); }
+    @Override public void visit (Bounded parser)            { default_action(parser); }
+    @Override public void visit (Collect parser)            { default_action(parser); }
+    @Override public void visit (ContextPredicate parser)   { default_action(parser); }
+    @Override public void visit (GuardedRecursion parser)   { default_action(parser); }
+    @Override public void visit (LeftExpression parser)     { default_action(parser); }
+    @Override public void visit (LeftFold parser)           { default_action(parser); }
+    @Override public void visit (LeftRecursive parser)      { default_action(parser); }
+    @Override public void visit (Longest parser)            { default_action(parser); }
+    @Override public void visit (ObjectPredicate parser)    { default_action(parser); }
+    @Override public void visit (RightExpression parser)    { default_action(parser); }
+    @Override public void visit (RightFold parser)          { default_action(parser); }
+    @Override public void visit (TokenChoice parser)        { default_action(parser); }
+    @Override public void visit (TokenParser parser)        { default_action(parser); }
+    @Override public void visit (TrieMatch parser)          { default_action(parser); }
+    @Override public void visit (Span parser)               { default_action(parser); }
+    @Override public void visit (ScanUntil parser)          { default_action(parser); }
+    @Override public void visit (SplitRepeat parser)        { default_action(parser); }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public void visit (Empty parser) {
+        result = new EmptyNode();
+    }
+
+    @Override public void visit (Fail parser) {
+        result = new FailNode(parser.exclude_errors);
+    }
+
+    @Override public void visit (CharPredicate parser) {
+        result = parser.char_class != null
+            ? new CharClassNode(parser.exclude_errors, parser.char_class)
+            : new CharPredicateNode(parser.exclude_errors, parser.predicate);
+    }
+
+    @Override public void visit (StringMatch parser)
+    {
+        result = parser.whitespace == null
+            ? new StringMatchNode(parser.exclude_errors, parser.codepoints)
+            : new StringMatchWsNode(
+                parser.exclude_errors, parser.codepoints, node(parser.whitespace));
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public void visit (Sequence parser) {
+        result = new SequenceNode(parser.exclude_errors,
+            map(parser.children(), witness, this::node));
+    }
+
+    @Override public void visit (Choice parser) {
+        result = new ChoiceNode(parser.exclude_errors,
+            map(parser.children(), witness, this::node), parser.dispatch());
+    }
+
+    @Override public void visit (Repeat parser) {
+        result = new RepeatNode(parser.exclude_errors,
+            parser.min, parser.exact, node(parser.child));
+    }
+
+    @Override public void visit (Optional parser) {
+        result = new OptionalNode(parser.exclude_errors, node(parser.child));
+    }
+
+    @Override public void visit (Lookahead parser) {
+        result = new LookaheadNode(parser.exclude_errors, node(parser.child));
+    }
+
+    @Override public void visit (Not parser) {
+        result = new NotNode(parser.exclude_errors, node(parser.child));
+    }
+
+    @Override public void visit (Memo parser) {
+        result = new MemoNode(parser.exclude_errors, parser, node(parser.child));
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    // The bookkeeping of these parsers is redundant with that of their child, unless they
+    // exclude errors.
+
+    @Override public void visit (LazyParser parser)
+    {
+        Node child = node(parser.child());
+        result = parser.exclude_errors
+            ? new ForwardNode(child)
+            : child;
+    }
+
+    @Override public void visit (AbstractForwarding parser)
+    {
+        Node child = node(parser.forwardee);
+        result = parser.exclude_errors
+            ? new ForwardNode(child)
+            : child;
+    }
+
+    // =============================================================================================
+
+    /**
+     * A compiled parser. Calling {@link #run(Parse)} has the same semantics as calling {@link
+     * Parser#parse(Parse)} on the corresponding parser, for parses that do not use {@link
+     * ParseOptions#trace} and {@link ParseOptions#record_call_stack}.
+     */
+    public static abstract class Node
+    {
+        /**
+         * Same as {@link Parser#parse(Parse)} for the corresponding parser.
+         */
+        public abstract boolean run (Parse parse);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Updates the furthest error after the failure of a parser at {@code pos0} that may not
+     * have modified the log nor the error message itself.
+     */
+    private static boolean primitive_failure (Parse parse, int pos0, boolean exclude_errors)
+    {
+        if (!exclude_errors && parse.error <= pos0) {
+            parse.error = pos0;
+            parse.error_message = null;
+        }
+        return false;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Base class for nodes that call other nodes or arbitrary code, and so must perform the
+     * whole bookkeeping of {@link Parser#parse}. Subclasses implement {@link #body(Parse)}, the
+     * equivalent of {@link Parser#doparse(Parse)}.
+     */
+    public static abstract class CompositeNode extends Node
+    {
+        private final boolean exclude_errors;
+
+        protected CompositeNode (boolean exclude_errors) {
+            this.exclude_errors = exclude_errors;
+        }
+
+        protected abstract boolean body (Parse parse);
+
+        @Override public final boolean run (Parse parse)
+        {
+            int pos0 = parse.pos;
+            int log0 = parse.log.size();
+            int err0 = parse.error;
+            String errmsg0 = parse.error_message;
+            ParserCallStack stk0 = parse.error_call_stack;
+
+            boolean result = body(parse);
+
+            if (exclude_errors) {
+                parse.error = err0;
+                parse.error_message = errmsg0;
+                parse.error_call_stack = stk0;
+            }
+
+            if (result)
+                return true;
+
+            if (!exclude_errors && parse.error <= pos0) {
+                parse.error = pos0;
+                //noinspection StringEquality
+                if (parse.error_message == errmsg0)
+                    parse.error_message = null;
+            }
+
+            parse.pos = pos0;
+
+            if (parse.log.size() > log0)
+                parse.log.rollback(log0);
+
+            return false;
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /** Indirection used to compile recursive references. */
+    private static final class Ref extends Node
+    {
+        Node target;
+
+        @Override public boolean run (Parse parse) {
+            return target.run(parse);
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /** Runs a parser uncompiled. */
+    private static final class Call extends Node
+    {
+        final Parser parser;
+
+        Call (Parser parser) {
+            this.parser = parser;
+        }
+
+        @Override public boolean run (Parse parse) {
+            return parser.parse(parse);
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private static final class EmptyNode extends Node
+    {
+        @Override public boolean run (Parse parse) {
+            return true;
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private static final class FailNode extends Node
+    {
+        final boolean exclude_errors;
+
+        FailNode (boolean exclude_errors) {
+            this.exclude_errors = exclude_errors;
+        }
+
+        @Override public boolean run (Parse parse) {
+            return primitive_failure(parse, parse.pos, exclude_errors);
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private static final class CharPredicateNode extends Node
+    {
+        final boolean exclude_errors;
+        final IntPredicate predicate;
+
+        CharPredicateNode (boolean exclude_errors, IntPredicate predicate) {
+            this.exclude_errors = exclude_errors;
+            this.predicate = predicate;
+        }
+
+        @Override public boolean run (Parse parse)
+        {
+            int pos = parse.pos;
+            if (predicate.test(parse.char_at(pos))) {
+                parse.pos = pos + 1;
+                return true;
+            }
+            return primitive_failure(parse, pos, exclude_errors);
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private static final class CharClassNode extends Node
+    {
+        final boolean exclude_errors;
+        final CharClass char_class;
+
+        CharClassNode (boolean exclude_errors, CharClass char_class) {
+            this.exclude_errors = exclude_errors;
+            this.char_class = char_class;
+        }
+
+        @Override public boolean run (Parse parse)
+        {
+            int pos = parse.pos;
+            if (char_class.test(parse.char_at(pos))) {
+                parse.pos = pos + 1;
+                return true;
+            }
+            return primitive_failure(parse, pos, exclude_errors);
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private static final class StringMatchNode extends Node
+    {
+        final boolean exclude_errors;
+        final int[] codepoints;
+
+        StringMatchNode (boolean exclude_errors, int[] codepoints) {
+            this.exclude_errors = exclude_errors;
+            this.codepoints = codepoints;
+        }
+
+        @Override public boolean run (Parse parse)
+        {
+            int pos = parse.pos;
+            if (parse.match(pos, codepoints)) {
+                parse.pos = pos + codepoints.length;
+                return true;
+            }
+            return primitive_failure(parse, pos, exclude_errors);
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private static final class StringMatchWsNode extends CompositeNode
+    {
+        final int[] codepoints;
+        final Node whitespace;
+
+        StringMatchWsNode (boolean exclude_errors, int[] codepoints, Node whitespace) {
+            super(exclude_errors);
+            this.codepoints = codepoints;
+            this.whitespace = whitespace;
+        }
+
+        @Override protected boolean body (Parse parse)
+        {
+            if (!parse.match(parse.pos, codepoints))
+                return false;
+            parse.pos += codepoints.length;
+            return whitespace.run(parse);
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private static final class SequenceNode extends CompositeNode
+    {
+        final Node[] children;
+
+        SequenceNode (boolean exclude_errors, Node[] children) {
+            super(exclude_errors);
+            this.children = children;
+        }
+
+        @Override protected boolean body (Parse parse)
+        {
+            for (Node child: children)
+                if (!child.run(parse))
+                    return false;
+            return true;
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private static final class ChoiceNode extends CompositeNode
+    {
+        final Node[] children;
+        final int[][] dispatch;
+
+        ChoiceNode (boolean exclude_errors, Node[] children, int[][] dispatch) {
+            super(exclude_errors);
+            this.children = children;
+            this.dispatch = dispatch;
+        }
+
+        @Override protected boolean body (Parse parse)
+        {
+            boolean cut0 = parse.cut;
+            int choice0 = parse.choice_backtrack_points;
+            parse.choice_backtrack_points = parse.backtrack_points ++;
+            try {
+                if (dispatch != null && parse.string != null) {
+                    int c = parse.char_at(parse.pos);
+                    for (int i: dispatch[c < Choice.NON_ASCII ? c : Choice.NON_ASCII]) {
+                        parse.cut = false;
+                        if (children[i].run(parse))
+                            return true;
+                        if (parse.cut)
+                            return false;
+                    }
+                    return false;
+                }
+                for (Node child: children) {
+                    parse.cut = false;
+                    if (child.run(parse))
+                        return true;
+                    if (parse.cut)
+                        return false;
+                }
+                return false;
+            }
+            finally {
+                parse.cut = cut0;
+                parse.choice_backtrack_points = choice0;
+                -- parse.backtrack_points;
+            }
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private static final class RepeatNode extends CompositeNode
+    {
+        final int min;
+        final boolean exact;
+        final Node child;
+
+        RepeatNode (boolean exclude_errors, int min, boolean exact, Node child) {
+            super(exclude_errors);
+            this.min = min;
+            this.exact = exact;
+            this.child = child;
+        }
+
+        @Override protected boolean body (Parse parse)
+        {
+            for (int i = 0; i < min; ++i)
+                if (!child.run(parse))
+                    return false;
+            if (exact)
+                return true;
+
+            ++ parse.backtrack_points;
+            try {
+                while (child.run(parse)) ;
+            }
+            finally {
+                -- parse.backtrack_points;
+            }
+            return true;
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private static final class OptionalNode extends CompositeNode
+    {
+        final Node child;
+
+        OptionalNode (boolean exclude_errors, Node child) {
+            super(exclude_errors);
+            this.child = child;
+        }
+
+        @Override protected boolean body (Parse parse)
+        {
+            ++ parse.backtrack_points;
+            try {
+                child.run(parse);
+            }
+            finally {
+                -- parse.backtrack_points;
+            }
+            return true;
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private static final class LookaheadNode extends CompositeNode
+    {
+        final Node child;
+
+        LookaheadNode (boolean exclude_errors, Node child) {
+            super(exclude_errors);
+            this.child = child;
+        }
+
+        @Override protected boolean body (Parse parse)
+        {
+            int pos0 = parse.pos;
+            boolean success;
+
+            ++ parse.backtrack_points;
+            try {
+                success = child.run(parse);
+            }
+            finally {
+                -- parse.backtrack_points;
+            }
+
+            parse.pos = pos0;
+            return success;
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private static final class NotNode extends CompositeNode
+    {
+        final Node child;
+
+        NotNode (boolean exclude_errors, Node child) {
+            super(exclude_errors);
+            this.child = child;
+        }
+
+        @Override protected boolean body (Parse parse)
+        {
+            int err0 = parse.error;
+            String errmsg0 = parse.error_message;
+            ParserCallStack stk0 = parse.error_call_stack;
+            boolean success;
+            ++ parse.backtrack_points;
+            try {
+                success = !child.run(parse);
+            }
+            finally {
+                -- parse.backtrack_points;
+            }
+            parse.error = err0;
+            //noinspection StringEquality
+            if (parse.error_message != errmsg0)
+                parse.set_error_message(errmsg0);
+            parse.error_call_stack = stk0;
+            return success;
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private static final class ForwardNode extends CompositeNode
+    {
+        final Node child;
+
+        ForwardNode (Node child) {
+            super(true);
+            this.child = child;
+        }
+
+        @Override protected boolean body (Parse parse) {
+            return child.run(parse);
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private static final class MemoNode extends CompositeNode
+    {
+        final Parser key;
+        final ParseState<Memoizer> memoizer;
+        final Function<Parse, Object> context_extractor;
+        final Node child;
+
+        MemoNode (boolean exclude_errors, Memo memo, Node child) {
+            super(exclude_errors);
+            this.key = memo.child;
+            this.memoizer = memo.memoizer;
+            this.context_extractor = memo.context_extractor;
+            this.child = child;
+        }
+
+        @Override protected boolean body (Parse parse)
+        {
+            Object ctx = context_extractor != null ? context_extractor.apply(parse) : null;
+            Memoizer memo = memoizer.data(parse);
+            MemoEntry entry = memo.get(key, parse.pos, ctx);
+
+            if (entry != null)
+            {
+                if (!entry.succeeded())
+                    return false;
+
+                parse.pos = entry.end_position;
+                parse.log.apply(entry.delta);
+                return true;
+            }
+
+            int pos0 = parse.pos;
+            int log0 = parse.log.size();
+            boolean success;
+
+            ++ parse.backtrack_points;
+            try {
+                success = child.run(parse);
+            }
+            finally {
+                -- parse.backtrack_points;
+            }
+
+            entry = new MemoEntry(success, key, pos0, parse.pos, parse.log.delta(log0), ctx);
+
+            memo.memoize(entry);
+            return entry.succeeded();
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
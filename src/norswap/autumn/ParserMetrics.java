@@ -6,7 +6,8 @@ import java.time.Duration;
  * A set of performance metrics linked to a parser, produced in tracing mode ({@link
  * ParseOptions#trace}).
  *
- * <p>Multiple {@link ParserMetrics} are aggregated within a single {@link ParseMetrics}.
+ * <p>Instances are snapshots of the metrics recorded in a {@link ParseMetrics}, see {@link
+ * ParseMetrics#metrics()} and {@link ParseMetrics#get(Parser)}.
  *
  * <p>Field are public for convenience but should not be written.
  */
@@ -35,13 +36,6 @@ public final class ParserMetrics
      */
     public long total_time = 0;
 
-    // ---------------------------------------------------------------------------------------------
-
-    /**
-     * Running counter of the number of in-progress invocations (so the parser is recursing
-     * when > 1).
-     */
-    int recursive_invocations = 0;
 
     // ---------------------------------------------------------------------------------------------
 
@@ -124,10 +124,14 @@ public interface ParserVisitor
     void visit (Repeat parser);
     void visit (RightExpression parser);
     void visit (RightFold parser);
+    void visit (ScanUntil parser);
     void visit (Sequence parser);
+    void visit (Span parser);
+    void visit (SplitRepeat parser);
     void visit (StringMatch parser);
     void visit (TokenChoice parser);
     void visit (TokenParser parser);
+    void visit (TrieMatch parser);
 
     // ---------------------------------------------------------------------------------------------
 
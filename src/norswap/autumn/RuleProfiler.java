@@ -0,0 +1,253 @@
+package norswap.autumn;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A sampling profiler for grammar rules (parsers with a rule name, see {@link Parser#rule()}).
+ *
+ * <p>When a profiler is passed to a parse ({@link ParseOptions#profiler}), the parse maintains a
+ * stack of the rules currently being invoked. Only rule invocations are pushed on this stack, and
+ * no time is measured during the parse. While the profiler is running ({@link #start()}), a
+ * background thread periodically snapshots the rule stack of all ongoing parses, and aggregates the
+ * snapshots per call path. The resulting profile is statistically accurate for sufficiently long or
+ * numerous parses, at a much lower overhead than {@link ParseOptions#trace}.
+ *
+ * <p>The overhead is not negligible however: maintaining the rule stack costs a push and a pop per
+ * rule invocation, which amounts to 5–10% of the parse time on the JSON example grammar, where
+ * every rule is tiny (short of the 1–2% that would make it free to leave on). Grammars with
+ * coarser rules pay less.
+ *
+ * <p>The profile can be exported in the "collapsed stack" format used by flame graph tools ({@link
+ * #collapsed_stacks()}), or read per rule ({@link #self_samples()}, {@link #total_samples()}).
+ *
+ * <p>The rule stacks are read without synchronization, so a sample may occasionally be slightly
+ * off, e.g. miss a rule that was pushed concurrently. Samples are not taken while a parse is not
+ * inside any rule.
+ *
+ * <p>The same profiler can be shared by parses running concurrently. Compiled parsers ({@link
+ * Autumn#compile}) run the original parser graph when profiled, and {@link
+ * norswap.autumn.parsers.SplitRepeat} does not parse in parallel.
+ */
+public final class RuleProfiler
+{
+    // ---------------------------------------------------------------------------------------------
+
+    /** The time between two samples. */
+    public final Duration interval;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /** The rule stacks of the ongoing parses. */
+    private final Set<RuleStack> stacks = ConcurrentHashMap.newKeySet();
+
+    // ---------------------------------------------------------------------------------------------
+
+    /** Maps call paths (from outermost to innermost rule) to their number of samples. */
+    private final HashMap<List<String>, Long> paths = new HashMap<>();
+
+    // ---------------------------------------------------------------------------------------------
+
+    private long samples = 0;
+    private volatile Thread sampler;
+
+    // ---------------------------------------------------------------------------------------------
+
+    public RuleProfiler (Duration interval)
+    {
+        if (interval.isNegative() || interval.isZero())
+            throw new IllegalArgumentException("non-positive sampling interval: " + interval);
+        this.interval = interval;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Starts sampling on a background daemon thread, if not already started.
+     */
+    public synchronized void start()
+    {
+        if (sampler != null) return;
+        sampler = new Thread(this::run, "autumn-rule-profiler");
+        sampler.setDaemon(true);
+        sampler.start();
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Stops sampling, waiting for the background thread to terminate. The profiler can be
+     * restarted afterwards, and the samples are kept.
+     */
+    public void stop() throws InterruptedException
+    {
+        Thread thread;
+        synchronized (this) {
+            thread = sampler;
+            sampler = null;
+        }
+        if (thread == null) return;
+        LockSupport.unpark(thread);
+        thread.join();
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private void run()
+    {
+        Thread self = Thread.currentThread();
+        long interval_nanos = interval.toNanos();
+
+        while (sampler == self) {
+            LockSupport.parkNanos(this, interval_nanos);
+            if (sampler == self) sample();
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Takes a sample of the rule stacks of all ongoing parses.
+     */
+    private void sample()
+    {
+        for (RuleStack stack: stacks) {
+            List<String> path = stack.snapshot();
+            if (path.isEmpty()) continue;
+            synchronized (this) {
+                paths.merge(path, 1L, Long::sum);
+                ++ samples;
+            }
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    void register (RuleStack stack) {
+        stacks.add(stack);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    void unregister (RuleStack stack) {
+        stacks.remove(stack);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * The number of samples taken so far.
+     */
+    public synchronized long samples() {
+        return samples;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns a map from call paths (lists of rule names, from outermost to innermost) to their
+     * number of samples.
+     */
+    public synchronized Map<List<String>, Long> path_samples() {
+        return new HashMap<>(paths);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns a map from rule names to the number of samples in which the rule was the innermost
+     * rule being invoked.
+     */
+    public synchronized Map<String, Long> self_samples()
+    {
+        HashMap<String, Long> map = new HashMap<>();
+        paths.forEach((path, count) -> map.merge(path.get(path.size() - 1), count, Long::sum));
+        return map;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns a map from rule names to the number of samples in which the rule was being invoked.
+     * Recursive invocations are only counted once per sample.
+     */
+    public synchronized Map<String, Long> total_samples()
+    {
+        HashMap<String, Long> map = new HashMap<>();
+        paths.forEach((path, count) -> {
+            for (String rule: new HashSet<>(path))
+                map.merge(rule, count, Long::sum);
+        });
+        return map;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the profile in collapsed stack format: one line per call path, made of the rule
+     * names separated by semicolons (from outermost to innermost), a space, and the number of
+     * samples. The lines are sorted. This is the input format of flame graph tools such as
+     * Brendan Gregg's {@code flamegraph.pl} or speedscope.
+     */
+    public String collapsed_stacks()
+    {
+        List<String> lines = new ArrayList<>();
+        path_samples().forEach((path, count) ->
+            lines.add(String.join(";", path) + " " + count));
+        Collections.sort(lines);
+
+        StringBuilder b = new StringBuilder();
+        for (String line: lines)
+            b.append(line).append("\n");
+        return b.toString();
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * The stack of the rules being invoked by a parse (see {@link Parse#rule_stack}).
+     *
+     * <p>Only written by the parsing thread, and read without synchronization by the sampling
+     * thread.
+     */
+    static final class RuleStack
+    {
+        private Parser[] rules = new Parser[64];
+        private int size = 0;
+
+        void push (Parser rule)
+        {
+            if (size == rules.length)
+                rules = Arrays.copyOf(rules, size * 2);
+            rules[size] = rule;
+            ++ size;
+        }
+
+        void pop() {
+            rules[-- size] = null;
+        }
+
+        List<String> snapshot()
+        {
+            Parser[] rules = this.rules;
+            int size = Math.min(this.size, rules.length);
+            List<String> path = new ArrayList<>(size);
+            for (int i = 0; i < size; ++i) {
+                Parser rule = rules[i];
+                if (rule != null) path.add(rule.rule());
+            }
+            return path;
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
@@ -13,7 +13,9 @@ package norswap.autumn;
  * <p>The reason why a side effect must return an undo function upon application (instead of the
  * undo function being supplied once and for all) is that a specific application of the side effect
  * may need to save some data for the undo function to access. Typically this will be achieved
- * through lambda capture. For instance, {@link SideEffectingArrayStack#pop()} uses:
+ * through lambda capture. For instance, a side-effecting version of {@link
+ * SideEffectingArrayStack#pop()} could be written as (the actual implementation is recorded more
+ * efficiently by the {@link Log}):
  *
  * <pre>
  * {@code
@@ -55,7 +57,7 @@ public interface SideEffect
         public final SideEffect effect;
         public final Runnable undo;
 
-        private Applied (SideEffect effect, Runnable undo) {
+        Applied (SideEffect effect, Runnable undo) {
             this.effect = effect;
             this.undo = undo;
         }
@@ -3,6 +3,7 @@ package norswap.autumn;
 import norswap.autumn.util.ArrayStack;
 import norswap.utils.Slot;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.function.IntFunction;
 
 
@@ -19,9 +20,12 @@ import java.util.function.IntFunction;
  * <p>The stack should only be mutated through these operations, or it won't be safe
  * to use during a parser!
  *
- * <p>A <i>side-effecting</i> operation is one where a {@link SideEffect.Applied} is pushed onto {@link
- * Parse#log} to represent a state mutation, enabling it to be undone in case of parser
- * backtracking.
+ * <p>A <i>side-effecting</i> operation is one where an entry is appended to {@link Parse#log} to
+ * represent a state mutation, enabling it to be undone in case of parser backtracking.
+ *
+ * <p>The first stack created for a log (normally {@link Parse#stack}) records its operations as
+ * typed log entries, without allocating any {@link SideEffect}. Other stacks sharing the same log
+ * use regular side-effects.
  *
  * <p>Norswap's note: in the long run it would be good if we overrode every single mutating method
  * of {@link ArrayStack} and {@link ArrayList} and made them side-effecting. For now, it will have
@@ -35,8 +39,11 @@ public final class SideEffectingArrayStack extends ArrayStack<Object>
 
     // ---------------------------------------------------------------------------------------------
 
-    public SideEffectingArrayStack (Log log) {
+    public SideEffectingArrayStack (Log log)
+    {
         this.log = log;
+        if (log.stack == null)
+            log.stack = this;
     }
 
     // ---------------------------------------------------------------------------------------------
@@ -46,6 +53,11 @@ public final class SideEffectingArrayStack extends ArrayStack<Object>
      */
     @Override public void push (Object item)
     {
+        if (log.stack == this) {
+            super.push(item);
+            log.record(Log.PUSH, item);
+            return;
+        }
         log.apply(() -> {
             super.push(item);
             return super::pop;
@@ -59,6 +71,11 @@ public final class SideEffectingArrayStack extends ArrayStack<Object>
      */
     @Override public Object pop()
     {
+        if (log.stack == this) {
+            Object out = super.pop();
+            log.record(Log.POP, out);
+            return out;
+        }
         Object out = super.peek();
         log.apply(() -> {
             Object x = super.pop();
@@ -74,6 +91,11 @@ public final class SideEffectingArrayStack extends ArrayStack<Object>
      */
     public Object[] pop (int amount)
     {
+        if (log.stack == this) {
+            Object[] out = super.pop(amount, Object[]::new);
+            log.record(Log.POP_N, out);
+            return out;
+        }
         Slot<Object[]> slot = new Slot<>();
         log.apply(() -> {
             Object[] x = super.pop(amount, Object[]::new);
@@ -97,4 +119,28 @@ public final class SideEffectingArrayStack extends ArrayStack<Object>
     }
 
     // ---------------------------------------------------------------------------------------------
+
+    // Non-logging operations, used by the log to undo and apply typed entries.
+
+    void raw_push (Object item) {
+        super.push(item);
+    }
+
+    Object raw_pop() {
+        return super.pop();
+    }
+
+    void raw_push_all (Object[] items) {
+        addAll(Arrays.asList(items));
+    }
+
+    Object[] raw_pop (int amount) {
+        return super.pop(amount, Object[]::new);
+    }
+
+    void raw_truncate (int size) {
+        truncate(size);
+    }
+
+    // ---------------------------------------------------------------------------------------------
 }
@@ -0,0 +1,95 @@
+package norswap.autumn;
+
+import norswap.autumn.memo.MemoEntry;
+
+/**
+ * An edit of a parse input: {@link #removed} input positions starting at {@link #offset} are
+ * replaced by {@link #inserted} positions. Positions are those of the {@link
+ * norswap.autumn.input.InputSource}, i.e. code points.
+ *
+ * <p>Used by {@link IncrementalParse} to shift the memoized results of a previous parse (see
+ * {@link norswap.autumn.memo.Memoizer#shift}).
+ */
+public final class TextEdit
+{
+    // ---------------------------------------------------------------------------------------------
+
+    /** The position of the first removed or inserted input position. */
+    public final int offset;
+
+    /** The number of removed input positions. */
+    public final int removed;
+
+    /** The number of inserted input positions. */
+    public final int inserted;
+
+    // ---------------------------------------------------------------------------------------------
+
+    public TextEdit (int offset, int removed, int inserted)
+    {
+        if (offset < 0 || removed < 0 || inserted < 0)
+            throw new IllegalArgumentException("negative edit parameter");
+
+        this.offset = offset;
+        this.removed = removed;
+        this.inserted = inserted;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * The difference in input size caused by the edit.
+     */
+    public int delta() {
+        return inserted - removed;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the memo entry equivalent to {@code entry} in the edited input, or null if the
+     * entry is invalidated by the edit.
+     *
+     * <p>Entries that examined no input from the edited region ({@link MemoEntry#examined}) are
+     * kept as-is if they lie before it, and shifted by {@link #delta()} if they lie after it. Other
+     * entries are invalidated.
+     *
+     * <p>Entries whose {@link MemoEntry#delta} includes side-effects other than value stack
+     * operations are always invalidated, as these side-effects are bound to the previous parse.
+     *
+     * <p>Note that only the positions of the entry are shifted: its context object and the values
+     * it pushes on the value stack are reused unchanged.
+     */
+    public MemoEntry shift (MemoEntry entry)
+    {
+        // side-effects other than value stack operations can't be carried over to another parse
+        if (!Log.portable(entry.delta))
+            return null;
+
+        if (entry.examined <= offset)
+            return entry;
+
+        if (entry.start_position < offset + removed)
+            return null;
+
+        int delta = delta();
+        return new MemoEntry(
+            entry.succeeded(),
+            entry.parser,
+            entry.start_position + delta,
+            entry.end_position + delta,
+            entry.delta,
+            entry.ctx,
+            entry.examined == Integer.MAX_VALUE ? entry.examined : entry.examined + delta);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public String toString()
+    {
+        return "TextEdit{offset: " + offset + ", removed: " + removed
+            + ", inserted: " + inserted + "}";
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
@@ -0,0 +1,89 @@
+package norswap.autumn.input;
+
+import java.util.Arrays;
+
+/**
+ * An {@link InputSource} that stores its input as an array of code points. This can represent any
+ * input, at the cost of four bytes per code point.
+ *
+ * <p>The array is not copied, and must not be modified after being passed to this class.
+ */
+public final class CodePointInput implements InputSource
+{
+    // ---------------------------------------------------------------------------------------------
+
+    private final int[] codepoints;
+
+    // ---------------------------------------------------------------------------------------------
+
+    public CodePointInput (int[] codepoints) {
+        this.codepoints = codepoints;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Decodes {@code string} into code points, knowing that its first {@code start} characters
+     * are not surrogates (and are therefore code points by themselves).
+     */
+    static CodePointInput decode (String string, int start)
+    {
+        int[] codepoints = new int[string.length()];
+        for (int i = 0; i < start; ++i)
+            codepoints[i] = string.charAt(i);
+
+        int size = start;
+        for (int i = start; i < string.length(); ) {
+            int c = string.codePointAt(i);
+            codepoints[size++] = c;
+            i += Character.charCount(c);
+        }
+
+        return new CodePointInput(size == codepoints.length
+            ? codepoints
+            : Arrays.copyOf(codepoints, size));
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public int length() {
+        return codepoints.length;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public int char_at (int index) {
+        return codepoints[index];
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public boolean match (int index, int[] candidate)
+    {
+        if (index + candidate.length > codepoints.length)
+            return false;
+        for (int i = 0; i < candidate.length; i++)
+            if (codepoints[index + i] != candidate[i])
+                return false;
+        return true;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public int index_of (int from, int to, int[] candidate)
+    {
+        int first = candidate[0];
+        for (int i = from; i < to; ++i)
+            if (codepoints[i] == first && match(i, candidate))
+                return i;
+        return -1;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public String substring (int begin, int end) {
+        return new String(codepoints, begin, Math.min(codepoints.length, end) - begin);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
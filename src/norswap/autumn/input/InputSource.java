@@ -0,0 +1,138 @@
+package norswap.autumn.input;
+
+import norswap.autumn.Autumn;
+import norswap.autumn.Parse;
+import norswap.autumn.StackAction;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The textual input of a parse, made available to parsers through {@link Parse#string}.
+ *
+ * <p>An input source is a sequence of code points, indexed from 0 to {@link #length()} (exclusive).
+ * All parse positions are indices in this sequence, regardless of how the input is stored.
+ *
+ * <p>Parsers normally access the input through {@link Parse#char_at}, {@link Parse#match} and
+ * {@link Parse#substring} (also used by the string variants of {@link StackAction}), which
+ * forward to this interface.
+ *
+ * <p>Autumn supplies the following implementations, which trade generality for memory footprint:
+ *
+ * <ul>
+ *     <li>{@link Latin1Input} stores one byte per code point, and is only usable for ASCII or
+ *     Latin-1 input.</li>
+ *     <li>{@link Utf16Input} wraps a {@link CharSequence} (usually a {@code String}) or a {@code
+ *     char[]} without copying it, and is only usable if the input does not contain surrogate pairs
+ *     (i.e. all code points are within the Basic Multilingual Plane).</li>
+ *     <li>{@link CodePointInput} stores the input as an array of code points, and can represent
+ *     any input.</li>
+ *     <li>{@link MappedInput} reads a memory-mapped UTF-8 file, using byte offsets as positions.
+ *     </li>
+ * </ul>
+ *
+ * <p>{@link #of(String)} selects the most economical applicable implementation, and is what {@link
+ * Autumn#parse(norswap.autumn.Parser, String, norswap.autumn.ParseOptions)} uses. Use {@link
+ * Autumn#parse(norswap.autumn.Parser, InputSource, norswap.autumn.ParseOptions)} to supply your
+ * own input source.
+ *
+ * <p>Implementations must be immutable, so that they can be shared between parses.
+ */
+public interface InputSource
+{
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * The number of code points in the input.
+     */
+    int length();
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the code point at the given index, which must be within {@code [0, length())}.
+     */
+    int char_at (int index);
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns true if the given code points appear in the input at the given index. This
+     * function is safe even if the candidate is longer than the remaining input.
+     */
+    default boolean match (int index, int[] candidate)
+    {
+        if (index + candidate.length > length())
+            return false;
+        for (int i = 0; i < candidate.length; i++)
+            if (char_at(index + i) != candidate[i])
+                return false;
+        return true;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns true if the given string appears in the input at the given index. This function is
+     * safe even if the candidate is longer than the remaining input.
+     */
+    default boolean match (int index, String candidate)
+    {
+        int length = length();
+        for (int i = 0; i < candidate.length(); ++index) {
+            int c = candidate.codePointAt(i);
+            if (index >= length || char_at(index) != c)
+                return false;
+            i += Character.charCount(c);
+        }
+        return true;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the first index in {@code [from, to)} at which the given (non-empty) code points
+     * appear in the input (as per {@link #match(int, int[])}), or -1 if there is no such index.
+     *
+     * <p>Implementations should skip quickly over the positions where the first code point of the
+     * candidate does not appear.
+     */
+    default int index_of (int from, int to, int[] candidate)
+    {
+        int first = candidate[0];
+        for (int i = from; i < to; ++i)
+            if (char_at(i) == first && match(i, candidate))
+                return i;
+        return -1;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the string made of the code points between {@code begin} (inclusive) and {@code end}
+     * (exclusive). {@code end} is clamped to {@link #length()}.
+     */
+    String substring (int begin, int end);
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns an input source for the given string, selecting the most compact representation:
+     * {@link Latin1Input} if all characters are Latin-1, {@link Utf16Input} if the string contains
+     * no surrogate pairs and {@link CodePointInput} otherwise. The string is scanned once.
+     */
+    static InputSource of (String string)
+    {
+        int max = 0;
+        for (int i = 0; i < string.length(); ++i) {
+            char c = string.charAt(i);
+            if (Character.isSurrogate(c))
+                return CodePointInput.decode(string, i);
+            if (c > max) max = c;
+        }
+
+        return max <= 0xFF
+            ? new Latin1Input(string.getBytes(StandardCharsets.ISO_8859_1))
+            : new Utf16Input(string);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
@@ -0,0 +1,119 @@
+package norswap.autumn.input;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * An {@link InputSource} over a memory-mapped UTF-8 file, which avoids reading the file into the
+ * heap altogether.
+ *
+ * <p>Positions in this input are <b>byte offsets</b> in the file, and {@link #char_at} returns the
+ * byte at the given offset (in {@code [0, 255]}). Decoding is lazy: only {@link #substring} decodes
+ * UTF-8, and only for the requested range. This means that positions reported by the parse
+ * (including those translated by a {@link norswap.autumn.LineMap} built from this input) are
+ * exact byte offsets in the file.
+ *
+ * <p>The flip side is that a non-ASCII code point appears to parsers as the sequence of its
+ * (non-ASCII) UTF-8 bytes. ASCII literals and character predicates work as usual, but to match
+ * non-ASCII content, grammars need to match over bytes (e.g. {@code range(0x80, 0xFF)} to skip
+ * over non-ASCII content).
+ *
+ * <p>Since positions are ints, the file cannot be larger than {@link Integer#MAX_VALUE} bytes.
+ */
+public final class MappedInput implements InputSource
+{
+    // ---------------------------------------------------------------------------------------------
+
+    private final ByteBuffer buffer;
+
+    // ---------------------------------------------------------------------------------------------
+
+    private final int length;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Creates an input over the given buffer, from 0 to its limit. The buffer's position and
+     * limit are not used afterwards, and its content must not be modified.
+     */
+    public MappedInput (ByteBuffer buffer)
+    {
+        this.buffer = buffer;
+        this.length = buffer.limit();
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Maps the file at the given path in memory (read-only) and returns an input over it.
+     *
+     * <p>The file is unmapped when the returned object is garbage collected, and should not be
+     * modified while the input is in use.
+     *
+     * @throws UncheckedIOException if the file cannot be opened or mapped.
+     * @throws IllegalArgumentException if the file is larger than {@link Integer#MAX_VALUE} bytes.
+     */
+    public static MappedInput map (Path path)
+    {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ))
+        {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE)
+                throw new IllegalArgumentException(
+                    "File too large to be parsed (" + size + " bytes): " + path);
+
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            return new MappedInput(buffer);
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public int length() {
+        return length;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public int char_at (int index) {
+        return buffer.get(index) & 0xFF;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public boolean match (int index, int[] candidate)
+    {
+        if (index + candidate.length > length)
+            return false;
+        for (int i = 0; i < candidate.length; i++)
+            if ((buffer.get(index + i) & 0xFF) != candidate[i])
+                return false;
+        return true;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Decodes the UTF-8 bytes between {@code begin} (inclusive) and {@code end} (exclusive, clamped
+     * to the length of the input). Malformed sequences (e.g. if the range splits a code point) are
+     * replaced by U+FFFD.
+     */
+    @Override public String substring (int begin, int end)
+    {
+        ByteBuffer slice = buffer.duplicate();
+        slice.limit(Math.min(length, end));
+        slice.position(begin);
+        return StandardCharsets.UTF_8.decode(slice).toString();
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
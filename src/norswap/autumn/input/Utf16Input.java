@@ -0,0 +1,98 @@
+package norswap.autumn.input;
+
+import java.nio.CharBuffer;
+
+/**
+ * An {@link InputSource} that wraps a {@link CharSequence} (usually a {@code String}) without
+ * copying it. Each UTF-16 char is a code point, so the input must not contain surrogate pairs
+ * (this is checked by the constructor).
+ */
+public final class Utf16Input implements InputSource
+{
+    // ---------------------------------------------------------------------------------------------
+
+    private final CharSequence chars;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Wraps the given sequence, which must not be modified afterwards.
+     *
+     * @throws IllegalArgumentException if the sequence contains surrogate chars.
+     */
+    public Utf16Input (CharSequence chars)
+    {
+        for (int i = 0; i < chars.length(); ++i)
+            if (Character.isSurrogate(chars.charAt(i)))
+                throw new IllegalArgumentException(
+                    "Surrogate char at index " + i + ", use a CodePointInput instead.");
+
+        this.chars = chars;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Wraps the given array, which must not be modified afterwards.
+     *
+     * @throws IllegalArgumentException if the array contains surrogate chars.
+     */
+    public Utf16Input (char[] chars) {
+        this(CharBuffer.wrap(chars));
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public int length() {
+        return chars.length();
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public int char_at (int index) {
+        return chars.charAt(index);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public boolean match (int index, int[] candidate)
+    {
+        if (index + candidate.length > chars.length())
+            return false;
+        for (int i = 0; i < candidate.length; i++)
+            if (chars.charAt(index + i) != candidate[i])
+                return false;
+        return true;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public int index_of (int from, int to, int[] candidate)
+    {
+        int first = candidate[0];
+        if (first > 0xFFFF) return -1;
+        if (chars instanceof String) {
+            // String#indexOf(int, int) is an intrinsic
+            String string = (String) chars;
+            int i = string.indexOf(first, from);
+            while (i >= 0 && i < to) {
+                if (match(i, candidate))
+                    return i;
+                i = string.indexOf(first, i + 1);
+            }
+            return -1;
+        }
+        for (int i = from; i < to; ++i)
+            if (chars.charAt(i) == first && match(i, candidate))
+                return i;
+        return -1;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public String substring (int begin, int end) {
+        return chars.subSequence(begin, Math.min(chars.length(), end)).toString();
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
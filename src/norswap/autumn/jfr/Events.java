@@ -0,0 +1,131 @@
+package norswap.autumn.jfr;
+
+import jdk.jfr.EventType;
+import norswap.autumn.ParseResult;
+import norswap.autumn.Parser;
+import norswap.autumn.memo.Memoizer;
+import java.util.Map;
+
+/**
+ * Emits the Autumn JFR events ({@link ParseEvent}, {@link MemoEvent} and {@link SlowRuleEvent})
+ * when the {@link norswap.autumn.ParseOptions#jfr} option is set.
+ *
+ * <p>This class is only loaded if the option is set, so that Autumn runs on Java runtimes that do
+ * not include JFR as long as the option is not used. Events that are not enabled in any ongoing
+ * recording are not instantiated.
+ *
+ * <p>The event objects are passed as {@code Object} to keep the JFR types out of the signatures
+ * seen by the rest of the library.
+ */
+public final class Events
+{
+    // ---------------------------------------------------------------------------------------------
+
+    private Events() {}
+
+    // ---------------------------------------------------------------------------------------------
+
+    private static final EventType PARSE = EventType.getEventType(ParseEvent.class);
+    private static final EventType MEMO  = EventType.getEventType(MemoEvent.class);
+    private static final EventType RULE  = EventType.getEventType(SlowRuleEvent.class);
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns a started parse event, or null if parse events are not enabled.
+     */
+    public static Object begin_parse()
+    {
+        if (!PARSE.isEnabled()) return null;
+        ParseEvent event = new ParseEvent();
+        event.begin();
+        return event;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Commits {@code event} (as returned by {@link #begin_parse()}, may be null) for the parse
+     * with the given result, as well as a memo event for each memoizer in the parse states.
+     */
+    public static void end_parse (Object event, ParseResult result, int input_size)
+    {
+        if (event != null)
+        {
+            ParseEvent e = (ParseEvent) event;
+            e.end();
+            if (e.shouldCommit()) {
+                e.parser = name(result.parser);
+                e.input_size = input_size;
+                e.success = result.success;
+                e.full_match = result.full_match;
+                e.error_position = result.error_position;
+                e.invocations = result.stats != null ? result.stats.invocations : -1;
+                e.backtracked = result.stats != null ? result.stats.backtracked : -1;
+                e.commit();
+            }
+        }
+
+        if (!MEMO.isEnabled()) return;
+
+        for (Map.Entry<Object, Object> state: result.parse_states.entrySet())
+        {
+            if (!(state.getValue() instanceof Memoizer)) continue;
+            Memoizer memoizer = (Memoizer) state.getValue();
+            MemoEvent e = new MemoEvent();
+            e.memoizer = memoizer.getClass().getSimpleName();
+            e.state = String.valueOf(state.getKey());
+            e.entries = memoizer.size();
+            e.capacity = memoizer.capacity();
+            e.load_factor = e.entries >= 0 && e.capacity > 0
+                ? e.entries / (double) e.capacity
+                : Double.NaN;
+            e.hits = memoizer.hits();
+            e.evictions = memoizer.evictions();
+            e.commit();
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns a started slow rule event, or null if slow rule events are not enabled.
+     */
+    public static Object begin_rule()
+    {
+        if (!RULE.isEnabled()) return null;
+        SlowRuleEvent event = new SlowRuleEvent();
+        event.begin();
+        return event;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Commits {@code event} (as returned by {@link #begin_rule()}, non-null) for an invocation of
+     * {@code rule} if it exceeded the event threshold.
+     */
+    public static void end_rule (Object event, Parser rule, int start, int end, boolean success)
+    {
+        SlowRuleEvent e = (SlowRuleEvent) event;
+        e.end();
+        if (!e.shouldCommit()) return;
+        e.rule = rule.rule();
+        e.start = start;
+        e.end = end;
+        e.success = success;
+        e.commit();
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the rule name of the parser, or its class name (the full string representation of a
+     * parser can be very large).
+     */
+    private static String name (Parser parser) {
+        return parser.rule() != null ? parser.rule() : parser.getClass().getSimpleName();
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
@@ -0,0 +1,44 @@
+package norswap.autumn.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A JFR event emitted at the end of a parse for each {@link norswap.autumn.memo.Memoizer} in the
+ * parse states, when the {@link norswap.autumn.ParseOptions#jfr} option is set. Values that a
+ * memoizer does not report are -1 (or NaN for the load factor).
+ */
+@Name("norswap.autumn.Memo")
+@Label("Memoizer")
+@Category("Autumn")
+@Description("The state of a memoizer at the end of a parse.")
+@StackTrace(false)
+public final class MemoEvent extends Event
+{
+    @Label("Memoizer")
+    @Description("Class of the memoizer.")
+    public String memoizer;
+
+    @Label("Parse State")
+    @Description("Parse state holding the memoizer.")
+    public String state;
+
+    @Label("Entries")
+    public int entries;
+
+    @Label("Capacity")
+    public int capacity;
+
+    @Label("Load Factor")
+    public double load_factor;
+
+    @Label("Hits")
+    public long hits;
+
+    @Label("Evictions")
+    public long evictions;
+}
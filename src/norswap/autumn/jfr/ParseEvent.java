@@ -0,0 +1,46 @@
+package norswap.autumn.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A JFR event emitted for each parse ({@link norswap.autumn.Autumn#parse} and its variants) when
+ * the {@link norswap.autumn.ParseOptions#jfr} option is set. Its duration is that of the whole
+ * parse (both phases for a {@link norswap.autumn.ParseOptions#two_phase} parse).
+ */
+@Name("norswap.autumn.Parse")
+@Label("Parse")
+@Category("Autumn")
+@Description("A parse of an input by an Autumn parser.")
+@StackTrace(false)
+public final class ParseEvent extends Event
+{
+    @Label("Parser")
+    public String parser;
+
+    @Label("Input Size")
+    @Description("Size of the input, in input positions (code points or list items).")
+    public int input_size;
+
+    @Label("Success")
+    public boolean success;
+
+    @Label("Full Match")
+    public boolean full_match;
+
+    @Label("Error Position")
+    @Description("Furthest error position, or -1 for a full match.")
+    public int error_position;
+
+    @Label("Invocations")
+    @Description("Number of parser invocations.")
+    public long invocations;
+
+    @Label("Backtracked")
+    @Description("Number of input positions rewound after failed parser invocations.")
+    public long backtracked;
+}
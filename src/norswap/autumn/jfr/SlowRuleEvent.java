@@ -0,0 +1,40 @@
+package norswap.autumn.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * A JFR event emitted for each invocation of a grammar rule (a parser with a rule name, see {@link
+ * norswap.autumn.Parser#rule()}) that lasts longer than the event's threshold (1 ms by default,
+ * configurable through the JFR settings), when the {@link norswap.autumn.ParseOptions#jfr} option
+ * is set.
+ *
+ * <p>Since rules call one another, a slow rule invocation usually also triggers events for the
+ * rule invocations that contain it.
+ */
+@Name("norswap.autumn.SlowRule")
+@Label("Slow Rule")
+@Category("Autumn")
+@Description("An invocation of a grammar rule that exceeded the threshold.")
+@Threshold("1 ms")
+@StackTrace(false)
+public final class SlowRuleEvent extends Event
+{
+    @Label("Rule")
+    public String rule;
+
+    @Label("Start Position")
+    public int start;
+
+    @Label("End Position")
+    @Description("Position reached by the rule (before backtracking, if it failed).")
+    public int end;
+
+    @Label("Success")
+    public boolean success;
+}
@@ -2,6 +2,7 @@ package norswap.autumn.memo;
 
 import norswap.autumn.LineMap;
 import norswap.autumn.Parser;
+import norswap.autumn.TextEdit;
 import norswap.utils.NArrays;
 import norswap.utils.Strings;
 import java.util.Arrays;
@@ -25,6 +26,12 @@ public final class MemoCache implements Memoizer
 
     private int next = 0;
 
+    private int size = 0;
+
+    private long hits = 0;
+
+    private long evictions = 0;
+
     // ---------------------------------------------------------------------------------------------
 
     /**
@@ -55,6 +62,8 @@ public final class MemoCache implements Memoizer
     @Override public void memoize (MemoEntry entry)
     {
         // fills next slot (unoccupied or oldest added)
+        if (entries[next] == null) ++ size;
+        else ++ evictions;
         hashes[next] = Memoizer.hash(match_parser, entry);
         entries[next] = entry;
         if (++next == num_slots) next = 0;
@@ -73,14 +82,48 @@ public final class MemoCache implements Memoizer
             if (j < 0) j += num_slots;
             if (hashes[j] == 0)
                 return null;
-            if (hashes[j] == hash && entries[j].matches(match_parser, parser, pos, ctx))
+            if (hashes[j] == hash && entries[j].matches(match_parser, parser, pos, ctx)) {
+                ++ hits;
                 return entries[j];
+            }
         }
         return null;
     }
 
     // ---------------------------------------------------------------------------------------------
 
+    @Override public MemoCache shift (TextEdit edit)
+    {
+        MemoCache cache = new MemoCache(num_slots, match_parser);
+        // from the least recently to the most recently added
+        for (int i = 0; i < num_slots; ++i) {
+            MemoEntry entry = entries[(next + i) % num_slots];
+            MemoEntry shifted = entry == null ? null : edit.shift(entry);
+            if (shifted != null) cache.memoize(shifted);
+        }
+        return cache;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public int size() {
+        return size;
+    }
+
+    @Override public int capacity() {
+        return num_slots;
+    }
+
+    @Override public long hits() {
+        return hits;
+    }
+
+    @Override public long evictions() {
+        return evictions;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
     private String string (String sep, Function<MemoEntry, String> f)
     {
         MemoEntry[] entries = this.entries.clone();
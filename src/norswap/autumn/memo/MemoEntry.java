@@ -36,6 +36,12 @@ public final class MemoEntry
     /** User-defined contextual information. */
     public final Object ctx;
 
+    /**
+     * One past the furthest input position examined to compute this entry (see {@link
+     * norswap.autumn.Parse#examined}), or {@link Integer#MAX_VALUE} if unknown.
+     */
+    public final int examined;
+
     // ---------------------------------------------------------------------------------------------
 
     /**
@@ -46,12 +52,26 @@ public final class MemoEntry
     public MemoEntry (
         boolean success, Parser parser, int start_position, int end_position,
         List<SideEffect> delta, Object ctx)
+    {
+        this(success, parser, start_position, end_position, delta, ctx, Integer.MAX_VALUE);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Like {@link #MemoEntry(boolean, Parser, int, int, List, Object)}, but also specifies the
+     * {@link #examined} position.
+     */
+    public MemoEntry (
+        boolean success, Parser parser, int start_position, int end_position,
+        List<SideEffect> delta, Object ctx, int examined)
     {
         this.parser = parser;
         this.start_position = start_position;
         this.end_position = success ? end_position : -1;
         this.delta = success ? delta : Collections.emptyList();
         this.ctx = ctx;
+        this.examined = examined;
     }
 
     // ---------------------------------------------------------------------------------------------
@@ -0,0 +1,444 @@
+package norswap.autumn.memo;
+
+import norswap.autumn.GrammarIndex;
+import norswap.autumn.LineMap;
+import norswap.autumn.Parser;
+import norswap.autumn.SideEffect;
+import norswap.utils.NArrays;
+import norswap.utils.Strings;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Function;
+
+/**
+ * A {@link Memoizer} implementation that memoizes every result it is passed, in a dense matrix
+ * indexed by input position and parser — the classic packrat parsing layout. It is meant to be
+ * shared between all memoized parsers of a grammar.
+ *
+ * <p>Each memoized parser receives a dense local id, in order of first use. The matrix is split in
+ * chunks covering {@code 1024} consecutive input positions, allocated lazily. Within a chunk, the
+ * result for a parser at a position is at index {@code (pos % 1024) * width + id}, where width is
+ * the number of parsers known when the chunk was allocated (chunks are widened if new parsers show
+ * up later on).
+ *
+ * <p>The local ids are found through the ids of the parsers in their home grammar ({@link
+ * GrammarIndex#home_id}): the matrix adopts the home grammar of the first parser it memoizes, and
+ * maps the ids of that grammar to local ids with an array. Lookups are thus array reads, with no
+ * hashing. Parsers from another home grammar (e.g. shared with a sub-grammar parsed earlier) are
+ * mapped to their local id with a hash map instead.
+ *
+ * <p>Results are stored in struct-of-arrays form: an {@code int} array of end positions, and a
+ * lazily-allocated {@code int} array of indices into a shared pool of deltas and contexts, which is
+ * only used for results that have a non-empty delta or a non-null context. {@link MemoEntry}
+ * objects are only created when returning a result.
+ *
+ * <p>The chunks are held in a ring, so that {@link #forget_before} (called whenever a cut commits
+ * the parse) drops each chunk in constant time. The pool of deltas and contexts is compacted lazily,
+ * once it holds more dead entries than live ones.
+ *
+ * <p>There is a single slot per parser and position: if the context of the entry in the slot
+ * differs from the requested context, no entry is returned; and memoizing a result with a
+ * different context overwrites the previous result.
+ *
+ * <p>Like {@link MemoTable}, the matrix has two mode of operations depending on its {@link
+ * #match_parser} parameter. If false, a single column is used and the parser passed to {@link
+ * #get} and {@link #memoize} is ignored (it may be null).
+ */
+public final class MemoMatrix implements Memoizer
+{
+    // ---------------------------------------------------------------------------------------------
+
+    private static final int CHUNK_BITS = 10;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Whether queries to the matrix should use parser information when storing/retrieving an
+     * entry, or just the start position and optional context object.
+     */
+    public final boolean match_parser;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /** The home grammar of the first memoized parser, see the class documentation. */
+    private GrammarIndex grammar;
+
+    /** Maps the ids of the parsers in {@link #grammar} to their local id plus one, or 0. */
+    private int[] grammar_ids;
+
+    /** Maps parsers whose home isn't {@link #grammar} to their local id. */
+    private final IdentityHashMap<Parser, Integer> other_ids = new IdentityHashMap<>();
+
+    /** Maps local ids to parsers. */
+    private Parser[] parsers = new Parser[8];
+
+    /** Number of assigned local ids. */
+    private int n_parsers = 0;
+
+    // ---------------------------------------------------------------------------------------------
+
+    // The chunk arrays below form a ring: chunk {@code c} is stored at index {@code c & (length -
+    // 1)}, and chunks {@code first} to {@code first + length - 1} can be stored.
+
+    /** For each chunk, the number of parser columns it was allocated with. */
+    private int[] widths = new int[16];
+
+    /** For each chunk, 0 for no entry, 1 for a failure, or {@code end_position + 2}. */
+    private int[][] ends = new int[16][];
+
+    /** For each chunk, null or the index of each entry in {@link #deltas} and {@link #contexts}. */
+    private int[][] extras = new int[16][];
+
+    /** For each chunk, the number of non-zero indices in {@link #extras}. */
+    private int[] extra_counts = new int[16];
+
+    /** The first chunk that hasn't been dropped by {@link #forget_before}. */
+    private int first = 0;
+
+    /** Entries before this position have been dropped by {@link #forget_before}. */
+    private int forgotten = 0;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /** Pool of deltas for the entries. Index 0 holds the empty delta. */
+    private final ArrayList<List<SideEffect>> deltas = new ArrayList<>();
+
+    /** Pool of contexts for the entries, parallel to {@link #deltas}. Index 0 holds null. */
+    private final ArrayList<Object> contexts = new ArrayList<>();
+
+    /** Number of pool entries referenced from {@link #extras}. */
+    private int live_extras = 0;
+
+    /** See {@link #hits()}. */
+    private long hits = 0;
+
+    // ---------------------------------------------------------------------------------------------
+
+    public MemoMatrix (boolean match_parser)
+    {
+        this.match_parser = match_parser;
+        deltas.add(Collections.emptyList());
+        contexts.add(null);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the local id of the given parser, or -1 if it doesn't have one and {@code create} is
+     * false.
+     */
+    private int local_id (Parser parser, boolean create)
+    {
+        if (!match_parser)
+            return 0;
+
+        if (grammar == null && create) {
+            grammar = GrammarIndex.home(parser);
+            if (grammar != null)
+                grammar_ids = new int[grammar.size()];
+        }
+
+        int gid = grammar != null ? grammar.home_id(parser) : -1;
+
+        if (gid >= 0) {
+            if (grammar_ids[gid] != 0 || !create)
+                return grammar_ids[gid] - 1;
+            grammar_ids[gid] = n_parsers + 1;
+        }
+        else {
+            Integer id = other_ids.get(parser);
+            if (id != null)
+                return id;
+            if (!create)
+                return -1;
+            other_ids.put(parser, n_parsers);
+        }
+
+        if (n_parsers == parsers.length)
+            parsers = Arrays.copyOf(parsers, n_parsers * 2);
+
+        parsers[n_parsers] = parser;
+        return n_parsers++;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Ensures that the chunk {@code c} exists and has a column for the parser with local id {@code
+     * id}.
+     */
+    private void ensure_chunk (int c, int id)
+    {
+        if (c - first >= ends.length)
+            grow(c - first + 1);
+
+        int s = c & (ends.length - 1);
+        int width = Math.max(1, n_parsers);
+
+        if (ends[s] == null) {
+            widths[s] = width;
+            ends[s] = new int[CHUNK_SIZE * width];
+        }
+        else if (id >= widths[s]) {
+            ends[s] = widen(ends[s], widths[s], width);
+            if (extras[s] != null)
+                extras[s] = widen(extras[s], widths[s], width);
+            widths[s] = width;
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Grows the chunk ring so that it can hold at least {@code n} chunks starting from {@link
+     * #first}.
+     */
+    private void grow (int n)
+    {
+        int len = ends.length;
+        while (len < n) len *= 2;
+
+        int[]   widths0       = widths;
+        int[][] ends0         = ends;
+        int[][] extras0       = extras;
+        int[]   extra_counts0 = extra_counts;
+
+        widths       = new int[len];
+        ends         = new int[len][];
+        extras       = new int[len][];
+        extra_counts = new int[len];
+
+        int mask0 = ends0.length - 1;
+        for (int c = first; c < first + ends0.length; ++c) {
+            int s = c & (len - 1);
+            widths[s]       = widths0       [c & mask0];
+            ends[s]         = ends0         [c & mask0];
+            extras[s]       = extras0       [c & mask0];
+            extra_counts[s] = extra_counts0 [c & mask0];
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private static int[] widen (int[] chunk, int old_width, int new_width)
+    {
+        int[] out = new int[CHUNK_SIZE * new_width];
+        for (int row = 0; row < CHUNK_SIZE; ++row)
+            System.arraycopy(chunk, row * old_width, out, row * new_width, old_width);
+        return out;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public void memoize (MemoEntry entry)
+    {
+        int pos = entry.start_position;
+        if (pos < forgotten) return;
+
+        int id = local_id(entry.parser, true);
+        int c  = pos >>> CHUNK_BITS;
+        ensure_chunk(c, id);
+
+        int s = c & (ends.length - 1);
+        int i = (pos & CHUNK_MASK) * widths[s] + id;
+        ends[s][i] = entry.succeeded() ? entry.end_position + 2 : 1;
+
+        int x = 0;
+        if (!entry.delta.isEmpty() || entry.ctx != null) {
+            x = deltas.size();
+            deltas.add(entry.delta);
+            contexts.add(entry.ctx);
+        }
+
+        if (extras[s] == null) {
+            if (x == 0) return;
+            extras[s] = new int[ends[s].length];
+        }
+
+        int old = extras[s][i];
+        extras[s][i] = x;
+        int diff = (x != 0 ? 1 : 0) - (old != 0 ? 1 : 0);
+        extra_counts[s] += diff;
+        live_extras += diff;
+
+        if (old != 0) maybe_compact();
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public MemoEntry get (Parser parser, int pos, Object ctx)
+    {
+        int id = local_id(parser, false);
+        int c = pos >>> CHUNK_BITS;
+
+        if (id < 0 || pos < forgotten || c - first >= ends.length)
+            return null;
+
+        int s = c & (ends.length - 1);
+        if (ends[s] == null || id >= widths[s])
+            return null;
+
+        int i = (pos & CHUNK_MASK) * widths[s] + id;
+        int end = ends[s][i];
+        if (end == 0)
+            return null;
+
+        int x = extras[s] != null ? extras[s][i] : 0;
+        if (!Objects.equals(contexts.get(x), ctx))
+            return null;
+
+        ++ hits;
+        return new MemoEntry(end != 1, match_parser ? parsers[id] : parser, pos, end - 2,
+            deltas.get(x), contexts.get(x));
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Drops the chunks (and rows of the chunk containing {@code pos}) before {@code pos}. Whole
+     * chunks are dropped in constant time, and the rows of the chunk containing {@code pos} are
+     * only cleared once.
+     */
+    @Override public void forget_before (int pos)
+    {
+        if (pos <= forgotten) return;
+
+        int last = pos >>> CHUNK_BITS;
+        int mask = ends.length - 1;
+
+        for (int c = first; c < Math.min(last, first + ends.length); ++c) {
+            int s = c & mask;
+            live_extras -= extra_counts[s];
+            ends[s] = null;
+            extras[s] = null;
+            extra_counts[s] = 0;
+        }
+
+        if (last > first) {
+            first = last;
+            forgotten = last << CHUNK_BITS;
+        }
+
+        int s = last & mask;
+        if (last - first < ends.length && ends[s] != null)
+        {
+            int from = (forgotten & CHUNK_MASK) * widths[s];
+            int to   = (pos & CHUNK_MASK) * widths[s];
+            Arrays.fill(ends[s], from, to, 0);
+
+            if (extras[s] != null)
+                for (int i = from; i < to; ++i)
+                    if (extras[s][i] != 0) {
+                        extras[s][i] = 0;
+                        -- extra_counts[s];
+                        -- live_extras;
+                    }
+        }
+
+        forgotten = pos;
+        maybe_compact();
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Compacts the pool of deltas and contexts if most of its entries are not referenced anymore.
+     */
+    private void maybe_compact()
+    {
+        if (deltas.size() <= 2 * live_extras + 64)
+            return;
+
+        ArrayList<List<SideEffect>> deltas0 = new ArrayList<>(deltas);
+        ArrayList<Object> contexts0 = new ArrayList<>(contexts);
+        deltas.subList(1, deltas.size()).clear();
+        contexts.subList(1, contexts.size()).clear();
+
+        for (int s = 0; s < extras.length; ++s)
+        {
+            if (extra_counts[s] == 0) continue;
+
+            for (int i = 0; i < extras[s].length; ++i)
+            {
+                int x = extras[s][i];
+                if (x == 0) continue;
+                extras[s][i] = deltas.size();
+                deltas.add(deltas0.get(x));
+                contexts.add(contexts0.get(x));
+            }
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public long hits() {
+        return hits;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns all the entries in the matrix, in order of start position.
+     */
+    private MemoEntry[] entries()
+    {
+        ArrayList<MemoEntry> entries = new ArrayList<>();
+
+        for (int c = first; c < first + ends.length; ++c)
+        {
+            int s = c & (ends.length - 1);
+            if (ends[s] == null) continue;
+            int width = widths[s];
+
+            for (int i = 0; i < ends[s].length; ++i)
+            {
+                int end = ends[s][i];
+                if (end == 0) continue;
+                int x = extras[s] != null ? extras[s][i] : 0;
+                int pos = (c << CHUNK_BITS) + i / width;
+                Parser parser = match_parser ? parsers[i % width] : null;
+                entries.add(new MemoEntry(
+                    end != 1, parser, pos, end - 2, deltas.get(x), contexts.get(x)));
+            }
+        }
+
+        return entries.toArray(new MemoEntry[0]);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private String string (String sep, Function<MemoEntry, String> f)
+    {
+        StringBuilder b = new StringBuilder();
+        Strings.separated(b, sep, NArrays.map(entries(), new String[0], f));
+        return b.toString();
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public String toString (LineMap map)
+    {
+        return "MemoMatrix { " + string(", ", e -> e.toString(map)) + "}";
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public String listing (LineMap map)
+    {
+        return string("\n", e -> e.listing_string(map, match_parser));
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public String toString() {
+        return toString(null);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
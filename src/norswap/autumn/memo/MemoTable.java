@@ -2,6 +2,7 @@ package norswap.autumn.memo;
 
 import norswap.autumn.LineMap;
 import norswap.autumn.Parser;
+import norswap.autumn.TextEdit;
 import norswap.autumn.parsers.Tokens;
 import norswap.utils.NArrays;
 import norswap.utils.Strings;
@@ -32,6 +33,12 @@ public final class MemoTable implements Memoizer
     /** Amount of table slots occupied. */
     private int occupied = 0;
 
+    /** See {@link #hits()}. */
+    private long hits = 0;
+
+    /** See {@link #evictions()}. */
+    private long evictions = 0;
+
     /**
      * Hashmap storage for the hashes of the stored entries. The value at an index is either 0, or
      * a long whose 32 high-order bits are a displacement, and whose 32 low-order bits is the
@@ -139,8 +146,10 @@ public final class MemoTable implements Memoizer
         {
             int h = (int) hashes[i]; // stored hash
 
-            if (h == hash && entries[i].matches(match_parser, parser, pos, ctx))
+            if (h == hash && entries[i].matches(match_parser, parser, pos, ctx)) {
+                ++ hits;
                 return entries[i];
+            }
 
             if (h == 0 || d > max_displacement)
                 return null;
@@ -152,6 +161,69 @@ public final class MemoTable implements Memoizer
 
     // ---------------------------------------------------------------------------------------------
 
+    /**
+     * Rebuilds the table without the entries starting before {@code pos}, shrinking it to fit the
+     * remaining entries.
+     */
+    @Override public void forget_before (int pos)
+    {
+        MemoEntry[] entries0 = entries;
+        int kept = 0;
+
+        for (MemoEntry entry: entries0)
+            if (entry != null && entry.start_position >= pos)
+                ++ kept;
+
+        if (kept == occupied)
+            return;
+
+        int len = 8;
+        while (kept / (double) len > MAX_LOAD)
+            len *= 2;
+
+        hashes = new long[len];
+        entries = new MemoEntry[len];
+        max_displacement = 0;
+        evictions += occupied - kept;
+        occupied = kept;
+
+        for (MemoEntry entry: entries0)
+            if (entry != null && entry.start_position >= pos)
+                insert(entry);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public MemoTable shift (TextEdit edit)
+    {
+        MemoTable table = new MemoTable(match_parser);
+        for (MemoEntry entry: entries) {
+            MemoEntry shifted = entry == null ? null : edit.shift(entry);
+            if (shifted != null) table.memoize(shifted);
+        }
+        return table;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public int size() {
+        return occupied;
+    }
+
+    @Override public int capacity() {
+        return (int) (hashes.length * MAX_LOAD);
+    }
+
+    @Override public long hits() {
+        return hits;
+    }
+
+    @Override public long evictions() {
+        return evictions;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
     private String string (String sep, Function<MemoEntry, String> f)
     {
         MemoEntry[] entries = NArrays.packed(this.entries);
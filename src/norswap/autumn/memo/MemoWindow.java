@@ -0,0 +1,241 @@
+package norswap.autumn.memo;
+
+import norswap.autumn.LineMap;
+import norswap.autumn.Parser;
+import norswap.utils.NArrays;
+import norswap.utils.Strings;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.function.Function;
+
+/**
+ * A {@link Memoizer} implementation that memoizes every result whose start position is within a
+ * sliding window behind the furthest position seen so far (the furthest start position passed to
+ * {@link #get} or {@link #memoize}). Entries that fall more than {@link #distance} positions behind
+ * that position are evicted.
+ *
+ * <p>This bounds memory usage on very large inputs, while retaining most of the benefits of
+ * packrat parsing as long as backtracking rarely reaches further back than the window.
+ *
+ * <p>Entries are stored in a ring of slots (one per input position in the window), so memory is
+ * proportional to {@link #distance} and not to the input size. An evicted slot is overwritten
+ * when a position that maps to it is memoized.
+ *
+ * <p>The memoizer keeps counters to help tune the window distance: {@link #hits}, {@link #misses},
+ * {@link #evictions} and {@link #evicted_hits}. The last one counts lookups that would have
+ * succeeded had the entry not been evicted. Evicted entries are remembered in a fixed-size table
+ * of hashes, so this count is a lower bound when many entries are evicted.
+ *
+ * <p>Like {@link MemoTable}, the window has two mode of operations depending on its {@link
+ * #match_parser} parameter.
+ */
+public final class MemoWindow implements Memoizer
+{
+    // ---------------------------------------------------------------------------------------------
+
+    private static final int GHOST_SIZE = 4096;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * How far behind the furthest seen position entries are retained.
+     */
+    public final int distance;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Whether queries to the window should use parser information when storing/retrieving an
+     * entry, or just the start position and optional context object.
+     */
+    public final boolean match_parser;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /** Number of successful lookups. */
+    public long hits = 0;
+
+    /** Number of unsuccessful lookups (including those counted in {@link #evicted_hits}). */
+    public long misses = 0;
+
+    /** Number of evicted entries, counted when the slot holding them is reused. */
+    public long evictions = 0;
+
+    /** Number of unsuccessful lookups that would have been hits without eviction. */
+    public long evicted_hits = 0;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /** Furthest start position seen so far. */
+    private int furthest = 0;
+
+    /** Input position whose entries are stored in each slot, or -1. */
+    private final int[] positions;
+
+    /** Entries stored in each slot. */
+    private final MemoEntry[][] entries;
+
+    /** Number of entries stored in each slot. */
+    private final int[] counts;
+
+    /** Hashes of evicted entries, see {@link #evicted_hits}. */
+    private final int[] ghosts = new int[GHOST_SIZE];
+
+    // ---------------------------------------------------------------------------------------------
+
+    public MemoWindow (int distance, boolean match_parser)
+    {
+        if (distance < 0)
+            throw new IllegalArgumentException("negative distance: " + distance);
+
+        this.distance = distance;
+        this.match_parser = match_parser;
+        this.positions = new int[distance + 1];
+        this.entries = new MemoEntry[distance + 1][];
+        this.counts = new int[distance + 1];
+        Arrays.fill(positions, -1);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private boolean evicted (int pos)
+    {
+        if (pos > furthest) furthest = pos;
+        return pos < furthest - distance;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private void evict_slot (int slot)
+    {
+        for (int i = 0; i < counts[slot]; ++i) {
+            int hash = Memoizer.hash(match_parser, entries[slot][i]);
+            ghosts[(hash & 0x7FFFFFFF) % GHOST_SIZE] = hash;
+            entries[slot][i] = null;
+        }
+        evictions += counts[slot];
+        counts[slot] = 0;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public void memoize (MemoEntry entry)
+    {
+        int pos = entry.start_position;
+        if (evicted(pos)) return;
+
+        int slot = pos % positions.length;
+
+        if (positions[slot] != pos) {
+            evict_slot(slot);
+            positions[slot] = pos;
+        }
+
+        MemoEntry[] slot_entries = entries[slot];
+        int count = counts[slot];
+
+        if (slot_entries == null)
+            slot_entries = entries[slot] = new MemoEntry[2];
+        else if (count == slot_entries.length)
+            slot_entries = entries[slot] = Arrays.copyOf(slot_entries, count * 2);
+
+        slot_entries[count] = entry;
+        counts[slot] = count + 1;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private MemoEntry find (int slot, Parser parser, int pos, Object ctx)
+    {
+        if (positions[slot] != pos)
+            return null;
+
+        for (int i = 0; i < counts[slot]; ++i)
+            if (entries[slot][i].matches(match_parser, parser, pos, ctx))
+                return entries[slot][i];
+
+        return null;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public MemoEntry get (Parser parser, int pos, Object ctx)
+    {
+        int slot = pos % positions.length;
+
+        if (evicted(pos))
+        {
+            ++ misses;
+            int hash = Memoizer.hash(match_parser, parser, pos, ctx);
+            if (find(slot, parser, pos, ctx) != null
+                    || ghosts[(hash & 0x7FFFFFFF) % GHOST_SIZE] == hash)
+                ++ evicted_hits;
+            return null;
+        }
+
+        MemoEntry entry = find(slot, parser, pos, ctx);
+        if (entry != null) ++ hits;
+        else ++ misses;
+        return entry;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public int size()
+    {
+        int size = 0;
+        for (int count: counts) size += count;
+        return size;
+    }
+
+    @Override public int capacity() {
+        return positions.length;
+    }
+
+    @Override public long hits() {
+        return hits;
+    }
+
+    @Override public long evictions() {
+        return evictions;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private String string (String sep, Function<MemoEntry, String> f)
+    {
+        ArrayList<MemoEntry> list = new ArrayList<>();
+        for (int slot = 0; slot < positions.length; ++slot)
+            if (positions[slot] >= 0 && positions[slot] >= furthest - distance)
+                list.addAll(Arrays.asList(entries[slot]).subList(0, counts[slot]));
+
+        MemoEntry[] entries = list.toArray(new MemoEntry[0]);
+        Arrays.sort(entries, Comparator.comparingInt(x -> x.start_position));
+        StringBuilder b = new StringBuilder();
+        Strings.separated(b, sep, NArrays.map(entries, new String[0], f));
+        return b.toString();
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public String toString (LineMap map)
+    {
+        return "MemoWindow { " + string(", ", e -> e.toString(map)) + "}";
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public String listing (LineMap map)
+    {
+        return string("\n", e -> e.listing_string(map, match_parser));
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public String toString() {
+        return toString(null);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
@@ -1,7 +1,9 @@
 package norswap.autumn.memo;
 
+import norswap.autumn.IncrementalParse;
 import norswap.autumn.LineMap;
 import norswap.autumn.Parser;
+import norswap.autumn.TextEdit;
 import norswap.autumn.parsers.Memo;
 import java.util.Objects;
 
@@ -72,6 +74,67 @@ public interface Memoizer
 
     // ---------------------------------------------------------------------------------------------
 
+    /**
+     * Optionally drops the entries whose start position is strictly smaller than {@code pos}.
+     * Called when the parse is committed by a {@link norswap.autumn.parsers.Cut}, after which these
+     * entries can't be used anymore. Does nothing by default.
+     */
+    default void forget_before (int pos) {}
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns a new memoizer holding the entries of this memoizer that remain valid after {@code
+     * edit}, with their positions shifted accordingly (see {@link TextEdit#shift}), or null if this
+     * memoizer does not support incremental reparsing (the default). Used by {@link
+     * IncrementalParse}.
+     */
+    default Memoizer shift (TextEdit edit) {
+        return null;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the number of entries held by the memoizer, or -1 if unknown (the default).
+     */
+    default int size() {
+        return -1;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the number of entries (or of slots, for memoizers that store multiple entries per
+     * slot) the memoizer can hold without growing or evicting entries, or -1 if unknown (the
+     * default). Together with {@link #size()}, this gives the load factor of the memoizer.
+     */
+    default int capacity() {
+        return -1;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the number of calls to {@link #get} that returned an entry, or -1 if unknown (the
+     * default).
+     */
+    default long hits() {
+        return -1;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the number of entries that were dropped by the memoizer (to bound its memory usage
+     * or after {@link #forget_before}), or -1 if unknown (the default).
+     */
+    default long evictions() {
+        return -1;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
     /**
      * Returns a textual representation of the content of the memoizer (on a single line),
      * converting the input positions using {@code map} (can be null, in which case plain offsets
@@ -63,19 +63,31 @@ public final class Around extends Parser
 
     @Override public boolean doparse (Parse parse)
     {
-        if (!around.parse(parse)) {
-            if (min == 0 && trailing)
+        if (min > 0) {
+            if (!around.parse(parse))
+                return false;
+            for (int i = 0; i < min - 1; ++i)
+                if (!inside_then_around.parse(parse))
+                    return false;
+        }
+
+        // the remaining items are optional
+        ++ parse.backtrack_points;
+        try {
+            if (min == 0 && !around.parse(parse)) {
+                if (trailing)
+                    inside.parse(parse);
+                return true;
+            }
+            if (!exact)
+                while (inside_then_around.parse(parse)) ;
+            if (trailing)
                 inside.parse(parse);
-            return min == 0;
+            return true;
+        }
+        finally {
+            -- parse.backtrack_points;
         }
-        for (int i = 0; i < min - 1; ++i)
-            if (!inside_then_around.parse(parse))
-                return false;
-        if (!exact)
-            while (inside_then_around.parse(parse)) ;
-        if (trailing)
-            inside.parse(parse);
-        return true;
     }
 
     // ---------------------------------------------------------------------------------------------
@@ -57,7 +57,14 @@ public final class Bounded extends Parser
         parse.end_of_input = parse.pos;
         parse.pos = pos0;
 
-        boolean success = fine.parse(parse);
+        boolean success;
+        ++ parse.cut_barriers;
+        try {
+            success = fine.parse(parse);
+        }
+        finally {
+            -- parse.cut_barriers;
+        }
 
         if (success && parse.pos == parse.end_of_input) {
             parse.end_of_input = end0;
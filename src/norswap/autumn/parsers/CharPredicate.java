@@ -4,8 +4,8 @@ import norswap.autumn.DSL;
 import norswap.autumn.Parse;
 import norswap.autumn.Parser;
 import norswap.autumn.ParserVisitor;
+import norswap.autumn.util.CharClass;
 
-import java.util.Arrays;
 import java.util.Collections;
 import java.util.function.IntPredicate;
 
@@ -21,6 +21,11 @@ import static norswap.autumn.util.ParserStringsUtil.escape_quoted_section;
  * <p>Build with {@link DSL#cpred(IntPredicate)}, {@link DSL#set(char...)}, {@link DSL#set(String)},
  * {@link DSL#range(char, char)}, as well a a few pre-defined parsers in {@link DSL}. Assign a name
  * with {@link DSL.rule#named(String)}.
+ *
+ * <p>If the predicate is a {@link CharClass} (which is the case for all parsers built by the
+ * static methods of this class), membership tests are compiled, and the parser can be combined
+ * with other such parsers using {@link DSL#char_union}, {@link DSL#char_inter} and {@link
+ * DSL#char_not}.
  */
 public final class CharPredicate extends Parser
 {
@@ -37,6 +42,13 @@ public final class CharPredicate extends Parser
 
     // ---------------------------------------------------------------------------------------------
 
+    /**
+     * The predicate, if it is a {@link CharClass}, or null.
+     */
+    public final CharClass char_class;
+
+    // ---------------------------------------------------------------------------------------------
+
     /**
      * Creates a new parser that matches a single character that satisfies {@code predicate}.
      * {@code name} is used as display name for this parser.
@@ -45,6 +57,7 @@ public final class CharPredicate extends Parser
     {
         this.name = name;
         this.predicate = predicate;
+        this.char_class = predicate instanceof CharClass ? (CharClass) predicate : null;
     }
 
     // ---------------------------------------------------------------------------------------------
@@ -52,7 +65,8 @@ public final class CharPredicate extends Parser
     @Override public boolean doparse (Parse parse)
     {
         assert parse.string != null;
-        if (predicate.test(parse.char_at(parse.pos))) {
+        int c = parse.char_at(parse.pos);
+        if (char_class != null ? char_class.test(c) : predicate.test(c)) {
             ++ parse.pos;
             return true;
         }
@@ -85,7 +99,7 @@ public final class CharPredicate extends Parser
      */
     public static CharPredicate any ()
     {
-        return new CharPredicate("<any char>", it -> it != 0);
+        return new CharPredicate("<any char>", CharClass.range(1, Character.MAX_CODE_POINT));
     }
 
     // ---------------------------------------------------------------------------------------------
@@ -95,7 +109,7 @@ public final class CharPredicate extends Parser
      */
     public static CharPredicate single (int c)
     {
-        return new CharPredicate("[" + escape_quoted_section("" + c) + "]", it -> it == c);
+        return new CharPredicate("[" + escape_quoted_section("" + c) + "]", CharClass.of(c));
     }
 
     // ---------------------------------------------------------------------------------------------
@@ -106,8 +120,7 @@ public final class CharPredicate extends Parser
     public static CharPredicate range (int start, int end)
     {
         String str = escape_quoted_section(start + "-" + end);
-        return new CharPredicate("[" + str + "]", it ->
-            start <= it && it <= end);
+        return new CharPredicate("[" + str + "]", CharClass.range(start, end));
     }
 
     // ---------------------------------------------------------------------------------------------
@@ -117,8 +130,7 @@ public final class CharPredicate extends Parser
      */
     public static CharPredicate set (String chars)
     {
-        return new CharPredicate("[" + escape_quoted_section(chars) + "]", it ->
-            chars.indexOf(it) >= 0); // indexOf also works with code points
+        return new CharPredicate("[" + escape_quoted_section(chars) + "]", CharClass.of(chars));
     }
 
     // ---------------------------------------------------------------------------------------------
@@ -129,9 +141,7 @@ public final class CharPredicate extends Parser
     public static CharPredicate set (int... chars)
     {
     	String s = new String(chars, 0, chars.length);
-    	Arrays.sort(chars);
-        return new CharPredicate("[" + escape_quoted_section(s) + "]", it ->
-        Arrays.binarySearch(chars, it) >= 0);
+        return new CharPredicate("[" + escape_quoted_section(s) + "]", CharClass.of(chars));
     }
 
     // ---------------------------------------------------------------------------------------------
@@ -141,8 +151,7 @@ public final class CharPredicate extends Parser
      */
     public static CharPredicate alpha()
     {
-        return new CharPredicate("<alpha>", it ->
-            'a' <= it && it <= 'z' || 'A' <= it && it <= 'Z');
+        return new CharPredicate("<alpha>", CharClass.ranges('a', 'z', 'A', 'Z'));
     }
 
     // ---------------------------------------------------------------------------------------------
@@ -152,8 +161,7 @@ public final class CharPredicate extends Parser
      */
     public static CharPredicate alphanum()
     {
-        return new CharPredicate("<alpha>", it ->
-            'a' <= it && it <= 'z' || 'A' <= it && it <= 'Z' || '0' <= it && it <= '9');
+        return new CharPredicate("<alpha>", CharClass.ranges('a', 'z', 'A', 'Z', '0', '9'));
     }
 
     // ---------------------------------------------------------------------------------------------
@@ -163,8 +171,7 @@ public final class CharPredicate extends Parser
      */
     public static CharPredicate digit()
     {
-        return new CharPredicate("<digit>", it ->
-            '0' <= it && it <= '9');
+        return new CharPredicate("<digit>", CharClass.range('0', '9'));
     }
 
     // ---------------------------------------------------------------------------------------------
@@ -175,8 +182,7 @@ public final class CharPredicate extends Parser
      */
     public static CharPredicate hex_digit()
     {
-        return new CharPredicate("<hex digit>", it ->
-            '0' <= it && it <= '9' || 'a' <= it && it <= 'f' || 'A' <= it && it <= 'F');
+        return new CharPredicate("<hex digit>", CharClass.ranges('0', '9', 'a', 'f', 'A', 'F'));
     }
 
     // ---------------------------------------------------------------------------------------------
@@ -186,8 +192,7 @@ public final class CharPredicate extends Parser
      */
     public static CharPredicate octal_digit()
     {
-        return new CharPredicate("<octal digit>", it ->
-            '0' <= it && it <= '7');
+        return new CharPredicate("<octal digit>", CharClass.range('0', '7'));
     }
 
     // ---------------------------------------------------------------------------------------------
@@ -4,6 +4,7 @@ import norswap.autumn.DSL;
 import norswap.autumn.Parse;
 import norswap.autumn.Parser;
 import norswap.autumn.ParserVisitor;
+import norswap.autumn.visitors.ChoiceDispatcher;
 import norswap.utils.Strings;
 import java.util.Arrays;
 import java.util.Collections;
@@ -12,16 +13,35 @@ import java.util.List;
 /**
  * Matches the same thing as its first matching child, or fails if none succeed.
  *
+ * <p>If an alternative fails after a {@link Cut} inside it succeeded, the next alternatives are not
+ * tried.
+ *
+ * <p>A dispatch table can be installed on the parser ({@link #set_dispatch}), in which case only
+ * the alternatives that may match the character at the current input position are tried, in order.
+ * This is normally done by {@link ChoiceDispatcher}. The table is ignored when parsing a list of
+ * objects.
+ *
  * <p>Build with {@link DSL#choice(Object...)}
  */
 public final class Choice extends Parser
 {
     // ---------------------------------------------------------------------------------------------
 
+    /**
+     * Index of the row of the dispatch table used for characters outside the ASCII range.
+     */
+    public static final int NON_ASCII = 128;
+
+    // ---------------------------------------------------------------------------------------------
+
     private final Parser[] children;
 
     // ---------------------------------------------------------------------------------------------
 
+    private int[][] dispatch;
+
+    // ---------------------------------------------------------------------------------------------
+
     @Override public List<Parser> children() {
         return Collections.unmodifiableList(Arrays.asList(children));
     }
@@ -35,12 +55,64 @@ public final class Choice extends Parser
 
     // ---------------------------------------------------------------------------------------------
 
+    /**
+     * Installs a dispatch table, or removes it if {@code dispatch} is null.
+     *
+     * <p>The table must have {@code NON_ASCII + 1} rows. Row {@code c} lists the indices of the
+     * alternatives that must be tried (in increasing order) when the character at the current
+     * position is {@code c}, with row {@link #NON_ASCII} used for all characters above {@code 127}.
+     * The end of the input is represented by the nul character.
+     */
+    public void set_dispatch (int[][] dispatch)
+    {
+        if (dispatch != null && dispatch.length != NON_ASCII + 1)
+            throw new IllegalArgumentException(
+                "dispatch table must have " + (NON_ASCII + 1) + " rows, not " + dispatch.length);
+        this.dispatch = dispatch;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the installed dispatch table, or null.
+     */
+    public int[][] dispatch() {
+        return dispatch;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
     @Override public boolean doparse (Parse parse)
     {
-        for (Parser child: children)
-            if (child.parse(parse))
-                return true;
-        return false;
+        boolean cut0 = parse.cut;
+        int choice0 = parse.choice_backtrack_points;
+        parse.choice_backtrack_points = parse.backtrack_points ++;
+        try {
+            if (dispatch != null && parse.string != null) {
+                int c = parse.char_at(parse.pos);
+                for (int i: dispatch[c < NON_ASCII ? c : NON_ASCII]) {
+                    parse.cut = false;
+                    if (children[i].parse(parse))
+                        return true;
+                    if (parse.cut)
+                        return false;
+                }
+                return false;
+            }
+            for (Parser child: children) {
+                parse.cut = false;
+                if (child.parse(parse))
+                    return true;
+                if (parse.cut)
+                    return false;
+            }
+            return false;
+        }
+        finally {
+            parse.cut = cut0;
+            parse.choice_backtrack_points = choice0;
+            -- parse.backtrack_points;
+        }
     }
 
     // ---------------------------------------------------------------------------------------------
@@ -93,7 +93,20 @@ public final class Collect extends Parser
     {
         int pos0 = parse.pos;
         int size0 = parse.stack.size();
-        boolean result = child.parse(parse);
+        boolean result;
+
+        if (action_on_fail) {
+            // the failure of the child is recovered from
+            ++ parse.backtrack_points;
+            try {
+                result = child.parse(parse);
+            }
+            finally {
+                -- parse.backtrack_points;
+            }
+        }
+        else
+            result = child.parse(parse);
 
         if (!result && !action_on_fail)
             return false;
@@ -0,0 +1,54 @@
+package norswap.autumn.parsers;
+
+import norswap.autumn.Autumn;
+import norswap.autumn.Parse;
+import norswap.autumn.ParseOptions;
+import norswap.autumn.Parser;
+import norswap.autumn.ParserCompiler;
+
+/**
+ * Matches the same thing as its child, but does so by running a specialized tree of compiled
+ * nodes ({@link ParserCompiler.Node}) instead of the generic {@link Parser#parse} wrapper of each
+ * sub-parser.
+ *
+ * <p>Compiled parsers run the original parser graph whenever {@link ParseOptions#trace}, {@link
+ * ParseOptions#record_call_stack}, {@link ParseOptions#counters}, {@link ParseOptions#profiler} or
+ * {@link ParseOptions#jfr} is set, as the compiled nodes do not record this information. The same
+ * goes for the parses of an {@link norswap.autumn.IncrementalParse}, as the compiled nodes do not
+ * report the input they examine ({@link Parse#track_examined}).
+ *
+ * <p>Since this is an {@link AbstractWrapper}, visitors see through it to the original parser
+ * graph, which is left untouched by compilation.
+ *
+ * <p>Build with {@link Autumn#compile(Parser)}.
+ */
+public final class CompiledParser extends AbstractWrapper
+{
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * The compiled form of {@link #child}.
+     */
+    public final ParserCompiler.Node root;
+
+    // ---------------------------------------------------------------------------------------------
+
+    public CompiledParser (Parser child, ParserCompiler.Node root)
+    {
+        super("compiled", child);
+        this.root = root;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override protected boolean doparse (Parse parse)
+    {
+        // parse.stats is also set if parse.options.jfr is
+        return parse.options.trace || parse.options.record_call_stack || parse.stats != null
+                || parse.options.profiler != null || parse.track_examined
+            ? child.parse(parse)
+            : root.run(parse);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
@@ -0,0 +1,51 @@
+package norswap.autumn.parsers;
+
+import norswap.autumn.DSL.rule;
+import norswap.autumn.Parse;
+import norswap.autumn.Parser;
+
+/**
+ * Matches the same thing as its child, then <i>cuts</i>: commits to the choices made so far.
+ *
+ * <p>After a cut succeeds, the enclosing {@link Choice} (the innermost one whose alternative
+ * contains the cut) will not try its remaining alternatives if the current alternative fails.
+ *
+ * <p>In addition, if no backtracking is possible anymore, the cut commits the whole parse ({@link
+ * Parse#commit()}): the side-effects logged so far are discarded, as are memoized results that
+ * start before the current position. This keeps memory usage from growing with the input size
+ * when cuts are placed in top-level sequences.
+ *
+ * <p>The parse is not committed if the cut runs inside a parser that may recover from a later
+ * failure ({@link Parse#backtrack_points}: choices other than the innermost enclosing one,
+ * optionals, repetitions, lookaheads, memoized parsers, ...) or that may roll back its child's side
+ * effects even on success ({@link Parse#cut_barriers}: {@link LeftRecursive}, {@link Longest},
+ * {@link Bounded}, the token parsers of {@link Tokens}, and the operands of a {@link
+ * RightExpression}). In that case, the cut still affects the enclosing choice. As a result,
+ * committing never changes the outcome of the parse: a failure after a commit always causes the
+ * whole parse to fail.
+ *
+ * <p>Build with {@link rule#cut()}.
+ */
+public final class Cut extends AbstractWrapper
+{
+    // ---------------------------------------------------------------------------------------------
+
+    public Cut (Parser child) {
+        super("cut", child);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override protected boolean doparse (Parse parse)
+    {
+        if (!child.parse(parse))
+            return false;
+
+        parse.cut = true;
+        if (parse.can_commit())
+            parse.commit();
+        return true;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
@@ -1,6 +1,7 @@
 package norswap.autumn.parsers;
 
 import norswap.autumn.Parse;
+import norswap.autumn.ParseState;
 import norswap.autumn.Parser;
 import norswap.autumn.ParserVisitor;
 import norswap.autumn.util.ArrayStack;
@@ -63,6 +64,12 @@ public final class GuardedRecursion extends Parser
 
     // ---------------------------------------------------------------------------------------------
 
+    @Override public Iterable<ParseState<?>> parse_states () {
+        return Collections.singleton(LeftRecursive.active_left_recursives);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
     @Override public String toStringFull () {
         return "guarded(" + child + ")";
     }
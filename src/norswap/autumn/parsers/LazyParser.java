@@ -23,6 +23,9 @@ import java.util.function.Supplier;
  * <p>Beware that it is unsafe to print this parser whenever its supplier is unable to provide
  * a correct parser yet (typically because the referenced parser hasn't been initialized yet).
  *
+ * <p>The child is resolved in a thread-safe manner, so a grammar containing this parser can be
+ * shared between parses running concurrently.
+ *
  * <p>Build with {@link DSL#lazy(Supplier)} or {@link DSL#recursive(Function)}.
  */
 public final class LazyParser extends Parser
@@ -33,15 +36,27 @@ public final class LazyParser extends Parser
 
     // ---------------------------------------------------------------------------------------------
 
-    private Parser parser;
+    private volatile Parser parser;
 
     // ---------------------------------------------------------------------------------------------
 
-    public Parser child() {
-        if (parser == null)
-            parser = supplier.get();
-
-        return parser;
+    /**
+     * Returns the parser returned by the supplier, calling it if this hasn't been done yet.
+     *
+     * <p>Safe to call from multiple threads: the supplier is still called only once, and the
+     * child is safely published to all threads.
+     */
+    public Parser child()
+    {
+        Parser child = parser;
+        if (child != null)
+            return child;
+
+        synchronized (this) {
+            if (parser == null)
+                parser = supplier.get();
+            return parser;
+        }
     }
 
     // ---------------------------------------------------------------------------------------------
@@ -98,32 +98,38 @@ public final class LeftExpression extends Parser
         if (!left.parse(parse))
             return false;
         
-        outer: while (true)
-        {
-            int pos1 = parse.pos;
-            int log1 = parse.log.size();
-            StackAction step = null;
-
-            for (int i = 0; i < infixes.length; ++i)
-                if (infixes[i].parse(parse))
-                    if (right.parse(parse)) {
-                        ++count;
-                        infix_steps[i].apply(parse, parse.stack.pop_from(stack0), pos0, stack0);
+        ++ parse.backtrack_points;
+        try {
+            outer: while (true)
+            {
+                int pos1 = parse.pos;
+                int log1 = parse.log.size();
+                StackAction step = null;
+
+                for (int i = 0; i < infixes.length; ++i)
+                    if (infixes[i].parse(parse))
+                        if (right.parse(parse)) {
+                            ++count;
+                            infix_steps[i].apply(parse, parse.stack.pop_from(stack0), pos0, stack0);
+                            continue outer;
+                        }
+                        else {
+                            parse.pos = pos1;
+                            parse.log.rollback(log1);
+                        }
+
+                for (int i = 0; i < suffixes.length; ++i)
+                    if (suffixes[i].parse(parse)) {
+                        ++ count;
+                        suffix_steps[i].apply(parse, parse.stack.pop_from(stack0), pos0, stack0);
                         continue outer;
                     }
-                    else {
-                        parse.pos = pos1;
-                        parse.log.rollback(log1);
-                    }
-
-            for (int i = 0; i < suffixes.length; ++i)
-                if (suffixes[i].parse(parse)) {
-                    ++ count;
-                    suffix_steps[i].apply(parse, parse.stack.pop_from(stack0), pos0, stack0);
-                    continue outer;
-                }
 
-            break;
+                break;
+            }
+        }
+        finally {
+            -- parse.backtrack_points;
         }
 
         return count > 0 || !operator_required;
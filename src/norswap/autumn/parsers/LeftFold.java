@@ -78,23 +78,29 @@ public final class LeftFold extends Parser
         if (!left.parse(parse))
             return false;
 
-        while (true)
-        {
-            int pos1 = parse.pos;
-            int log1 = parse.log.size();
-
-            if (!operator.parse(parse))
-                break;
-
-            if (!right.parse(parse)) {
-                parse.pos = pos1;
-                parse.log.rollback(log1);
-                break;
+        ++ parse.backtrack_points;
+        try {
+            while (true)
+            {
+                int pos1 = parse.pos;
+                int log1 = parse.log.size();
+
+                if (!operator.parse(parse))
+                    break;
+
+                if (!right.parse(parse)) {
+                    parse.pos = pos1;
+                    parse.log.rollback(log1);
+                    break;
+                }
+
+                ++ count;
+                if (step != null)
+                    step.apply(parse, parse.stack.pop_from(size0), pos0, size0);
             }
-
-            ++ count;
-            if (step != null)
-                step.apply(parse, parse.stack.pop_from(size0), pos0, size0);
+        }
+        finally {
+            -- parse.backtrack_points;
         }
 
         return count > 0 || !operator_required;
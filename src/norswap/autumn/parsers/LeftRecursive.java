@@ -8,6 +8,7 @@ import norswap.autumn.ParserVisitor;
 import norswap.autumn.SideEffect;
 import norswap.autumn.StackAction;
 import norswap.autumn.util.ArrayStack;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.function.Function;
@@ -138,12 +139,18 @@ public final class LeftRecursive extends Parser
         if (left_associative) state.recursions = 1;
 
         // iteratively grow the seed
-        while (child.parse(parse) && parse.pos > invoc.end_pos)
-        {
-            invoc.end_pos = parse.pos;
-            invoc.delta = parse.log.delta(log0);
-            parse.pos = pos0;
-            parse.log.rollback(log0);
+        ++ parse.cut_barriers;
+        try {
+            while (child.parse(parse) && parse.pos > invoc.end_pos)
+            {
+                invoc.end_pos = parse.pos;
+                invoc.delta = parse.log.delta(log0);
+                parse.pos = pos0;
+                parse.log.rollback(log0);
+            }
+        }
+        finally {
+            -- parse.cut_barriers;
         }
 
         if (left_associative) state.recursions = 0;
@@ -176,6 +183,12 @@ public final class LeftRecursive extends Parser
 
     // ---------------------------------------------------------------------------------------------
 
+    @Override public Iterable<ParseState<?>> parse_states () {
+        return Arrays.asList(state_holder, active_left_recursives);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
     @Override public void set_rule (String name)
     {
         child.set_rule(name + "(leftrec child)");
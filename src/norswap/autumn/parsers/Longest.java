@@ -46,19 +46,25 @@ public final class Longest extends Parser
         int max_pos = pos0;
         List<SideEffect> delta = null;
 
-        for (Parser child: children)
-        {
-            boolean success = child.parse(parse);
-            if (success) {
-                if (parse.pos > max_pos) {
-                    max_pos = parse.pos;
-                    delta = parse.log.delta(log0);
+        ++ parse.cut_barriers;
+        try {
+            for (Parser child: children)
+            {
+                boolean success = child.parse(parse);
+                if (success) {
+                    if (parse.pos > max_pos) {
+                        max_pos = parse.pos;
+                        delta = parse.log.delta(log0);
+                    }
+
+                    parse.pos = pos0;
+                    parse.log.rollback(log0);
                 }
-
-                parse.pos = pos0;
-                parse.log.rollback(log0);
             }
         }
+        finally {
+            -- parse.cut_barriers;
+        }
 
         if (delta == null)
             return false;
@@ -30,12 +30,19 @@ public final class Lookahead extends Parser
     @Override public boolean doparse (Parse parse)
     {
         int pos0 = parse.pos;
-        if (child.parse(parse)) {
-            parse.pos = pos0;
-            return true;
+        boolean success;
+
+        ++ parse.backtrack_points;
+        try {
+            success = child.parse(parse);
+        }
+        finally {
+            -- parse.backtrack_points;
         }
-        // parse.pos has already been reset
-        return false;
+
+        // on failure, parse.pos has already been reset
+        parse.pos = pos0;
+        return success;
     }
 
     // ---------------------------------------------------------------------------------------------
@@ -14,8 +14,8 @@ import java.util.function.Function;
  * Wraps a child parser, matching the same thing it does but memoizing its result.
  *
  * <p>The memoization strategy depends on the implementation of {@link Memoizer} supplied to the
- * constructor. Built-in memoizers implementation are {@link MemoTable} and {@link MemoCache}.
- * Users can also define their own.
+ * constructor. Built-in memoizers implementation are {@link MemoTable}, {@link MemoCache},
+ * {@link MemoMatrix} and {@link MemoWindow}. Users can also define their own.
  *
  * <p>The results of the child parser will be memoized based on the input position and an optional
  * context object, and potentially on the parser itself, depending on the supplied memoizer (this is
@@ -67,8 +67,12 @@ public final class Memo extends Parser
         Memoizer memo = memoizer.data(parse);
         MemoEntry entry = memo.get(child, parse.pos, ctx);
 
+        if (parse.stats != null)
+            parse.stats.memo_lookup(entry != null);
+
         if (entry != null)
         {
+            parse.examine(entry.examined);
             if (!entry.succeeded())
                 return false;
 
@@ -79,11 +83,27 @@ public final class Memo extends Parser
 
         int pos0 = parse.pos;
         int log0 = parse.log.size();
+        int examined0 = parse.examined;
+        parse.examined = pos0;
+
+        boolean success;
+        ++ parse.backtrack_points;
+        try {
+            success = child.parse(parse);
+        }
+        finally {
+            -- parse.backtrack_points;
+        }
 
         entry = new MemoEntry(
-            child.parse(parse), child, pos0, parse.pos, parse.log.delta(log0), ctx);
+            success, child, pos0, parse.pos, parse.log.delta(log0), ctx, parse.examined);
 
+        parse.examine(examined0);
         memo.memoize(entry);
+
+        if (parse.stats != null)
+            ++ parse.stats.memo_stores;
+
         return entry.succeeded();
     }
 
@@ -101,6 +121,12 @@ public final class Memo extends Parser
 
     // ---------------------------------------------------------------------------------------------
 
+    @Override public Iterable<ParseState<?>> parse_states () {
+        return Collections.singleton(memoizer);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
     @Override public String toStringFull () {
         return "memo(" + child + ")";
     }
@@ -33,7 +33,14 @@ public final class Not extends Parser
         String errmsg0 = parse.error_message();
         ParserCallStack stk0 = parse.error_call_stack;
         // if the child matches, #parse will undo its side effects
-        boolean success = !child.parse(parse);
+        boolean success;
+        ++ parse.backtrack_points;
+        try {
+            success = !child.parse(parse);
+        }
+        finally {
+            -- parse.backtrack_points;
+        }
         // negated parsers should not count towards the furthest error
         parse.error = err0;
         //noinspection StringEquality
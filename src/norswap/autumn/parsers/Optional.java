@@ -28,7 +28,13 @@ public final class Optional extends Parser
 
     @Override public boolean doparse (Parse parse)
     {
-        child.parse(parse);
+        ++ parse.backtrack_points;
+        try {
+            child.parse(parse);
+        }
+        finally {
+            -- parse.backtrack_points;
+        }
         return true;
     }
 
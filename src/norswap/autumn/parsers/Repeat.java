@@ -46,8 +46,16 @@ public final class Repeat extends Parser
         for (int i = 0; i < min; ++i)
             if (!child.parse(parse))
                 return false;
-        if (!exact)
+        if (exact)
+            return true;
+
+        ++ parse.backtrack_points;
+        try {
             while (child.parse(parse)) ;
+        }
+        finally {
+            -- parse.backtrack_points;
+        }
         return true;
     }
 
@@ -117,40 +117,46 @@ public final class RightExpression extends Parser
         int right_cached_pos = -1;
         List<SideEffect> right_cached_delta = null;
 
-        outer: while (true)
-        {
-            if (left != null && left.parse(parse)) {
-                for (int i = 0; i < infixes.length; ++i)
-                    if (infixes[i].parse(parse)) {
+        ++ parse.cut_barriers;
+        try {
+            outer: while (true)
+            {
+                if (left != null && left.parse(parse)) {
+                    for (int i = 0; i < infixes.length; ++i)
+                        if (infixes[i].parse(parse)) {
+                            stack.push(parse.pos);
+                            stack.push(parse.stack.size());
+                            steps.push(infix_steps[i]);
+                            log0 = parse.log.size();
+                            continue outer;
+                        }
+
+                    if (left == right) {
+                        right_cached_pos = parse.pos;
+                        right_cached_delta = parse.log.delta(log0);
+                    }
+
+                    // rollback left operand
+                    parse.pos = stack.back(1);
+                    parse.log.rollback(log0);
+                }
+
+                for (int i = 0; i < prefixes.length; ++i)
+                    if (prefixes[i].parse(parse)) {
                         stack.push(parse.pos);
                         stack.push(parse.stack.size());
-                        steps.push(infix_steps[i]);
+                        steps.push(prefix_steps[i]);
                         log0 = parse.log.size();
+                        right_cached_pos = -1;
+                        right_cached_delta = null;
                         continue outer;
                     }
 
-                if (left == right) {
-                    right_cached_pos = parse.pos;
-                    right_cached_delta = parse.log.delta(log0);
-                }
-
-                // rollback left operand
-                parse.pos = stack.back(1);
-                parse.log.rollback(log0);
+                break;
             }
-
-            for (int i = 0; i < prefixes.length; ++i)
-                if (prefixes[i].parse(parse)) {
-                    stack.push(parse.pos);
-                    stack.push(parse.stack.size());
-                    steps.push(prefix_steps[i]);
-                    log0 = parse.log.size();
-                    right_cached_pos = -1;
-                    right_cached_delta = null;
-                    continue outer;
-                }
-
-            break;
+        }
+        finally {
+            -- parse.cut_barriers;
         }
 
         // Always pop the last entry (the last operand is not a left-hand-side).
@@ -86,22 +86,28 @@ public final class RightFold extends Parser
 
         int log0 = parse.log.size();
 
-        while (left.parse(parse))
-        {
-            if (!operator.parse(parse)) {
-                if (right == left) {
-                    no_reparse = true;
+        ++ parse.backtrack_points;
+        try {
+            while (left.parse(parse))
+            {
+                if (!operator.parse(parse)) {
+                    if (right == left) {
+                        no_reparse = true;
+                        break;
+                    }
+                    // rollback left operand
+                    parse.pos = stack.back(1);
+                    parse.log.rollback(log0);
                     break;
                 }
-                // rollback left operand
-                parse.pos = stack.back(1);
-                parse.log.rollback(log0);
-                break;
-            }
 
-            log0 = parse.log.size();
-            stack.push(parse.pos);
-            stack.push(parse.stack.size());
+                log0 = parse.log.size();
+                stack.push(parse.pos);
+                stack.push(parse.stack.size());
+            }
+        }
+        finally {
+            -- parse.backtrack_points;
         }
 
         // Always pop the last entry (the last operand is not a left-hand-side).
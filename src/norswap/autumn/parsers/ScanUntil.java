@@ -0,0 +1,137 @@
+package norswap.autumn.parsers;
+
+import norswap.autumn.Parse;
+import norswap.autumn.Parser;
+import norswap.autumn.ParserVisitor;
+import java.util.Collections;
+
+import static norswap.autumn.util.ParserStringsUtil.escape_quoted_section;
+
+/**
+ * Consumes input up to (but excluding) a terminator, or up to the end of the input if the
+ * terminator does not occur. Always succeeds, possibly without consuming any input.
+ *
+ * <p>The terminator is either a literal string, located by searching the input directly (see
+ * {@link norswap.autumn.input.InputSource#index_of}), or any character matching a {@link
+ * CharPredicate}. In the second case, an escape character can be given, which causes the character
+ * following it to be consumed unconditionally.
+ *
+ * <p>With a literal terminator {@code T}, this is equivalent to {@code seq(not(str(T)),
+ * any).at_least(0)}, including the furthest error position, but runs in a single loop.
+ *
+ * <p>Build with {@link norswap.autumn.DSL#scan_until(String)} or {@link
+ * norswap.autumn.DSL#scan_until(Object, int)}. Use it between delimiters, e.g. {@code seq("/*",
+ * scan_until("*&#47;"), "*&#47;")}.
+ */
+public final class ScanUntil extends Parser
+{
+    // ---------------------------------------------------------------------------------------------
+
+    /** The literal terminator, or null if {@link #stop} is used instead. */
+    public final String terminator;
+
+    /** Matches the terminating characters, or null if {@link #terminator} is used instead. */
+    public final CharPredicate stop;
+
+    /** Escape character (only used with {@link #stop}), or -1 if none. */
+    public final int escape;
+
+    // ---------------------------------------------------------------------------------------------
+
+    private final int[] codepoints;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Creates a parser that consumes input up to the first occurrence of {@code terminator}, which
+     * must not be empty.
+     */
+    public ScanUntil (String terminator)
+    {
+        if (terminator.isEmpty())
+            throw new IllegalArgumentException("empty terminator");
+
+        this.terminator = terminator;
+        this.codepoints = terminator.codePoints().toArray();
+        this.stop = null;
+        this.escape = -1;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Creates a parser that consumes input up to the first character matching {@code stop} that is
+     * not preceded by an {@code escape} character. Use -1 for no escape character.
+     */
+    public ScanUntil (CharPredicate stop, int escape)
+    {
+        this.terminator = null;
+        this.codepoints = null;
+        this.stop = stop;
+        this.escape = escape;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public boolean doparse (Parse parse)
+    {
+        assert parse.string != null;
+        int end = parse.end_of_input;
+        int pos;
+
+        if (codepoints != null) {
+            pos = parse.string.index_of(parse.pos, end, codepoints);
+            if (pos < 0) pos = end;
+            parse.examine(pos + codepoints.length);
+        }
+        else {
+            pos = parse.pos;
+            while (pos < end) {
+                int c = parse.string.char_at(pos);
+                if (c == escape)
+                    pos = Math.min(pos + 2, end);
+                else if (stop.char_class != null ? stop.char_class.test(c) : stop.predicate.test(c))
+                    break;
+                else
+                    ++ pos;
+            }
+        }
+
+        // the equivalent repetition fails at the terminator
+        if (parse.error <= pos) {
+            parse.error = pos;
+            if (parse.error_message() != null)
+                parse.set_error_message(null);
+            if (parse.options.record_call_stack)
+                parse.error_call_stack = parse.call_stack.clone();
+        }
+
+        parse.pos = pos;
+        return true;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public void accept (ParserVisitor visitor) {
+        visitor.visit(this);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public Iterable<Parser> children() {
+        return Collections.emptyList();
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public String toStringFull()
+    {
+        if (terminator != null)
+            return "scan_until(\"" + escape_quoted_section(terminator) + "\")";
+        return escape < 0
+            ? "scan_until(" + stop + ")"
+            : "scan_until(" + stop + ", " + new String(Character.toChars(escape)) + ")";
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
@@ -0,0 +1,256 @@
+package norswap.autumn.parsers;
+
+import norswap.autumn.Parse;
+import norswap.autumn.Parser;
+import norswap.autumn.ParserVisitor;
+import norswap.autumn.visitors.SpanFusion;
+import java.util.Collections;
+
+/**
+ * Matches a run of single characters, in a single loop. This is equivalent to a {@link Repeat}
+ * over an {@link Element} (or to an {@link Around} over elements, if {@link #separator} is
+ * non-null), but avoids going through {@link Parser#parse} for each character.
+ *
+ * <p>The furthest error position is updated as it would be by the equivalent parser: at the
+ * position of the first character that is not matched, unless the repetition stopped because
+ * its count was reached. The call stack recorded for the error ends with the parser of the
+ * element that failed to match.
+ *
+ * <p>Repetitions of elements are rewritten into this parser by {@link SpanFusion}.
+ */
+public final class Span extends Parser
+{
+    // ---------------------------------------------------------------------------------------------
+
+    /** The repeated element. */
+    public final Element element;
+
+    /** If non-null, the separator between repetitions of {@link #element}. */
+    public final Element separator;
+
+    /** Minimum number of repetitions of {@link #element}. */
+    public final int min;
+
+    /** Whether to match exactly {@link #min} repetitions. */
+    public final boolean exact;
+
+    /** Whether to allow a trailing {@link #separator}. */
+    public final boolean trailing;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * A parser matching a single character, made of a {@link CharPredicate}, optionally preceded by
+     * a negated literal: {@code seq(not(str(...)), predicate)}.
+     */
+    public static final class Element
+    {
+        /** The original parser. */
+        public final Parser parser;
+
+        private final CharPredicate predicate;
+
+        /** If non-null, the code points of the negated literal. */
+        private final int[] excluded;
+
+        private Element (Parser parser, CharPredicate predicate, int[] excluded) {
+            this.parser = parser;
+            this.predicate = predicate;
+            this.excluded = excluded;
+        }
+
+        /** Whether the element matches the character at {@code pos}. */
+        boolean matches (Parse parse, int pos)
+        {
+            if (excluded != null && parse.match(pos, excluded))
+                return false;
+            int c = parse.char_at(pos);
+            return predicate.char_class != null
+                ? predicate.char_class.test(c)
+                : predicate.predicate.test(c);
+        }
+
+        /** The character predicate of the element. */
+        public CharPredicate predicate() {
+            return predicate;
+        }
+
+        /**
+         * Returns an element for {@code parser}, or null if the parser doesn't have the form of an
+         * element, or if it (or one of its components) has {@link Parser#exclude_errors} set.
+         */
+        public static Element of (Parser parser)
+        {
+            if (parser.exclude_errors)
+                return null;
+
+            if (parser instanceof CharPredicate)
+                return new Element(parser, (CharPredicate) parser, null);
+
+            if (!(parser instanceof Sequence))
+                return null;
+
+            Sequence seq = (Sequence) parser;
+            if (seq.children().size() != 2
+                    || !(seq.children().get(0) instanceof Not)
+                    || !(seq.children().get(1) instanceof CharPredicate))
+                return null;
+
+            Not not = (Not) seq.children().get(0);
+            CharPredicate predicate = (CharPredicate) seq.children().get(1);
+
+            if (!(not.child instanceof StringMatch)
+                    || ((StringMatch) not.child).whitespace != null
+                    || not.exclude_errors || not.child.exclude_errors || predicate.exclude_errors)
+                return null;
+
+            return new Element(parser, predicate, ((StringMatch) not.child).codepoints);
+        }
+
+        @Override public String toString() {
+            return parser.toString();
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Creates a span matching at least (or exactly, if {@code exact}) {@code min} repetitions of
+     * {@code element}, separated by {@code separator} if non-null, with an optional trailing
+     * separator if {@code trailing}.
+     */
+    public Span (Element element, Element separator, int min, boolean exact, boolean trailing)
+    {
+        if (trailing && separator == null)
+            throw new IllegalArgumentException("trailing separator without separator");
+
+        this.element = element;
+        this.separator = separator;
+        this.min = min;
+        this.exact = exact;
+        this.trailing = trailing;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override protected boolean doparse (Parse parse)
+    {
+        assert parse.string != null;
+        int limit = exact ? min : Integer.MAX_VALUE;
+        int pos = parse.pos;
+        int n = 0;
+
+        if (separator == null)
+        {
+            while (n < limit && element.matches(parse, pos)) {
+                ++ pos;
+                ++ n;
+            }
+            if (n < limit)
+                record_failure(parse, element, pos);
+            parse.pos = pos;
+            return n >= min;
+        }
+
+        // Keep track of the furthest failed attempt.
+        Element failed = null;
+        int fail_pos = -1;
+
+        if (element.matches(parse, pos)) {
+            ++ pos;
+            ++ n;
+            while (n < limit) {
+                if (!separator.matches(parse, pos)) {
+                    failed = separator;
+                    fail_pos = pos;
+                    break;
+                }
+                if (!element.matches(parse, pos + 1)) {
+                    failed = element;
+                    fail_pos = pos + 1;
+                    break;
+                }
+                pos += 2;
+                ++ n;
+            }
+        }
+        else {
+            failed = element;
+            fail_pos = pos;
+        }
+
+        if (n < min) {
+            record_failure(parse, failed, fail_pos);
+            return false;
+        }
+
+        if (trailing) {
+            if (separator.matches(parse, pos))
+                ++ pos;
+            else if (pos >= fail_pos) {
+                failed = separator;
+                fail_pos = pos;
+            }
+        }
+
+        if (failed != null)
+            record_failure(parse, failed, fail_pos);
+
+        parse.pos = pos;
+        return true;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Updates the furthest error as {@link Parser#parse} does when {@code element} fails at
+     * {@code pos}.
+     */
+    private static void record_failure (Parse parse, Element element, int pos)
+    {
+        if (parse.error > pos)
+            return;
+
+        parse.error = pos;
+        if (parse.error_message() != null)
+            parse.set_error_message(null);
+
+        if (parse.options.record_call_stack) {
+            parse.call_stack.push(element.parser, pos);
+            parse.error_call_stack = parse.call_stack.clone();
+            parse.call_stack.pop();
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public void accept (ParserVisitor visitor) {
+        visitor.visit(this);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public Iterable<Parser> children() {
+        return Collections.emptyList();
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public String toStringFull()
+    {
+        StringBuilder b = new StringBuilder();
+        b.append("span(");
+        b.append(element).append(", ");
+        if (separator != null)
+            b.append(separator).append(", ");
+        b.append(min);
+        if (exact)
+            b.append(", exact");
+        if (trailing)
+            b.append(", trailing");
+        b.append(")");
+        return b.toString();
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
@@ -0,0 +1,299 @@
+package norswap.autumn.parsers;
+
+import norswap.autumn.DSL.rule;
+import norswap.autumn.Parse;
+import norswap.autumn.ParseOptions;
+import norswap.autumn.ParseStats;
+import norswap.autumn.Parser;
+import norswap.autumn.ParserVisitor;
+import norswap.autumn.util.SplitScanner;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Matches at least {@link #min} repetitions of {@link #item}, separated by {@link #separator} (if
+ * non-null), like {@link Around} (or {@link Repeat}), but parses large repetitions in parallel.
+ *
+ * <p>When the remaining input is large enough, a {@link SplitScanner} looks for candidate
+ * boundaries between items, at least {@link #chunk_size} apart. Each chunk of the input (but the
+ * first) is parsed as a repetition of {@code seq(separator, item)} in its own {@link Parse} (see
+ * {@link Parse#fork}), on {@link #executor}. The first chunk is parsed on the current thread. The
+ * value stacks of the chunks are then stitched, in order, onto the value stack of the parse.
+ *
+ * <p>A chunk is only used if the parse of the previous chunks ended exactly at its start. Otherwise
+ * (the boundary was wrong, or a chunk failed or threw an exception), the rest of the repetition is
+ * parsed sequentially, so that the result is always the same as the sequential parse.
+ *
+ * <p>This requires the items not to depend on parse state ({@link norswap.autumn.ParseState}) set
+ * by previous items, and not to cause side-effects other than pushing values on the value stack,
+ * as the side-effects of the forked parses are not carried over.
+ *
+ * <p>The repetition is always parsed sequentially if the options request a call stack ({@link
+ * ParseOptions#record_call_stack}), tracing ({@link ParseOptions#trace}) or profiling ({@link
+ * ParseOptions#profiler}), or if the input is a list. A split repetition nested inside a chunk
+ * (i.e. in a {@link Parse#forked} parse) is also parsed sequentially, so that the chunks never wait
+ * on one another.
+ *
+ * <p>When the parse reaches a chunk that the executor hasn't started yet, it parses the chunk on
+ * the current thread instead of waiting for it. The parse thus only waits for chunks that are
+ * already running, which makes it safe to run the parse itself on a task of a bounded {@link
+ * #executor} (e.g. with {@link norswap.autumn.Autumn#parse_all}).
+ *
+ * <p>When the parse stops using the chunks (e.g. because a boundary was wrong), the forked parses
+ * that are still running stop before their next item, and those that haven't started are skipped.
+ *
+ * <p>Build with {@link rule#sep_split(int, Object, SplitScanner)} or {@link
+ * rule#at_least_split(int, SplitScanner)}.
+ */
+public final class SplitRepeat extends Parser
+{
+    // ---------------------------------------------------------------------------------------------
+
+    /** Default value for {@link #chunk_size}. */
+    public static final int DEFAULT_CHUNK_SIZE = 1 << 16;
+
+    // ---------------------------------------------------------------------------------------------
+
+    public final int min;
+
+    // ---------------------------------------------------------------------------------------------
+
+    public final Parser item;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /** The separator between items, or null. */
+    public final Parser separator;
+
+    // ---------------------------------------------------------------------------------------------
+
+    public final SplitScanner scanner;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /** Minimum size of a chunk, and minimum size of the remaining input to parse in parallel. */
+    public final int chunk_size;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /** The executor that parses the chunks, or null to use the common {@link ForkJoinPool}. */
+    public final Executor executor;
+
+    // ---------------------------------------------------------------------------------------------
+
+    private final Parser separator_then_item;
+
+    // ---------------------------------------------------------------------------------------------
+
+    public SplitRepeat (int min, Parser item, Parser separator, SplitScanner scanner,
+            int chunk_size, Executor executor)
+    {
+        this.min = min;
+        this.item = item;
+        this.separator = separator;
+        this.scanner = scanner;
+        this.chunk_size = chunk_size;
+        this.executor = executor;
+        this.separator_then_item = separator != null ? new Sequence(separator, item) : item;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /** The result of parsing a chunk in a forked parse. */
+    private static final class Chunk
+    {
+        final int end;
+        final int count;
+        final Object[] values;
+        final int error;
+        final String error_message;
+        final int examined;
+        final ParseStats stats;
+
+        Chunk (Parse fork, int count)
+        {
+            this.end = fork.pos;
+            this.count = count;
+            this.values = fork.stack.toArray();
+            this.error = fork.error;
+            this.error_message = fork.error_message();
+            this.examined = fork.examined;
+            this.stats = fork.stats;
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public boolean doparse (Parse parse)
+    {
+        int[] splits = parse.string == null
+                || parse.forked
+                || parse.options.record_call_stack
+                || parse.options.trace
+                || parse.options.profiler != null
+                || parse.end_of_input - parse.pos < 2 * chunk_size
+            ? new int[0]
+            : scanner.scan(parse.string, parse.pos, parse.end_of_input, chunk_size);
+
+        List<ChunkTask> chunks = new ArrayList<>(splits.length);
+        Executor exec = executor != null ? executor : ForkJoinPool.commonPool();
+        AtomicBoolean abort = new AtomicBoolean();
+        for (int k = 0; k < splits.length; ++k) {
+            int end = k + 1 < splits.length ? splits[k + 1] : Integer.MAX_VALUE;
+            ChunkTask task = new ChunkTask(parse.fork(splits[k]), end, abort);
+            chunks.add(task);
+            exec.execute(task);
+        }
+
+        ++ parse.backtrack_points;
+        try {
+            if (!item.parse(parse))
+                return min == 0;
+
+            int count = 1;
+            int end = splits.length > 0 ? splits[0] : Integer.MAX_VALUE;
+            while (parse.pos < end && separator_then_item.parse(parse))
+                ++ count;
+
+            for (int k = 0; k < splits.length && parse.pos == splits[k]; ++k)
+            {
+                Chunk chunk = chunks.get(k).join();
+                if (chunk == null) break;
+
+                for (Object value: chunk.values)
+                    parse.stack.push(value);
+
+                // errors in the chunk happen after those of the previous chunks
+                if (chunk.error >= parse.error) {
+                    parse.error = chunk.error;
+                    if (chunk.error_message != parse.error_message())
+                        parse.set_error_message(chunk.error_message);
+                }
+
+                parse.examine(chunk.examined);
+                if (parse.stats != null)
+                    parse.stats.add(chunk.stats);
+                count += chunk.count;
+                parse.pos = chunk.end;
+            }
+
+            // sequential fallback, or end of the repetition
+            while (separator_then_item.parse(parse))
+                ++ count;
+
+            return count >= min;
+        }
+        finally {
+            -- parse.backtrack_points;
+            abort.set(true);
+            for (ChunkTask chunk: chunks)
+                chunk.started.set(true);
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Parses repetitions of {@link #separator_then_item} in {@code fork}, as long as the position
+     * is before {@code end}. Returns null if {@code abort} is set before the end of the chunk.
+     */
+    private Chunk parse_chunk (Parse fork, int end, AtomicBoolean abort)
+    {
+        int count = 0;
+        // the repetition recovers from the failure of its last item
+        ++ fork.backtrack_points;
+        while (fork.pos < end) {
+            if (abort.get()) return null;
+            if (!separator_then_item.parse(fork)) break;
+            ++ count;
+        }
+        return new Chunk(fork, count);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * The parse of a chunk, run by {@link #executor} or by the parse that needs its result, whichever
+     * starts it first.
+     */
+    private final class ChunkTask implements Runnable
+    {
+        final Parse fork;
+        final int end;
+        final AtomicBoolean abort;
+        final AtomicBoolean started = new AtomicBoolean();
+        final CompletableFuture<Chunk> result = new CompletableFuture<>();
+
+        ChunkTask (Parse fork, int end, AtomicBoolean abort) {
+            this.fork = fork;
+            this.end = end;
+            this.abort = abort;
+        }
+
+        /** Parses the chunk, unless it was already started. */
+        @Override public void run()
+        {
+            if (!started.compareAndSet(false, true)) return;
+            try {
+                result.complete(parse_chunk(fork, end, abort));
+            } catch (Throwable t) {
+                result.completeExceptionally(t);
+            }
+        }
+
+        /**
+         * Parses the chunk on the current thread if it wasn't started yet, otherwise waits for it.
+         * Returns null if its parse threw an exception (it will be thrown again by the sequential
+         * parse).
+         */
+        Chunk join()
+        {
+            run();
+            try {
+                return result.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof VirtualMachineError)
+                    throw (VirtualMachineError) e.getCause();
+                return null;
+            }
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public void accept (ParserVisitor visitor) {
+        visitor.visit(this);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public List<Parser> children()
+    {
+        return Collections.unmodifiableList(separator != null
+            ? Arrays.asList(item, separator)
+            : Collections.singletonList(item));
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public String toStringFull()
+    {
+        StringBuilder b = new StringBuilder();
+        b.append("split(");
+        b.append(item).append(", ");
+        if (separator != null)
+            b.append(separator).append(", ");
+        b.append(min);
+        b.append(")");
+        return b.toString();
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
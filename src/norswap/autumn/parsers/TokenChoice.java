@@ -2,6 +2,7 @@ package norswap.autumn.parsers;
 
 import norswap.autumn.DSL;
 import norswap.autumn.Parse;
+import norswap.autumn.ParseState;
 import norswap.autumn.Parser;
 import norswap.autumn.ParserVisitor;
 import java.util.Arrays;
@@ -14,7 +15,8 @@ import static norswap.utils.Vanilla.pop;
  * Parses one token out a set of target tokens from an associated {@link Tokens} instance.
  *
  * <p>This is a more efficient version of putting multiple {@link TokenParser} within a {@link
- * Choice} parser, but the result is semantically equivalent.
+ * Choice} parser, but the result is semantically equivalent: the token at the current position
+ * is looked up once, and its type is checked against the targets.
  */
 public final class TokenChoice extends Parser
 {
@@ -61,6 +63,12 @@ public final class TokenChoice extends Parser
 
     // ---------------------------------------------------------------------------------------------
 
+    @Override public Iterable<ParseState<?>> parse_states() {
+        return Collections.singleton(tokens.memo_state);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
     @Override public String toStringFull()
     {
         StringBuilder b = new StringBuilder();
@@ -2,8 +2,10 @@ package norswap.autumn.parsers;
 
 import norswap.autumn.DSL;
 import norswap.autumn.Parse;
+import norswap.autumn.ParseState;
 import norswap.autumn.Parser;
 import norswap.autumn.ParserVisitor;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -72,6 +74,12 @@ public final class TokenParser extends Parser
 
     // ---------------------------------------------------------------------------------------------
 
+    @Override public Iterable<ParseState<?>> parse_states() {
+        return Collections.singleton(tokens.memo_state);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
     @Override public String toStringFull() {
         return "token(" + target + ")";
     }
@@ -144,8 +144,13 @@ public final class Tokens
         Memoizer memo = memo_state.data(parse);
         MemoEntry e = memo.get(null, parse.pos, null);
 
+        if (parse.stats != null)
+            parse.stats.memo_lookup(e != null);
+
         if (e == null) // token for position not in table yet
             e = fill_cache(memo, parse);
+        else
+            parse.examine(e.examined);
 
         if (!e.succeeded() || e.parser != target) // no token or wrong token
             return false;
@@ -169,8 +174,13 @@ public final class Tokens
         Memoizer memo = memo_state.data(parse);
         MemoEntry e = memo.get(null, parse.pos, null);
 
+        if (parse.stats != null)
+            parse.stats.memo_lookup(e != null);
+
         if (e == null) // token for position not in table yet
             e = fill_cache(memo, parse);
+        else
+            parse.examine(e.examined);
 
         if (!e.succeeded()) // no token
             return false;
@@ -196,32 +206,45 @@ public final class Tokens
     {
         int pos0 = parse.pos;
         int log0 = parse.log.size();
+        int examined0 = parse.examined;
+        parse.examined = pos0;
 
         int longest = -1;
         int max_pos = pos0;
         List<SideEffect> delta = null;
 
-        for (int i = 0; i < size; ++i)
-        {
-            boolean success = parsers[i].parse(parse);
-
-            if (success) {
-                if (parse.pos > max_pos) {
-                    max_pos = parse.pos;
-                    delta = parse.log.delta(log0);
-                    longest = i;
+        ++ parse.cut_barriers;
+        try {
+            for (int i = 0; i < size; ++i)
+            {
+                boolean success = parsers[i].parse(parse);
+
+                if (success) {
+                    if (parse.pos > max_pos) {
+                        max_pos = parse.pos;
+                        delta = parse.log.delta(log0);
+                        longest = i;
+                    }
+
+                    parse.pos = pos0;
+                    parse.log.rollback(log0);
                 }
-
-                parse.pos = pos0;
-                parse.log.rollback(log0);
             }
         }
+        finally {
+            -- parse.cut_barriers;
+        }
 
         boolean success = delta != null;
         MemoEntry entry = new MemoEntry(
-            success, success ? parsers[longest] : null, pos0, max_pos, delta, null);
+            success, success ? parsers[longest] : null, pos0, max_pos, delta, null, parse.examined);
 
+        parse.examine(examined0);
         memo.memoize(entry);
+
+        if (parse.stats != null)
+            ++ parse.stats.memo_stores;
+
         return entry;
     }
 
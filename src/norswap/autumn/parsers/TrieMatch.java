@@ -0,0 +1,236 @@
+package norswap.autumn.parsers;
+
+import norswap.autumn.Parse;
+import norswap.autumn.Parser;
+import norswap.autumn.ParserVisitor;
+import norswap.autumn.input.InputSource;
+import norswap.autumn.visitors.TrieFusion;
+import norswap.utils.Strings;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.TreeMap;
+
+import static norswap.autumn.util.ParserStringsUtil.escape_quoted_section;
+
+/**
+ * Matches one literal string out of a list, within {@link Parse#string}. Equivalent to a {@link
+ * Choice} (or a {@link Longest}, see {@link #longest}) between {@link StringMatch} parsers, but the
+ * input is only read once, by walking a prefix trie of the literals.
+ *
+ * <p>Like for {@link StringMatch}, each literal may be associated with a whitespace parser, used
+ * to skip whitespace following the literal. If this parser fails, the next candidate literal is
+ * tried. Also like for {@link StringMatch}, the whitespace parsers are not reported as children.
+ *
+ * <p>Choices of {@link StringMatch} are rewritten into this parser by {@link TrieFusion}.
+ */
+public final class TrieMatch extends Parser
+{
+    // ---------------------------------------------------------------------------------------------
+
+    /** The literals to match. */
+    public final String[] strings;
+
+    /** Whitespace parser associated with each literal, or null. */
+    public final Parser[] whitespace;
+
+    /**
+     * If false, the first matching literal in {@link #strings} is used (like {@link Choice}).
+     * If true, the longest matching literal is used, ties being broken by order (like {@link
+     * Longest}, whitespace excluded).
+     */
+    public final boolean longest;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /** For each trie node, the code points on its outgoing edges, in increasing order. */
+    private final int[][] edge_chars;
+
+    /** For each trie node, the nodes reached by its outgoing edges, parallel to {@link #edge_chars}. */
+    private final int[][] edge_nodes;
+
+    /** For each trie node, null or the indices of the literals ending at this node (increasing). */
+    private final int[][] terminals;
+
+    /** Length (in code points) of each literal. */
+    private final int[] lengths;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Creates a new parser matching one of {@code strings}. {@code whitespace} must have the same
+     * size, and contains the whitespace parser for each literal, or null.
+     */
+    public TrieMatch (String[] strings, Parser[] whitespace, boolean longest)
+    {
+        if (strings.length != whitespace.length)
+            throw new IllegalArgumentException("strings and whitespace must have the same size");
+
+        this.strings = strings;
+        this.whitespace = whitespace;
+        this.longest = longest;
+        this.lengths = new int[strings.length];
+
+        // build a pointer-based trie, then flatten it
+
+        ArrayList<TreeMap<Integer, Integer>> edges = new ArrayList<>();
+        ArrayList<List<Integer>> ends = new ArrayList<>();
+        edges.add(new TreeMap<>());
+        ends.add(null);
+
+        for (int i = 0; i < strings.length; ++i)
+        {
+            int[] codepoints = strings[i].codePoints().toArray();
+            lengths[i] = codepoints.length;
+            int node = 0;
+
+            for (int c: codepoints) {
+                Integer next = edges.get(node).get(c);
+                if (next == null) {
+                    next = edges.size();
+                    edges.get(node).put(c, next);
+                    edges.add(new TreeMap<>());
+                    ends.add(null);
+                }
+                node = next;
+            }
+
+            if (ends.get(node) == null)
+                ends.set(node, new ArrayList<>());
+            ends.get(node).add(i);
+        }
+
+        int size = edges.size();
+        edge_chars = new int[size][];
+        edge_nodes = new int[size][];
+        terminals  = new int[size][];
+
+        for (int node = 0; node < size; ++node) {
+            TreeMap<Integer, Integer> map = edges.get(node);
+            edge_chars[node] = map.keySet().stream().mapToInt(x -> x).toArray();
+            edge_nodes[node] = map.values().stream().mapToInt(x -> x).toArray();
+            if (ends.get(node) != null)
+                terminals[node] = ends.get(node).stream().mapToInt(x -> x).toArray();
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public boolean doparse (Parse parse)
+    {
+        assert parse.string != null;
+        InputSource input = parse.string;
+        int pos0 = parse.pos;
+        int end  = parse.end_of_input;
+
+        // Walk the trie, remembering the best literal and whether there were other candidates.
+
+        int best = -1;
+        boolean others = false;
+        int node = 0;
+        int pos = pos0;
+
+        while (true)
+        {
+            int[] ends = terminals[node];
+            if (ends != null) {
+                if (best < 0 || longest || ends[0] < best) {
+                    others |= best >= 0;
+                    best = ends[0];
+                }
+                else others = true;
+                others |= ends.length > 1;
+            }
+
+            if (pos == end) break;
+            int i = Arrays.binarySearch(edge_chars[node], input.char_at(pos));
+            if (i < 0) break;
+            node = edge_nodes[node][i];
+            ++ pos;
+        }
+
+        parse.examine(pos + 1);
+        if (best < 0)
+            return false;
+        if (accept(parse, pos0, best))
+            return true;
+        if (!others)
+            return false;
+
+        // Slow path: the whitespace of the best literal failed, try the other candidates.
+
+        for (int candidate: candidates(pos0, pos, input))
+            if (candidate != best && accept(parse, pos0, candidate))
+                return true;
+
+        return false;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Consumes the literal at index {@code i} (which must match at {@code pos0}) and its whitespace,
+     * returning false if the whitespace parser fails.
+     */
+    private boolean accept (Parse parse, int pos0, int i)
+    {
+        parse.pos = pos0 + lengths[i];
+        if (whitespace[i] == null || whitespace[i].parse(parse))
+            return true;
+        parse.pos = pos0;
+        return false;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the indices of the literals matching the input between {@code pos0} and {@code
+     * pos}, in the order in which they must be tried.
+     */
+    private Integer[] candidates (int pos0, int pos, InputSource input)
+    {
+        ArrayList<Integer> candidates = new ArrayList<>();
+        int node = 0;
+        for (int p = pos0; ; ++p) {
+            if (terminals[node] != null)
+                for (int i: terminals[node]) candidates.add(i);
+            if (p == pos) break;
+            node = edge_nodes[node][Arrays.binarySearch(edge_chars[node], input.char_at(p))];
+        }
+
+        Comparator<Integer> order = longest
+            ? Comparator.<Integer>comparingInt(i -> -lengths[i]).thenComparingInt(i -> i)
+            : Comparator.comparingInt(i -> i);
+        candidates.sort(order);
+        return candidates.toArray(new Integer[0]);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public void accept (ParserVisitor visitor) {
+        visitor.visit(this);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public List<Parser> children() {
+        return Collections.emptyList();
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public String toStringFull()
+    {
+        StringBuilder b = new StringBuilder();
+        b.append(longest ? "longest_trie(" : "trie(");
+        Strings.separated(b, ", ", Arrays.stream(strings)
+            .map(s -> "[" + escape_quoted_section(s) + "]")
+            .toArray());
+        b.append(")");
+        return b.toString();
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
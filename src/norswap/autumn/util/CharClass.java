@@ -0,0 +1,280 @@
+package norswap.autumn.util;
+
+import java.util.Arrays;
+import java.util.function.IntPredicate;
+
+/**
+ * An immutable set of characters (code points), compiled for fast membership tests.
+ *
+ * <p>Membership for characters below 256 is a lookup in a bitmap (a single array load). Other
+ * characters are looked up in a sorted list of ranges, using binary search.
+ *
+ * <p>Character classes support union, intersection and negation. The nul character ({@code '\0'})
+ * is special, as it is returned by {@link norswap.autumn.Parse#char_at} at the end of the input:
+ * it is never included in a {@link #negate() negation}, and you should usually not include it
+ * explicitly.
+ *
+ * <p>An opaque predicate can be converted using {@link #of(IntPredicate)}, which tests all code
+ * points once. This declares that the membership of each character never changes.
+ */
+public final class CharClass implements IntPredicate
+{
+    // ---------------------------------------------------------------------------------------------
+
+    /** Bitmap of the members below 256. */
+    private final long[] bits = new long[4];
+
+    /**
+     * All the members, as a sorted list of disjoint and non-adjacent inclusive ranges
+     * ({@code [start0, end0, start1, end1, ...]}).
+     */
+    private final int[] ranges;
+
+    /** Index in {@link #ranges} of the first range that ends at or after 256. */
+    private final int high;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Creates a new class from normalized ranges (see {@link #ranges}).
+     */
+    private CharClass (int[] ranges)
+    {
+        this.ranges = ranges;
+        int high = 0;
+
+        for (int i = 0; i < ranges.length; i += 2) {
+            for (int c = ranges[i]; c <= ranges[i + 1] && c < 256; ++c)
+                bits[c >>> 6] |= 1L << c;
+            if (ranges[i + 1] < 256) high = i + 2;
+        }
+
+        this.high = high;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public boolean test (int c)
+    {
+        if (c < 256)
+            return c >= 0 && (bits[c >>> 6] & (1L << c)) != 0;
+
+        int lo = high / 2, hi = ranges.length / 2 - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (c < ranges[2 * mid]) hi = mid - 1;
+            else if (c > ranges[2 * mid + 1]) lo = mid + 1;
+            else return true;
+        }
+        return false;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Whether the class contains any character at or above {@code c}.
+     */
+    public boolean any_at_or_above (int c) {
+        return ranges.length > 0 && ranges[ranges.length - 1] >= c;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the members of the class, as a sorted list of disjoint inclusive ranges
+     * ({@code [start0, end0, start1, end1, ...]}).
+     */
+    public int[] ranges() {
+        return ranges.clone();
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Sorts and merges the given inclusive ranges.
+     */
+    private static CharClass normalize (int[] ranges)
+    {
+        int n = ranges.length / 2;
+        long[] pairs = new long[n];
+        for (int i = 0; i < n; ++i) {
+            if (ranges[2 * i] > ranges[2 * i + 1])
+                throw new IllegalArgumentException(
+                    "invalid range: " + ranges[2 * i] + "-" + ranges[2 * i + 1]);
+            pairs[i] = (long) ranges[2 * i] << 32 | ranges[2 * i + 1];
+        }
+        Arrays.sort(pairs);
+
+        int[] out = new int[2 * n];
+        int size = 0;
+        for (long pair: pairs) {
+            int start = (int) (pair >>> 32), end = (int) pair;
+            if (size > 0 && start <= out[size - 1] + 1)
+                out[size - 1] = Math.max(out[size - 1], end);
+            else {
+                out[size++] = start;
+                out[size++] = end;
+            }
+        }
+        return new CharClass(Arrays.copyOf(out, size));
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the class containing the characters in the given inclusive range, which is empty if
+     * {@code start > end}.
+     */
+    public static CharClass range (int start, int end) {
+        return start > end
+            ? new CharClass(new int[0])
+            : normalize(new int[] { start, end });
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the class containing the characters in the given inclusive ranges
+     * ({@code [start0, end0, start1, end1, ...]}), which need not be sorted.
+     */
+    public static CharClass ranges (int... ranges)
+    {
+        if (ranges.length % 2 != 0)
+            throw new IllegalArgumentException("odd number of range bounds");
+        return normalize(ranges.clone());
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the class containing the given characters.
+     */
+    public static CharClass of (int... chars)
+    {
+        int[] ranges = new int[chars.length * 2];
+        for (int i = 0; i < chars.length; ++i)
+            ranges[2 * i] = ranges[2 * i + 1] = chars[i];
+        return normalize(ranges);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the class containing the code points of the given string.
+     */
+    public static CharClass of (String chars) {
+        return of(chars.codePoints().toArray());
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the class of all the code points that satisfy {@code predicate}. The predicate is
+     * invoked on each code point, which takes a few milliseconds: do this once, when building the
+     * grammar.
+     */
+    public static CharClass of (IntPredicate predicate)
+    {
+        if (predicate instanceof CharClass)
+            return (CharClass) predicate;
+
+        int[] ranges = new int[16];
+        int size = 0;
+        int start = -1;
+
+        for (int c = 0; c <= Character.MAX_CODE_POINT + 1; ++c)
+        {
+            boolean member = c <= Character.MAX_CODE_POINT && predicate.test(c);
+            if (member && start < 0)
+                start = c;
+            else if (!member && start >= 0) {
+                if (size + 2 > ranges.length)
+                    ranges = Arrays.copyOf(ranges, ranges.length * 2);
+                ranges[size++] = start;
+                ranges[size++] = c - 1;
+                start = -1;
+            }
+        }
+
+        return new CharClass(Arrays.copyOf(ranges, size));
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the union of this class and {@code other}.
+     */
+    public CharClass union (CharClass other)
+    {
+        int[] ranges = Arrays.copyOf(this.ranges, this.ranges.length + other.ranges.length);
+        System.arraycopy(other.ranges, 0, ranges, this.ranges.length, other.ranges.length);
+        return normalize(ranges);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the intersection of this class and {@code other}.
+     */
+    public CharClass intersection (CharClass other)
+    {
+        int[] a = this.ranges, b = other.ranges;
+        int[] out = new int[a.length + b.length];
+        int size = 0;
+
+        for (int i = 0, j = 0; i < a.length && j < b.length; ) {
+            int start = Math.max(a[i], b[j]);
+            int end = Math.min(a[i + 1], b[j + 1]);
+            if (start <= end) {
+                out[size++] = start;
+                out[size++] = end;
+            }
+            if (a[i + 1] < b[j + 1]) i += 2;
+            else j += 2;
+        }
+
+        return new CharClass(Arrays.copyOf(out, size));
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the class of all the code points that are not in this class, except the nul
+     * character.
+     */
+    public CharClass negate()
+    {
+        int[] out = new int[ranges.length + 2];
+        int size = 0;
+        int next = 1; // skip nul
+
+        for (int i = 0; i < ranges.length; i += 2) {
+            if (ranges[i] > next) {
+                out[size++] = next;
+                out[size++] = ranges[i] - 1;
+            }
+            next = Math.max(next, ranges[i + 1] + 1);
+        }
+
+        if (next <= Character.MAX_CODE_POINT) {
+            out[size++] = next;
+            out[size++] = Character.MAX_CODE_POINT;
+        }
+
+        return new CharClass(Arrays.copyOf(out, size));
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public boolean equals (Object o) {
+        return o instanceof CharClass && Arrays.equals(ranges, ((CharClass) o).ranges);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public int hashCode() {
+        return Arrays.hashCode(ranges);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
@@ -0,0 +1,147 @@
+package norswap.autumn.util;
+
+import norswap.autumn.input.InputSource;
+import norswap.autumn.parsers.SplitRepeat;
+import norswap.utils.ArrayListInt;
+
+/**
+ * A cheap scanner that finds candidate boundaries between the items of a repetition, without
+ * parsing them, to let a {@link SplitRepeat} parse the items in parallel.
+ *
+ * <p>The scanner tracks bracket nesting and skips over string literals (delimited by quote
+ * characters, with an escape character). Boundaries are only reported at nesting depth 0. The scan
+ * stops at the first closing bracket that doesn't match an opening bracket seen during the scan,
+ * which is assumed to end the repetition.
+ *
+ * <p>There are two kinds of boundaries:
+ *
+ * <ul>
+ *     <li>{@link #separated}: at a separator character (e.g. {@code ','} in a JSON array). The
+ *     separator belongs to the item that follows it.</li>
+ *     <li>{@link #terminated}: after a terminator character (e.g. {@code ';'} or a closing {@code
+ *     '}'} ending a Java class member), and the whitespace that follows it.</li>
+ * </ul>
+ *
+ * <p>Boundaries are only candidates: the scanner knows nothing of comments, or of any other
+ * construct that could hide a bracket or a separator. {@link SplitRepeat} validates each boundary
+ * against the actual parse, and falls back to sequential parsing where a boundary is wrong.
+ */
+public final class SplitScanner
+{
+    // ---------------------------------------------------------------------------------------------
+
+    /** Scanner for the values of a JSON array or the members of a JSON object. */
+    public static final SplitScanner JSON = separated("[{", "]}", "\"", '\\', ',');
+
+    /** Scanner for the members of a Java class body. */
+    public static final SplitScanner JAVA_MEMBERS = terminated("({[", ")}]", "\"'", '\\', ";}");
+
+    // ---------------------------------------------------------------------------------------------
+
+    private final CharClass open, close, quotes, boundaries;
+    private final int escape;
+    private final boolean after;
+
+    // ---------------------------------------------------------------------------------------------
+
+    private SplitScanner (String open, String close, String quotes, int escape, String boundaries,
+            boolean after)
+    {
+        this.open = CharClass.of(open);
+        this.close = CharClass.of(close);
+        this.quotes = CharClass.of(quotes);
+        this.escape = escape;
+        this.boundaries = CharClass.of(boundaries);
+        this.after = after;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns a scanner that reports boundaries at the {@code separator} character.
+     *
+     * @param open the opening brackets
+     * @param close the closing brackets
+     * @param quotes the characters that start and end string literals
+     * @param escape the escape character within string literals, or -1
+     */
+    public static SplitScanner separated (String open, String close, String quotes, int escape,
+            int separator)
+    {
+        return new SplitScanner(open, close, quotes, escape,
+            new String(Character.toChars(separator)), false);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns a scanner that reports boundaries after the {@code terminators} characters and the
+     * whitespace that follows them. A closing bracket may be a terminator: it then reports a
+     * boundary if it closes a bracket at depth 0.
+     *
+     * @see #separated
+     */
+    public static SplitScanner terminated (String open, String close, String quotes, int escape,
+            String terminators)
+    {
+        return new SplitScanner(open, close, quotes, escape, terminators, true);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Scans {@code input} from {@code from} (inclusive) to {@code to} (exclusive, or earlier if the
+     * end of the repetition is detected), returning an increasing list of boundaries, at least
+     * {@code chunk_size} apart from one another and from {@code from}.
+     */
+    public int[] scan (InputSource input, int from, int to, int chunk_size)
+    {
+        ArrayListInt splits = new ArrayListInt();
+        int next = from + chunk_size;
+        int depth = 0;
+        int quote = -1;
+
+        for (int i = from; i < to; ++i)
+        {
+            int c = input.char_at(i);
+
+            if (quote >= 0) {
+                if (c == escape) ++ i;
+                else if (c == quote) quote = -1;
+                continue;
+            }
+
+            if (quotes.test(c))
+                quote = c;
+            else if (open.test(c))
+                ++ depth;
+            else if (close.test(c) && -- depth < 0)
+                break;
+
+            if (depth != 0 || !boundaries.test(c) || i + 1 < next)
+                continue;
+
+            int split = i;
+            if (after) {
+                split = i + 1;
+                while (split < to && Character.isWhitespace(input.char_at(split)))
+                    ++ split;
+                if (split == to)
+                    break;
+                i = split - 1;
+            }
+
+            if (split >= next) {
+                splits.add(split);
+                next = split + chunk_size;
+            }
+        }
+
+        int[] out = new int[splits.size()];
+        for (int i = 0; i < out.length; ++i)
+            out[i] = splits.get(i);
+        return out;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
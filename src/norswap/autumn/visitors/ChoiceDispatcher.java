@@ -0,0 +1,108 @@
+package norswap.autumn.visitors;
+
+import norswap.autumn.Autumn;
+import norswap.autumn.Parser;
+import norswap.autumn.ParserWalker;
+import norswap.autumn.parsers.Choice;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * An optimization pass that installs dispatch tables (see {@link Choice#set_dispatch}) on all the
+ * {@link Choice} parsers reachable through a parser, using {@link VisitorFirstChars} to determine
+ * which alternatives may match a given character. Run the pass by calling {@link
+ * #dispatch(Parser)}, or {@link Autumn#dispatch_choices(Parser)}.
+ *
+ * <p>For each character, the table lists the nullable alternatives and the alternatives that may
+ * consume that character first, in their original order. The other alternatives are bound to fail
+ * without consuming any input and without side-effects, so ordered choice semantics are preserved.
+ * The furthest error position is not affected, but the error messages and call stacks reported on
+ * failure might be, as the failures of the skipped alternatives are not recorded.
+ *
+ * <p>Tables are only installed if they let the choice skip some alternatives. Choices are
+ * modified in place: if you want to keep the original grammar intact, make a copy first using
+ * {@link CopyVisitor}. This pass must be run before compiling the parser with {@link
+ * Autumn#compile(Parser)}.
+ *
+ * <p>Custom parsers are supported, provided that {@link VisitorNullable}, {@link
+ * VisitorFirstParsers} and {@link VisitorFirstChars} are extended to handle them (otherwise, the
+ * pass makes pessimistic assumptions).
+ */
+public final class ChoiceDispatcher extends ParserWalker
+{
+    // ---------------------------------------------------------------------------------------------
+
+    public final VisitorFirstChars first_chars_visitor;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Creates a new dispatcher using fresh visitors.
+     */
+    public ChoiceDispatcher() {
+        this(new VisitorFirstChars(new VisitorFirstParsers(new VisitorNullable())));
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Creates a new dispatcher using the given visitor.
+     */
+    public ChoiceDispatcher (VisitorFirstChars first_chars_visitor) {
+        this.first_chars_visitor = first_chars_visitor;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Installs dispatch tables on all choices reachable through {@code parser}.
+     */
+    public void dispatch (Parser parser) {
+        walk(parser);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override protected void work (Parser parser, State state)
+    {
+        if (state == State.BEFORE && parser instanceof Choice)
+            dispatch((Choice) parser);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private void dispatch (Choice choice)
+    {
+        List<Parser> alternatives = choice.children();
+        int size = alternatives.size();
+
+        BitSet[] sets = new BitSet[size];
+        for (int i = 0; i < size; ++i) {
+            Parser alt = alternatives.get(i);
+            sets[i] = first_chars_visitor.nullable(alt)
+                ? null
+                : first_chars_visitor.first_chars(alt);
+        }
+
+        // rows are shared between all characters that select the same alternatives
+        HashMap<BitSet, int[]> rows = new HashMap<>();
+        int[][] table = new int[Choice.NON_ASCII + 1][];
+        boolean skips = false;
+
+        for (int c = 0; c <= Choice.NON_ASCII; ++c)
+        {
+            BitSet selected = new BitSet(size);
+            for (int i = 0; i < size; ++i)
+                if (sets[i] == null || sets[i].get(c))
+                    selected.set(i);
+
+            skips |= selected.cardinality() < size;
+            table[c] = rows.computeIfAbsent(selected, s -> s.stream().toArray());
+        }
+
+        choice.set_dispatch(skips ? table : null);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
@@ -7,6 +7,7 @@ import norswap.autumn.ParserVisitor;
 import norswap.autumn.ParserWalker;
 import norswap.autumn.parsers.*;
 import java.lang.reflect.Method;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.function.Supplier;
@@ -48,9 +49,10 @@ import static norswap.utils.Vanilla.map;
  *
  * <p>The main use case of this visitor is to extend it to perform <b>grammar transformations</b>.
  * Indeed, by overriding the {@code visit} method for a given type of parser, you can register
- * a transformation of the original parser instead of a copy!
+ * a transformation of the original parser instead of a copy! See {@link TrieFusion} for an
+ * example.
  */
-public final class CopyVisitor extends ParserWalker implements ParserVisitor
+public class CopyVisitor extends ParserWalker implements ParserVisitor
 {
     // ---------------------------------------------------------------------------------------------
 
@@ -112,14 +114,25 @@ public final class CopyVisitor extends ParserWalker implements ParserVisitor
 
     // ---------------------------------------------------------------------------------------------
 
+    /**
+     * The parsers currently being walked, from the root.
+     */
+    private final ArrayList<Parser> path = new ArrayList<>();
+
+    // ---------------------------------------------------------------------------------------------
+
     @Override protected void work (Parser parser, State state)
     {
         switch (state) {
+            case BEFORE:
+                path.add(parser);
+                break;
             case RECURSE:
-                // Normally not possible, but let's do our best.
+                // Parsers on the cycle need a copy before the copy of `parser` exists.
                 patch_recursion(parser);
                 break;
             case AFTER:
+                path.remove(path.size() - 1);
                 parser.accept(this);
                 break;
         }
@@ -127,9 +140,24 @@ public final class CopyVisitor extends ParserWalker implements ParserVisitor
 
     // ---------------------------------------------------------------------------------------------
 
+    /**
+     * Whether the recursion on {@code parser} goes through a {@link LazyParser}, as it normally
+     * should.
+     */
+    private boolean lazy_recursion (Parser parser)
+    {
+        for (int i = path.size() - 1; i >= 0; --i) {
+            if (path.get(i) instanceof LazyParser) return true;
+            if (path.get(i) == parser) return false;
+        }
+        return false;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
     private void patch_recursion (Parser parser)
     {
-        if (emit_warnings) {
+        if (emit_warnings && !lazy_recursion(parser)) {
             System.err.println(
                 "Warning: detected recursion during grammar copy. " +
                 "This is weird: recursion normally has to be broken with DSL#lazy " +
@@ -139,7 +167,7 @@ public final class CopyVisitor extends ParserWalker implements ParserVisitor
             try {
                 System.err.println("Recursive parser: " + parser);
             }
-            catch (Exception e) {
+            catch (Exception | StackOverflowError e) {
                 // In case a dumb-dumb has infinite recursion in
                 // his toString() method as well.
             }
@@ -239,6 +267,8 @@ public final class CopyVisitor extends ParserWalker implements ParserVisitor
     @Override public void visit (Fail parser)               { register_copy(parser, parser); }
     @Override public void visit (ObjectPredicate parser)    { register_copy(parser, parser); }
     @Override public void visit (StringMatch parser)        { register_copy(parser, parser); }
+    @Override public void visit (Span parser)               { register_copy(parser, parser); }
+    @Override public void visit (ScanUntil parser)          { register_copy(parser, parser); }
 
     // ---------------------------------------------------------------------------------------------
 
@@ -266,6 +296,13 @@ public final class CopyVisitor extends ParserWalker implements ParserVisitor
             get_copy(parser.around), get_copy(parser.inside)));
     }
 
+    @Override public void visit (SplitRepeat parser)
+    {
+        register_copy(parser, new SplitRepeat(parser.min, get_copy(parser.item),
+            parser.separator == null ? null : get_copy(parser.separator),
+            parser.scanner, parser.chunk_size, parser.executor));
+    }
+
     @Override public void visit (Bounded parser)
     {
         register_copy(parser,
@@ -280,7 +317,9 @@ public final class CopyVisitor extends ParserWalker implements ParserVisitor
 
     @Override public void visit (LazyParser parser)
     {
-        register_copy(parser, new LazyParser(parser::child));
+        // The child has been walked, so its copy is available (or patched up, if recursive).
+        Parser child = get_copy(parser.child());
+        register_copy(parser, new LazyParser(() -> child));
     }
 
     @Override public void visit (LeftExpression parser)
@@ -351,5 +390,11 @@ public final class CopyVisitor extends ParserWalker implements ParserVisitor
             new TokenParser(parser.tokens, get_copy(parser.target)));
     }
 
+    @Override public void visit (TrieMatch parser)
+    {
+        Parser[] whitespace = map(parser.whitespace, witness, ws -> ws == null ? null : get_copy(ws));
+        register_copy(parser, new TrieMatch(parser.strings, whitespace, parser.longest));
+    }
+
     // ---------------------------------------------------------------------------------------------
 }
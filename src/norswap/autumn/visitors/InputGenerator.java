@@ -0,0 +1,932 @@
+package norswap.autumn.visitors;
+
+import norswap.autumn.Autumn;
+import norswap.autumn.ParseOptions;
+import norswap.autumn.Parser;
+import norswap.autumn.ParserVisitor;
+import norswap.autumn.ParserWalker;
+import norswap.autumn.parsers.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Function;
+
+/**
+ * A visitor that generates random inputs for a parser, e.g. to build synthetic benchmark or
+ * regression corpora of a chosen size from a seed (see {@link #corpus(Parser, long, int)}).
+ *
+ * <p>Inputs are generated by walking the parser graph from the root: choices pick a random
+ * alternative (see {@link #weights(Parser, double...)}), repetitions pick a random number of
+ * repetitions between their minimum and their minimum plus a cap (see {@link #max_repeat(int)}),
+ * optionals are present half of the time, and literals and character predicates emit matching
+ * text. Generation is deterministic for a given seed and configuration.
+ *
+ * <p>To guarantee termination, generation switches to a <i>closing</i> mode for any part of the
+ * input where more than {@link #max_depth(int)} occurrences of a parser are nested within one
+ * another, and for the rest of the input once its target size is reached. In closing mode,
+ * choices pick the alternative with the shallowest derivation, repetitions are repeated their
+ * minimum number of times and optionals are absent.
+ *
+ * <p>Negative and positive lookaheads ({@link Not}, {@link Lookahead}) are honored when followed
+ * by a sibling in a {@link Sequence}: the sibling is regenerated (a bounded number of times) until
+ * the lookahead holds. {@link ContextPredicate} parsers are ignored. Because of this, and because
+ * of the semantics of PEG (ordered choice, greedy repetition), a generated input is not always
+ * matched by the parser. {@link #corpus} checks every input by parsing it and discards those that
+ * fail.
+ *
+ * <p>Lexical rules are usually better generated from a list of plausible values than from the
+ * grammar (e.g. identifiers that are not keywords, or numerals without leading zeroes): use {@link
+ * #override(Parser, Function)} for this.
+ *
+ * <p>Parsers that match lists of objects ({@link ObjectPredicate}) and opaque primitives ({@link
+ * AbstractPrimitive}) cannot be generated, unless overriden. To support custom parsers, provide an
+ * appropriate overload using {@link ParserVisitor#extend}. Also see {@link ParserVisitor}'s
+ * Javadoc. Within the supplied overloads, append to {@link #out} directly, or call {@link
+ * #generate(Parser)} for sub-parsers, drawing random numbers from {@link #random}. For the purpose
+ * of closing mode, custom parsers are assumed to generate all of their children.
+ */
+public final class InputGenerator implements ParserVisitor
+{
+    // ---------------------------------------------------------------------------------------------
+
+    private static HashOverloads overloads = new HashOverloads(InputGenerator.class);
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public Overloads overloads() {
+        return overloads;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /** Default value for {@link #max_depth(int)}. */
+    public static final int DEFAULT_MAX_DEPTH = 8;
+
+    /** Default value for {@link #max_repeat(int)}. */
+    public static final int DEFAULT_MAX_REPEAT = 4;
+
+    /** Number of times the sibling of a lookahead is regenerated before giving up. */
+    private static final int MAX_RETRIES = 32;
+
+    /** Number of consecutive inputs that may fail to parse before {@link #corpus} gives up. */
+    private static final int MAX_REJECTS = 100;
+
+    /** Height of parsers that cannot be generated. */
+    private static final int INFINITE = Integer.MAX_VALUE / 2;
+
+    private static final ParseOptions VALIDATION = ParseOptions.well_formedness_check(false).get();
+
+    // ---------------------------------------------------------------------------------------------
+
+    /** The source of randomness for the generation, seeded at construction. */
+    public final Random random;
+
+    /** The input being generated. */
+    public final StringBuilder out = new StringBuilder();
+
+    // ---------------------------------------------------------------------------------------------
+
+    private int max_depth = DEFAULT_MAX_DEPTH;
+    private int max_repeat = DEFAULT_MAX_REPEAT;
+    private final HashMap<Parser, double[]> weights = new HashMap<>();
+    private final HashMap<Parser, Integer> repeat_caps = new HashMap<>();
+    private final HashMap<Parser, Integer> repeat_mins = new HashMap<>();
+    private final HashMap<Parser, Function<Random, String>> overrides = new HashMap<>();
+
+    // ---------------------------------------------------------------------------------------------
+
+    /** Characters that may be generated for each character predicate. */
+    private final HashMap<Parser, int[]> pools = new HashMap<>();
+
+    /** See {@link Heights}. */
+    private final Heights heights = new Heights(this);
+
+    /** Number of ongoing generations of each parser (a single-element array per parser). */
+    private final HashMap<Parser, int[]> depths = new HashMap<>();
+
+    /** Size at which the current input switches to closing mode. */
+    private int target;
+
+    /** Whether the current parser is nested too deeply. */
+    private boolean closing;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Creates a new generator using the given random seed.
+     */
+    public InputGenerator (long seed) {
+        this.random = new Random(seed);
+    }
+
+    // =============================================================================================
+    // Configuration
+    // =============================================================================================
+
+    /**
+     * Sets the number of occurrences of a parser that may be nested within one another (counting
+     * the outermost one) before the nested occurrences are generated in closing mode (see the class
+     * documentation). Must be positive.
+     */
+    public InputGenerator max_depth (int max_depth)
+    {
+        if (max_depth <= 0)
+            throw new IllegalArgumentException("non-positive depth: " + max_depth);
+        this.max_depth = max_depth;
+        return this;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Sets the maximum number of repetitions beyond the minimum generated for repetitions that do
+     * not have their own cap. Must be positive.
+     */
+    public InputGenerator max_repeat (int max_repeat)
+    {
+        if (max_repeat < 0)
+            throw new IllegalArgumentException("negative repeat cap: " + max_repeat);
+        this.max_repeat = max_repeat;
+        return this;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Sets the maximum number of repetitions beyond the minimum generated for {@code parser}, which
+     * can be a {@link Repeat}, {@link Around}, {@link Span} or {@link SplitRepeat} parser (number
+     * of items), a {@link LeftFold}, {@link RightFold}, {@link LeftExpression} or {@link
+     * RightExpression} parser (number of operators), or a {@link ScanUntil} parser (number of
+     * characters). Must be positive.
+     */
+    public InputGenerator max_repeat (Parser parser, int max_repeat)
+    {
+        if (max_repeat < 0)
+            throw new IllegalArgumentException("negative repeat cap: " + max_repeat);
+        repeat_caps.put(parser, max_repeat);
+        return this;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Sets the minimum number of repetitions generated for {@code parser} (see {@link
+     * #max_repeat(Parser, int)}) outside of closing mode. This is useful when the grammar accepts
+     * fewer repetitions than can be parsed unambiguously, e.g. a list that may be empty but is
+     * then followed by a similar item. Must be positive.
+     */
+    public InputGenerator min_repeat (Parser parser, int min_repeat)
+    {
+        if (min_repeat < 0)
+            throw new IllegalArgumentException("negative repeat minimum: " + min_repeat);
+        repeat_mins.put(parser, min_repeat);
+        return this;
+    }
+
+    /**
+     * Sets the relative weights of the alternatives of {@code parser}. The weights must be
+     * positive, and there must be exactly one per alternative:
+     *
+     * <ul>
+     * <li>{@link Choice}, {@link Longest} and {@link AbstractChoice}: the children.</li>
+     * <li>{@link TokenChoice}: the targets.</li>
+     * <li>{@link TrieMatch}: the strings.</li>
+     * <li>{@link Optional}: absent, then present.</li>
+     * <li>{@link LeftExpression}: the infixes, then the suffixes.</li>
+     * <li>{@link RightExpression}: the infixes, then the prefixes.</li>
+     * </ul>
+     *
+     * By default, all alternatives have the same weight.
+     */
+    public InputGenerator weights (Parser parser, double... weights)
+    {
+        for (double weight: weights)
+            if (!(weight >= 0))
+                throw new IllegalArgumentException("invalid weight: " + weight);
+        this.weights.put(parser, weights.clone());
+        return this;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Generates the text returned by {@code generator} for {@code parser} instead of walking it.
+     * The generated text should be matched by the parser.
+     */
+    public InputGenerator override (Parser parser, Function<Random, String> generator)
+    {
+        overrides.put(parser, generator);
+        return this;
+    }
+
+    // =============================================================================================
+    // Generation
+    // =============================================================================================
+
+    /**
+     * Returns a random input for {@code root}. The generation switches to closing mode (see the
+     * class documentation) once {@code size} characters have been generated.
+     *
+     * <p>The input is not checked, and may not be matched by {@code root}.
+     */
+    public String generate (Parser root, int size)
+    {
+        heights.compute(root);
+        out.setLength(0);
+        target = size;
+        closing = false;
+        generate(root);
+        return out.toString();
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns a list of random inputs for {@code root}, whose total size is at least {@code size}.
+     * Each input is generated with target size {@code input_size} (see {@link #generate(Parser,
+     * int)}), then parsed with {@code root}. Inputs that do not fully match are discarded.
+     *
+     * @throws IllegalStateException if too many consecutive inputs fail to parse.
+     */
+    public List<String> corpus (Parser root, long size, int input_size)
+    {
+        List<String> inputs = new ArrayList<>();
+        long total = 0;
+        int rejects = 0;
+
+        while (total < size)
+        {
+            String input = generate(root, input_size);
+
+            if (!Autumn.parse(root, input, VALIDATION).full_match) {
+                if (++ rejects == MAX_REJECTS)
+                    throw new IllegalStateException(
+                        MAX_REJECTS + " consecutive generated inputs failed to parse with " + root);
+                continue;
+            }
+
+            rejects = 0;
+            inputs.add(input);
+            total += input.length();
+        }
+
+        return inputs;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Appends a random input for {@code parser} to {@link #out}.
+     */
+    public void generate (Parser parser)
+    {
+        Function<Random, String> override = overrides.get(parser);
+        if (override != null) {
+            out.append(override.apply(random));
+            return;
+        }
+
+        int[] depth = depths.computeIfAbsent(parser, p -> new int[1]);
+
+        boolean closing0 = closing;
+        if (++ depth[0] > max_depth)
+            closing = true;
+
+        try {
+            parser.accept(this);
+        } finally {
+            -- depth[0];
+            closing = closing0;
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Whether the generation is in closing mode (see the class documentation).
+     */
+    public boolean closing() {
+        return closing || out.length() >= target;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns a random number of repetitions for {@code parser}, which must be repeated at least
+     * {@code min} times, or exactly {@code min} times if {@code exact} is true (see {@link
+     * #min_repeat(Parser, int)} and {@link #max_repeat(Parser, int)}).
+     */
+    public int count (Parser parser, int min, boolean exact)
+    {
+        if (exact || closing()) return min;
+        min = Math.max(min, repeat_mins.getOrDefault(parser, 0));
+        return min + random.nextInt(repeat_caps.getOrDefault(parser, max_repeat) + 1);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the index of a random alternative of {@code parser}, given the list of the parsers
+     * that make up each alternative. In closing mode, returns the alternative with the lowest
+     * height (the maximum height of its parsers).
+     */
+    private int choose (Parser parser, Parser[][] alternatives)
+    {
+        int[] alt_heights = new int[alternatives.length];
+        for (int i = 0; i < alternatives.length; ++i)
+            for (Parser p: alternatives[i])
+                alt_heights[i] = Math.max(alt_heights[i], p == null ? 0 : heights.get(p));
+
+        double[] weights = this.weights.get(parser);
+        if (weights != null && weights.length != alternatives.length)
+            throw new IllegalArgumentException("expected " + alternatives.length
+                + " weights but got " + weights.length + " for " + parser);
+
+        if (!closing()) {
+            double total = 0;
+            for (int i = 0; i < alternatives.length; ++i)
+                if (alt_heights[i] < INFINITE)
+                    total += weights == null ? 1 : weights[i];
+
+            double pick = random.nextDouble() * total;
+            for (int i = 0; i < alternatives.length; ++i) {
+                if (alt_heights[i] >= INFINITE) continue;
+                pick -= weights == null ? 1 : weights[i];
+                if (pick < 0) return i;
+            }
+            // zero total weight: fall through to closing mode choice
+        }
+
+        int best = 0;
+        for (int i = 1; i < alternatives.length; ++i)
+            if (alt_heights[i] < alt_heights[best])
+                best = i;
+
+        if (alt_heights[best] >= INFINITE)
+            throw new IllegalStateException("cannot generate any alternative of " + parser);
+
+        return best;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the index of a random child of {@code parser} (see {@link #choose(Parser,
+     * Parser[][])}).
+     */
+    private int choose (Parser parser, List<Parser> children)
+    {
+        Parser[][] alternatives = new Parser[children.size()][];
+        for (int i = 0; i < alternatives.length; ++i)
+            alternatives[i] = new Parser[] { children.get(i) };
+        return choose(parser, alternatives);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Generates {@code count} repetitions of {@code item}, separated by {@code separator} if
+     * non-null, and followed by an optional trailing separator if {@code trailing}. Repetitions
+     * beyond {@code min} are dropped when the generation enters closing mode.
+     */
+    private void repeat (int count, int min, Parser item, Parser separator, boolean trailing)
+    {
+        for (int i = 0; i < count; ++i) {
+            if (i >= min && closing()) return;
+            if (i > 0 && separator != null) generate(separator);
+            generate(item);
+        }
+
+        if (trailing && count > 0 && !closing() && random.nextBoolean())
+            generate(separator);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Whether {@code parser} matches a prefix of the input generated from {@code pos}.
+     */
+    private boolean matches (Parser parser, int pos)
+    {
+        if (parser instanceof CharPredicate)
+            return pos < out.length()
+                && ((CharPredicate) parser).predicate.test(out.codePointAt(pos));
+
+        if (parser instanceof StringMatch && ((StringMatch) parser).whitespace == null) {
+            String string = ((StringMatch) parser).string;
+            if (out.length() - pos < string.length()) return false;
+            for (int i = 0; i < string.length(); ++i)
+                if (out.charAt(pos + i) != string.charAt(i)) return false;
+            return true;
+        }
+
+        return Autumn.parse(parser, out.substring(pos), VALIDATION).success;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the characters that can be generated for {@code parser}: the printable ASCII
+     * characters, tab and line breaks that it matches, or, if there are none, up to 256 other
+     * matching characters.
+     */
+    private int[] pool (CharPredicate parser)
+    {
+        return pools.computeIfAbsent(parser, k -> {
+            int[] pool = new int[256];
+            int size = 0;
+            for (int c = ' '; c <= '~'; ++c)
+                if (parser.predicate.test(c)) pool[size++] = c;
+            for (int c: new int[] { '\t', '\n', '\r' })
+                if (parser.predicate.test(c)) pool[size++] = c;
+            if (size == 0)
+                for (int c = 0; c <= Character.MAX_CODE_POINT && size < pool.length; ++c)
+                    if ((c < Character.MIN_SURROGATE || c > Character.MAX_SURROGATE)
+                            && parser.predicate.test(c))
+                        pool[size++] = c;
+            return Arrays.copyOf(pool, size);
+        });
+    }
+
+    // =============================================================================================
+    // Overloads
+    // =============================================================================================
+
+    @Override public void default_action (Parser parser) {
+        throw new UnsupportedOperationException(
+            "no input generator overload for " + parser.getClass().getName()
+            + ", use InputGenerator#override or ParserVisitor#extend: " + parser);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public void visit (AbstractPrimitive parser)
+    {
+        if (!parser.nullable)
+            throw new UnsupportedOperationException(
+                "cannot generate input for an opaque primitive, use InputGenerator#override: "
+                + parser);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public void visit (ObjectPredicate parser) {
+        throw new UnsupportedOperationException(
+            "cannot generate input for an object predicate: " + parser);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public void visit (Fail parser) {
+        throw new IllegalStateException("cannot generate input for " + parser);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public void visit (CharPredicate parser)
+    {
+        int[] pool = pool(parser);
+        if (pool.length == 0)
+            throw new IllegalStateException("no character matches " + parser);
+        out.appendCodePoint(pool[random.nextInt(pool.length)]);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public void visit (StringMatch parser)
+    {
+        out.append(parser.string);
+        if (parser.whitespace != null)
+            generate(parser.whitespace);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public void visit (TrieMatch parser)
+    {
+        Parser[][] alternatives = new Parser[parser.strings.length][];
+        for (int i = 0; i < alternatives.length; ++i)
+            alternatives[i] = new Parser[] { parser.whitespace[i] };
+
+        int i = choose(parser, alternatives);
+        out.append(parser.strings[i]);
+        if (parser.whitespace[i] != null)
+            generate(parser.whitespace[i]);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public void visit (ScanUntil parser)
+    {
+        int pos = out.length();
+        int count = count(parser, 0, false);
+
+        for (int i = 0; i < count; ++i) {
+            char c = (char) (random.nextInt(8) == 0 ? ' ' : 'a' + random.nextInt(26));
+            if (parser.stop == null || !parser.stop.predicate.test(c))
+                out.append(c);
+        }
+
+        if (parser.terminator != null) {
+            int index = out.indexOf(parser.terminator, pos);
+            if (index >= 0) out.setLength(index);
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public void visit (Sequence parser)
+    {
+        List<Parser> children = parser.children();
+        int predicates = 0;
+
+        for (int i = 0; i < children.size(); ++i)
+        {
+            Parser child = children.get(i);
+
+            if (child instanceof Not || child instanceof Lookahead) {
+                ++ predicates;
+                continue;
+            }
+
+            int pos = out.length();
+            for (int retries = 0; ; ++retries) {
+                generate(child);
+                if (retries == MAX_RETRIES || holds(children, i - predicates, i, pos)) break;
+                out.setLength(pos);
+            }
+            predicates = 0;
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Whether the lookaheads {@code children[start:end]} hold for the input generated from
+     * {@code pos}.
+     */
+    private boolean holds (List<Parser> children, int start, int end, int pos)
+    {
+        for (int i = start; i < end; ++i) {
+            Parser child = children.get(i);
+            boolean not = child instanceof Not;
+            Parser lookahead = not ? ((Not) child).child : ((Lookahead) child).child;
+            if (matches(lookahead, pos) == not) return false;
+        }
+        return true;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public void visit (Choice parser) {
+        generate(parser.children().get(choose(parser, parser.children())));
+    }
+
+    @Override public void visit (Longest parser) {
+        generate(parser.children().get(choose(parser, parser.children())));
+    }
+
+    @Override public void visit (AbstractChoice parser)
+    {
+        List<Parser> children = new ArrayList<>();
+        parser.children().forEach(children::add);
+        generate(children.get(choose(parser, children)));
+    }
+
+    @Override public void visit (TokenChoice parser) {
+        generate(parser.targets[choose(parser, Arrays.asList(parser.targets))]);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public void visit (Optional parser)
+    {
+        Parser[][] alternatives = { {}, { parser.child } };
+        if (choose(parser, alternatives) == 1)
+            generate(parser.child);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public void visit (Repeat parser) {
+        repeat(count(parser, parser.min, parser.exact), parser.min, parser.child, null, false);
+    }
+
+    @Override public void visit (Around parser) {
+        repeat(count(parser, parser.min, parser.exact), parser.min,
+            parser.around, parser.inside, parser.trailing);
+    }
+
+    @Override public void visit (Span parser) {
+        repeat(count(parser, parser.min, parser.exact), parser.min, parser.element.parser,
+            parser.separator == null ? null : parser.separator.parser, parser.trailing);
+    }
+
+    @Override public void visit (SplitRepeat parser) {
+        repeat(count(parser, parser.min, false), parser.min,
+            parser.item, parser.separator, false);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public void visit (LeftFold parser)
+    {
+        generate(parser.left);
+        int min = parser.operator_required ? 1 : 0;
+        int count = count(parser, min, false);
+        for (int i = 0; i < count && (i < min || !closing()); ++i) {
+            generate(parser.operator);
+            generate(parser.right);
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public void visit (RightFold parser)
+    {
+        int min = parser.operator_required ? 1 : 0;
+        int count = count(parser, min, false);
+        for (int i = 0; i < count && (i < min || !closing()); ++i) {
+            generate(parser.left);
+            generate(parser.operator);
+        }
+        generate(parser.right);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public void visit (LeftExpression parser)
+    {
+        Parser[][] operators = new Parser[parser.infixes.length + parser.suffixes.length][];
+        for (int i = 0; i < parser.infixes.length; ++i)
+            operators[i] = new Parser[] { parser.infixes[i], parser.right };
+        for (int i = 0; i < parser.suffixes.length; ++i)
+            operators[parser.infixes.length + i] = new Parser[] { parser.suffixes[i] };
+
+        generate(parser.left);
+        int min = parser.operator_required ? 1 : 0;
+        int count = operators.length == 0 ? 0 : count(parser, min, false);
+        for (int i = 0; i < count && (i < min || !closing()); ++i)
+            for (Parser p: operators[choose(parser, operators)])
+                generate(p);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public void visit (RightExpression parser)
+    {
+        Parser[][] operators = new Parser[parser.infixes.length + parser.prefixes.length][];
+        for (int i = 0; i < parser.infixes.length; ++i)
+            operators[i] = new Parser[] { parser.left, parser.infixes[i] };
+        for (int i = 0; i < parser.prefixes.length; ++i)
+            operators[parser.infixes.length + i] = new Parser[] { parser.prefixes[i] };
+
+        int min = parser.operator_required ? 1 : 0;
+        int count = operators.length == 0 ? 0 : count(parser, min, false);
+        for (int i = 0; i < count && (i < min || !closing()); ++i)
+            for (Parser p: operators[choose(parser, operators)])
+                generate(p);
+        generate(parser.right);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public void visit (AbstractForwarding parser) { generate(parser.forwardee); }
+    @Override public void visit (AbstractWrapper parser)    { generate(parser.child); }
+    @Override public void visit (Bounded parser)            { generate(parser.fine); }
+    @Override public void visit (Collect parser)            { generate(parser.child); }
+    @Override public void visit (GuardedRecursion parser)   { generate(parser.child); }
+    @Override public void visit (LazyParser parser)         { generate(parser.child()); }
+    @Override public void visit (LeftRecursive parser)      { generate(parser.child); }
+    @Override public void visit (Memo parser)               { generate(parser.child); }
+    @Override public void visit (TokenParser parser)        { generate(parser.target); }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public void visit (ContextPredicate parser) {
+        // ignored
+    }
+
+    @Override public void visit (Empty parser) {
+        // empty
+    }
+
+    @Override public void visit (Lookahead parser) {
+        // generates nothing, see visit(Sequence)
+    }
+
+    @Override public void visit (Not parser) {
+        // generates nothing, see visit(Sequence)
+    }
+
+    // =============================================================================================
+
+    /**
+     * Computes the height of parsers: the minimum depth of the parser tree generated for a parser
+     * in closing mode, counting only the parsers that generate sub-parsers. Choosing the
+     * alternatives of lowest height in closing mode ensures termination, as heights strictly
+     * decrease from parent to child.
+     *
+     * <p>Overriden parsers and parsers that do not generate sub-parsers have height 0, parsers
+     * that cannot be generated have an infinite height.
+     *
+     * <p>Like {@link VisitorFirstChars}, the heights of all the parsers reachable from a parser are
+     * computed together, by iterating until a fixed point is reached.
+     */
+    private static final class Heights extends ParserWalker implements ParserVisitor
+    {
+        private static HashOverloads overloads = new HashOverloads(Heights.class);
+
+        @Override public Overloads overloads() {
+            return overloads;
+        }
+
+        private final InputGenerator generator;
+        private final HashMap<Parser, Integer> heights = new HashMap<>();
+        private final ArrayList<Parser> pending = new ArrayList<>();
+
+        /** The height computed for the parser currently being visited. */
+        private int height;
+
+        Heights (InputGenerator generator) {
+            this.generator = generator;
+        }
+
+        @Override protected void work (Parser parser, State state) {
+            if (state == State.AFTER)
+                pending.add(parser);
+        }
+
+        void compute (Parser root)
+        {
+            if (visited(root)) return;
+            walk(root);
+
+            for (Parser parser: pending)
+                heights.put(parser, INFINITE);
+
+            boolean changed = true;
+            while (changed) {
+                changed = false;
+                for (Parser parser: pending) {
+                    height = 0;
+                    if (!generator.overrides.containsKey(parser))
+                        parser.accept(this);
+                    if (height < heights.get(parser)) {
+                        heights.put(parser, height);
+                        changed = true;
+                    }
+                }
+            }
+
+            pending.clear();
+        }
+
+        int get (Parser parser)
+        {
+            if (generator.overrides.containsKey(parser)) return 0;
+            Integer height = heights.get(parser);
+            if (height == null) { // not reachable through children(), unexpected
+                compute(parser);
+                height = heights.get(parser);
+            }
+            return height;
+        }
+
+        /** Sets the height to one more than the highest of {@code parsers} (ignoring nulls). */
+        private void all (Parser... parsers)
+        {
+            int max = 0;
+            for (Parser parser: parsers)
+                if (parser != null) max = Math.max(max, get(parser));
+            height = max >= INFINITE ? INFINITE : max + 1;
+        }
+
+        /** Sets the height to one more than the lowest of {@code parsers}. */
+        private void any (Iterable<Parser> parsers)
+        {
+            int min = INFINITE;
+            for (Parser parser: parsers)
+                min = Math.min(min, get(parser));
+            height = min >= INFINITE ? INFINITE : min + 1;
+        }
+
+        /** Sets the height for a repetition of {@code item}, separated by {@code separator}. */
+        private void repeat (int min, Parser item, Parser separator)
+        {
+            if (min == 0) height = 1;
+            else if (min == 1) all(item);
+            else all(item, separator);
+        }
+
+        @Override public void default_action (Parser parser)
+        {
+            List<Parser> children = new ArrayList<>();
+            parser.children().forEach(children::add);
+            all(children.toArray(new Parser[0]));
+        }
+
+        @Override public void visit (AbstractPrimitive parser) {
+            height = parser.nullable ? 0 : INFINITE;
+        }
+
+        @Override public void visit (ObjectPredicate parser) { height = INFINITE; }
+        @Override public void visit (Fail parser)            { height = INFINITE; }
+
+        @Override public void visit (CharPredicate parser) {
+            height = generator.pool(parser).length == 0 ? INFINITE : 0;
+        }
+
+        @Override public void visit (StringMatch parser) {
+            if (parser.whitespace == null) height = 0; else all(parser.whitespace);
+        }
+
+        @Override public void visit (TrieMatch parser)
+        {
+            int min = INFINITE;
+            for (Parser whitespace: parser.whitespace)
+                min = Math.min(min, whitespace == null ? -1 : get(whitespace));
+            height = min >= INFINITE ? INFINITE : min + 1;
+        }
+
+        @Override public void visit (Sequence parser)         { default_action(parser); }
+        @Override public void visit (Choice parser)           { any(parser.children()); }
+        @Override public void visit (Longest parser)          { any(parser.children()); }
+        @Override public void visit (AbstractChoice parser)   { any(parser.children()); }
+        @Override public void visit (TokenChoice parser)      { any(Arrays.asList(parser.targets)); }
+        @Override public void visit (Optional parser)         { height = 1; }
+
+        @Override public void visit (Repeat parser) {
+            repeat(parser.min, parser.child, null);
+        }
+
+        @Override public void visit (Around parser) {
+            repeat(parser.min, parser.around, parser.inside);
+        }
+
+        @Override public void visit (Span parser) {
+            repeat(parser.min, parser.element.parser,
+                parser.separator == null ? null : parser.separator.parser);
+        }
+
+        @Override public void visit (SplitRepeat parser) {
+            repeat(parser.min, parser.item, parser.separator);
+        }
+
+        @Override public void visit (LeftFold parser)
+        {
+            if (parser.operator_required) all(parser.left, parser.operator, parser.right);
+            else all(parser.left);
+        }
+
+        @Override public void visit (RightFold parser)
+        {
+            if (parser.operator_required) all(parser.left, parser.operator, parser.right);
+            else all(parser.right);
+        }
+
+        @Override public void visit (LeftExpression parser)
+        {
+            if (!parser.operator_required) { all(parser.left); return; }
+            int min = INFINITE;
+            for (Parser infix: parser.infixes)
+                min = Math.min(min, Math.max(get(infix), get(parser.right)));
+            for (Parser suffix: parser.suffixes)
+                min = Math.min(min, get(suffix));
+            int left = get(parser.left);
+            height = Math.max(min, left) >= INFINITE ? INFINITE : Math.max(min, left) + 1;
+        }
+
+        @Override public void visit (RightExpression parser)
+        {
+            if (!parser.operator_required) { all(parser.right); return; }
+            int min = INFINITE;
+            for (Parser infix: parser.infixes)
+                min = Math.min(min, Math.max(get(infix), get(parser.left)));
+            for (Parser prefix: parser.prefixes)
+                min = Math.min(min, get(prefix));
+            int right = get(parser.right);
+            height = Math.max(min, right) >= INFINITE ? INFINITE : Math.max(min, right) + 1;
+        }
+
+        @Override public void visit (AbstractForwarding parser) { all(parser.forwardee); }
+        @Override public void visit (AbstractWrapper parser)    { all(parser.child); }
+        @Override public void visit (Bounded parser)            { all(parser.fine); }
+        @Override public void visit (Collect parser)            { all(parser.child); }
+        @Override public void visit (GuardedRecursion parser)   { all(parser.child); }
+        @Override public void visit (LazyParser parser)         { all(parser.child()); }
+        @Override public void visit (LeftRecursive parser)      { all(parser.child); }
+        @Override public void visit (Memo parser)               { all(parser.child); }
+        @Override public void visit (TokenParser parser)        { all(parser.target); }
+
+        @Override public void visit (ContextPredicate parser)   { height = 0; }
+        @Override public void visit (Empty parser)              { height = 0; }
+        @Override public void visit (Lookahead parser)          { height = 0; }
+        @Override public void visit (Not parser)                { height = 0; }
+        @Override public void visit (ScanUntil parser)          { height = 0; }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
@@ -0,0 +1,71 @@
+package norswap.autumn.visitors;
+
+import norswap.autumn.Parser;
+import norswap.autumn.parsers.Around;
+import norswap.autumn.parsers.CharPredicate;
+import norswap.autumn.parsers.Repeat;
+import norswap.autumn.parsers.Span;
+import norswap.autumn.parsers.Span.Element;
+
+/**
+ * A grammar transformation that copies a parser graph (see {@link CopyVisitor}), fusing
+ * repetitions of single characters into {@link Span} parsers, which scan the input in a single
+ * loop.
+ *
+ * <p>A {@link Repeat} is fused if its child is a {@link CharPredicate}, or a sequence of a negated
+ * literal without whitespace followed by a {@link CharPredicate} (e.g. {@code
+ * seq(not(str("*&#47;")), any)}). An {@link Around} is fused if both its children are of this form.
+ *
+ * <p>The fused parsers report the same error positions as the original parsers. Parsers with
+ * {@link Parser#exclude_errors} set on the repeated elements are not fused.
+ *
+ * <p>Use {@link #fuse(Parser)} to apply the transformation. The caveats of {@link CopyVisitor}
+ * apply.
+ */
+public final class SpanFusion extends CopyVisitor
+{
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns a copy of {@code parser} where eligible repetitions have been fused.
+     */
+    public static Parser fuse (Parser parser) {
+        return new SpanFusion().get_copy(parser);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private void register_span (Parser parser, Span span)
+    {
+        span.exclude_errors = parser.exclude_errors;
+        if (parser.rule() != null)
+            span.set_rule(parser.rule());
+        register_copy(parser, span);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public void visit (Repeat parser)
+    {
+        Element element = Element.of(parser.child);
+        if (element != null)
+            register_span(parser, new Span(element, null, parser.min, parser.exact, false));
+        else
+            super.visit(parser);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public void visit (Around parser)
+    {
+        Element element = Element.of(parser.around);
+        Element separator = Element.of(parser.inside);
+        if (element != null && separator != null)
+            register_span(parser,
+                new Span(element, separator, parser.min, parser.exact, parser.trailing));
+        else
+            super.visit(parser);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
@@ -0,0 +1,100 @@
+package norswap.autumn.visitors;
+
+import norswap.autumn.Parser;
+import norswap.autumn.parsers.Choice;
+import norswap.autumn.parsers.Longest;
+import norswap.autumn.parsers.StringMatch;
+import norswap.autumn.parsers.TrieMatch;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A grammar transformation that copies a parser graph (see {@link CopyVisitor}), fusing choices
+ * between literals into {@link TrieMatch} parsers, which read the input only once.
+ *
+ * <p>Within a {@link Choice}, each run of at least two consecutive {@link StringMatch} alternatives
+ * is replaced by a single {@link TrieMatch} alternative (ordered choice is associative, so this
+ * doesn't change the semantics). If all alternatives are fused, the choice is replaced by the trie
+ * parser.
+ *
+ * <p>A {@link Longest} whose alternatives are all {@link StringMatch} without whitespace is also
+ * replaced by a {@link TrieMatch} in longest-match mode.
+ *
+ * <p>Use {@link #fuse(Parser)} to apply the transformation. The caveats of {@link CopyVisitor}
+ * apply.
+ */
+public final class TrieFusion extends CopyVisitor
+{
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns a copy of {@code parser} where eligible choices of literals have been fused.
+     */
+    public static Parser fuse (Parser parser) {
+        return new TrieFusion().get_copy(parser);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private TrieMatch trie (List<Parser> matches, boolean longest)
+    {
+        String[] strings = new String[matches.size()];
+        Parser[] whitespace = new Parser[matches.size()];
+        for (int i = 0; i < strings.length; ++i) {
+            StringMatch match = (StringMatch) matches.get(i);
+            strings[i] = match.string;
+            whitespace[i] = match.whitespace == null ? null : get_copy(match.whitespace);
+        }
+        return new TrieMatch(strings, whitespace, longest);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public void visit (Choice parser)
+    {
+        List<Parser> children = parser.children();
+        ArrayList<Parser> alternatives = new ArrayList<>();
+        boolean fused = false;
+
+        for (int i = 0; i < children.size(); )
+        {
+            int j = i;
+            while (j < children.size() && children.get(j) instanceof StringMatch)
+                ++ j;
+
+            if (j - i >= 2) {
+                alternatives.add(trie(children.subList(i, j), false));
+                fused = true;
+                i = j;
+            }
+            else {
+                alternatives.add(get_copy(children.get(i)));
+                ++ i;
+            }
+        }
+
+        if (!fused)
+            super.visit(parser);
+        else if (alternatives.size() == 1)
+            register_copy(parser, alternatives.get(0));
+        else
+            register_copy(parser, new Choice(alternatives.toArray(new Parser[0])));
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public void visit (Longest parser)
+    {
+        List<Parser> children = parser.children();
+
+        boolean eligible = children.size() >= 2 && children.stream().allMatch(it ->
+            it instanceof StringMatch && ((StringMatch) it).whitespace == null);
+
+        if (eligible)
+            register_copy(parser, trie(children, true));
+        else
+            super.visit(parser);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
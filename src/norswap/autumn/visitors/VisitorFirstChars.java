@@ -0,0 +1,287 @@
+package norswap.autumn.visitors;
+
+import norswap.autumn.Parser;
+import norswap.autumn.ParserVisitor;
+import norswap.autumn.ParserWalker;
+import norswap.autumn.parsers.*;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+
+/**
+ * A visitor that determines which characters may be the first character consumed by a parser.
+ *
+ * <p>To get the set of first characters of a parser, call {@link #first_chars(Parser)}. The set is
+ * a {@link BitSet} whose bits 0 to 127 stand for the ASCII characters, and whose bit {@link
+ * #NON_ASCII} stands for all other characters.
+ *
+ * <p>The set only describes what the parser may do when it consumes some input. Nullable parsers
+ * (see {@link VisitorNullable}) may also succeed whatever the next character is.
+ *
+ * <p>The set of a parser is normally the union of the sets of the parsers in its FIRST set (see
+ * {@link VisitorFirstParsers}). Since the FIRST graph may contain cycles (left-recursion), the sets
+ * of all parsers reachable through a parser are computed together, by iterating until a fixed
+ * point is reached. The results are memoized.
+ *
+ * <p>Parsers whose behaviour is opaque (e.g. {@link AbstractPrimitive}) have the full set. This is
+ * also the case for {@link Cut} parsers with a nullable child, since they may commit the parse
+ * without consuming any input.
+ *
+ * <p>To support custom parsers, provide an appropriate overload using {@link
+ * ParserVisitor#extend}. Also see {@link ParserVisitor}'s Javadoc. Within the supplied overloads,
+ * add characters to {@link #chars} directly or using the methods whose name starts with {@code
+ * add}. Custom parsers without overloads have the full set.
+ */
+public final class VisitorFirstChars extends ParserWalker implements ParserVisitor
+{
+    // ---------------------------------------------------------------------------------------------
+
+    private static HashOverloads overloads = new HashOverloads(VisitorFirstChars.class);
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public Overloads overloads() {
+        return overloads;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Index of the bit standing for all characters outside the ASCII range.
+     */
+    public static final int NON_ASCII = Choice.NON_ASCII;
+
+    // ---------------------------------------------------------------------------------------------
+
+    public final VisitorFirstParsers firsts_visitor;
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * The set being computed for the parser currently being visited.
+     */
+    public BitSet chars;
+
+    // ---------------------------------------------------------------------------------------------
+
+    private final HashMap<Parser, BitSet> sets = new HashMap<>();
+
+    // ---------------------------------------------------------------------------------------------
+
+    private final HashMap<Parser, Parser[]> firsts = new HashMap<>();
+
+    // ---------------------------------------------------------------------------------------------
+
+    private final ArrayList<Parser> pending = new ArrayList<>();
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Creates a new instance with the given FIRST set visitor.
+     */
+    public VisitorFirstChars (VisitorFirstParsers firsts_visitor) {
+        this.firsts_visitor = firsts_visitor;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override protected void work (Parser parser, State state)
+    {
+        if (state == State.AFTER)
+            pending.add(parser);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Returns the set of characters that may be the first character consumed by {@code parser}
+     * (see the class documentation). Reuses the previously computed set if available.
+     *
+     * <p>The returned set must not be modified.
+     */
+    public BitSet first_chars (Parser parser)
+    {
+        if (!visited(parser)) {
+            walk(parser);
+            solve();
+        }
+        return sets.get(parser);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Shortcut for {@code firsts_visitor.nullable(parser)}.
+     */
+    public boolean nullable (Parser parser) {
+        return firsts_visitor.nullable(parser);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Computes the sets of the parsers in {@link #pending}, iterating until a fixed point is
+     * reached. Sets only ever grow, so this terminates.
+     */
+    private void solve ()
+    {
+        for (Parser parser: pending)
+            sets.put(parser, new BitSet(NON_ASCII + 1));
+
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (Parser parser: pending) {
+                chars = new BitSet(NON_ASCII + 1);
+                parser.accept(this);
+                if (!chars.equals(sets.get(parser))) {
+                    sets.put(parser, chars);
+                    changed = true;
+                }
+            }
+        }
+
+        pending.clear();
+        chars = null;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Adds the given code point to {@link #chars}.
+     */
+    public void add_char (int c) {
+        chars.set(c < NON_ASCII ? c : NON_ASCII);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Adds all characters to {@link #chars}.
+     */
+    public void add_all () {
+        chars.set(0, NON_ASCII + 1);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    /**
+     * Adds the sets of all parsers in the FIRST set of {@code parser} to {@link #chars}.
+     */
+    public void add_firsts (Parser parser)
+    {
+        Parser[] parsers = firsts.computeIfAbsent(parser,
+            p -> firsts_visitor.firsts(p).toArray(new Parser[0]));
+
+        for (Parser first: parsers) {
+            BitSet set = sets.get(first);
+            if (set == null) { // not reachable through children(), unexpected
+                add_all();
+                return;
+            }
+            chars.or(set);
+        }
+    }
+
+    // =============================================================================================
+
+    @Override public void default_action (Parser parser) {
+        // pessimistic assumption
+        add_all();
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public void visit (CharPredicate parser)
+    {
+        for (int c = 0; c < NON_ASCII; ++c)
+            if (parser.predicate.test(c))
+                chars.set(c);
+        // can't enumerate the other characters of opaque predicates
+        if (parser.char_class == null || parser.char_class.any_at_or_above(NON_ASCII))
+            chars.set(NON_ASCII);
+    }
+
+    @Override public void visit (Span parser)
+    {
+        visit(parser.element.predicate());
+        // a trailing separator may be matched without any element
+        if (parser.min == 0 && parser.trailing)
+            visit(parser.separator.predicate());
+    }
+
+    @Override public void visit (StringMatch parser) {
+        if (parser.codepoints.length > 0)
+            add_char(parser.codepoints[0]);
+    }
+
+    @Override public void visit (TrieMatch parser)
+    {
+        for (String string: parser.strings)
+            if (!string.isEmpty())
+                add_char(string.codePointAt(0));
+        add_firsts(parser);
+    }
+
+    @Override public void visit (ContextPredicate parser) {
+        // empty
+    }
+
+    @Override public void visit (Empty parser) {
+        // empty
+    }
+
+    @Override public void visit (Fail parser) {
+        // empty
+    }
+
+    @Override public void visit (ObjectPredicate parser) {
+        add_all();
+    }
+
+    @Override public void visit (ScanUntil parser) {
+        add_all();
+    }
+
+    @Override public void visit (AbstractPrimitive parser) {
+        add_all();
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public void visit (AbstractWrapper parser)
+    {
+        if (parser instanceof Cut && nullable(parser.child))
+            add_all();
+        else
+            add_firsts(parser);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Override public void visit (AbstractChoice parser)     { add_firsts(parser); }
+    @Override public void visit (AbstractForwarding parser) { add_firsts(parser); }
+    @Override public void visit (Around parser)             { add_firsts(parser); }
+    @Override public void visit (Bounded parser)            { add_firsts(parser); }
+    @Override public void visit (Choice parser)             { add_firsts(parser); }
+    @Override public void visit (Collect parser)            { add_firsts(parser); }
+    @Override public void visit (GuardedRecursion parser)   { add_firsts(parser); }
+    @Override public void visit (LazyParser parser)         { add_firsts(parser); }
+    @Override public void visit (LeftExpression parser)     { add_firsts(parser); }
+    @Override public void visit (LeftFold parser)           { add_firsts(parser); }
+    @Override public void visit (LeftRecursive parser)      { add_firsts(parser); }
+    @Override public void visit (Longest parser)            { add_firsts(parser); }
+    @Override public void visit (Lookahead parser)          { add_firsts(parser); }
+    @Override public void visit (Memo parser)               { add_firsts(parser); }
+    @Override public void visit (Not parser)                { add_firsts(parser); }
+    @Override public void visit (Optional parser)           { add_firsts(parser); }
+    @Override public void visit (Repeat parser)             { add_firsts(parser); }
+    @Override public void visit (SplitRepeat parser)        { add_firsts(parser); }
+    @Override public void visit (RightExpression parser)    { add_firsts(parser); }
+    @Override public void visit (RightFold parser)          { add_firsts(parser); }
+    @Override public void visit (Sequence parser)           { add_firsts(parser); }
+    @Override public void visit (TokenChoice parser)        { add_firsts(parser); }
+    @Override public void visit (TokenParser parser)        { add_firsts(parser); }
+
+    // ---------------------------------------------------------------------------------------------
+}
@@ -140,6 +140,21 @@ public final class VisitorFirstParsers implements ParserVisitor
         // empty
     }
 
+    @Override public void visit (Span parser) {
+        // empty
+    }
+
+    @Override public void visit (ScanUntil parser) {
+        // empty
+    }
+
+    @Override public void visit (TrieMatch parser) {
+        // only the whitespace of the empty literal is invoked at the initial position
+        for (int i = 0; i < parser.strings.length; ++i)
+            if (parser.strings[i].isEmpty() && parser.whitespace[i] != null)
+                firsts.add(parser.whitespace[i]);
+    }
+
     @Override public void visit (AbstractPrimitive parser) {
         // empty
     }
@@ -174,6 +189,14 @@ public final class VisitorFirstParsers implements ParserVisitor
         firsts.add(parser.child);
     }
 
+    @Override public void visit (SplitRepeat parser)
+    {
+        if (parser.separator == null)
+            firsts.add(parser.item);
+        else
+            firsts_add_sequence(list(parser.item, parser.separator));
+    }
+
     @Override public void visit (Memo parser) {
         firsts.add(parser.child);
     }
@@ -4,6 +4,7 @@ import norswap.autumn.Parser;
 import norswap.autumn.ParserVisitor;
 import norswap.autumn.ParserWalker;
 import norswap.autumn.parsers.*;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Set;
 
@@ -247,6 +248,18 @@ public final class VisitorNullable extends ParserWalker implements ParserVisitor
         add_if(parser, parser.string.equals(""));
     }
 
+    @Override public void visit (TrieMatch parser) {
+        add_if(parser, Arrays.asList(parser.strings).contains(""));
+    }
+
+    @Override public void visit (Span parser) {
+        add_if(parser, parser.min == 0);
+    }
+
+    @Override public void visit (ScanUntil parser) {
+        add_if(parser, true);
+    }
+
     // ---------------------------------------------------------------------------------------------
 
     @Override public void visit (AbstractPrimitive parser) {
@@ -271,6 +284,16 @@ public final class VisitorNullable extends ParserWalker implements ParserVisitor
 
     // ---------------------------------------------------------------------------------------------
 
+    @Override public void visit (SplitRepeat parser)
+    {
+        add_if(parser,
+            parser.min == 0
+                || parser.separator != null && parser.min == 1 && nullable(parser.item)
+                || parser.separator != null && nullable(parser.item) && nullable(parser.separator));
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
     @Override public void visit (LeftExpression parser)
     {
         if (!nullable(parser.left))
@@ -113,10 +113,13 @@ public final class VisitorNullableRepetition implements ParserVisitor
     @Override public void visit (Not parser)               { result = false; }
     @Override public void visit (ObjectPredicate parser)   { result = false; }
     @Override public void visit (Optional parser)          { result = false; }
+    @Override public void visit (ScanUntil parser)         { result = false; }
     @Override public void visit (Sequence parser)          { result = false; }
+    @Override public void visit (Span parser)              { result = false; }
     @Override public void visit (StringMatch parser)       { result = false; }
     @Override public void visit (TokenChoice parser)       { result = false; }
     @Override public void visit (TokenParser parser)       { result = false; }
+    @Override public void visit (TrieMatch parser)         { result = false; }
 
     // ---------------------------------------------------------------------------------------------
 
@@ -139,6 +142,14 @@ public final class VisitorNullableRepetition implements ParserVisitor
 
     // ---------------------------------------------------------------------------------------------
 
+    @Override public void visit (SplitRepeat parser)
+    {
+        result = nullable(parser.item)
+            && (parser.separator == null || nullable(parser.separator));
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
     @Override public void visit (LeftExpression parser)
     {
         for (Parser suffix: parser.suffixes)
@@ -1,17 +1,62 @@
+import norswap.autumn.Autumn;
+import norswap.autumn.BatchResult;
 import norswap.autumn.DSL;
+import norswap.autumn.GrammarIndex;
+import norswap.autumn.IncrementalParse;
+import norswap.autumn.LineMap;
+import norswap.autumn.Parse;
+import norswap.autumn.ParseMetrics;
+import norswap.autumn.ParseOptions;
 import norswap.autumn.ParseResult;
+import norswap.autumn.ParseStats;
 import norswap.autumn.ParseState;
+import norswap.autumn.Parser;
+import norswap.autumn.ParserCallFrame;
+import norswap.autumn.ParserCallStack;
+import norswap.autumn.ParserMetrics;
+import norswap.autumn.RuleProfiler;
 import norswap.autumn.TestFixture;
+import norswap.autumn.input.CodePointInput;
+import norswap.autumn.input.InputSource;
+import norswap.autumn.input.Latin1Input;
+import norswap.autumn.input.MappedInput;
+import norswap.autumn.input.Utf16Input;
+import norswap.autumn.jfr.MemoEvent;
+import norswap.autumn.jfr.ParseEvent;
+import norswap.autumn.jfr.SlowRuleEvent;
 import norswap.autumn.memo.MemoEntry;
+import norswap.autumn.memo.MemoMatrix;
 import norswap.autumn.memo.MemoTable;
+import norswap.autumn.memo.MemoWindow;
+import norswap.autumn.memo.Memoizer;
 import norswap.autumn.parsers.*;
+import norswap.autumn.util.CharClass;
+import norswap.autumn.util.SplitScanner;
+import norswap.autumn.visitors.InputGenerator;
+import norswap.autumn.visitors.SpanFusion;
+import norswap.autumn.visitors.TrieFusion;
 import norswap.utils.Slot;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
 import org.testng.annotations.Test;
 
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.function.Supplier;
 
 import static org.testng.AssertJUnit.assertEquals;
@@ -527,6 +572,114 @@ public final class TestParsers extends DSL
 
     // ---------------------------------------------------------------------------------------------
 
+    @Test public void memo_matrix_implem()
+    {
+        HashMap<Integer, MemoEntry> map = new HashMap<>();
+        Parser[] parsers = { a.get(), b.get(), aa.get() };
+        MemoMatrix matrix = new MemoMatrix(true);
+        int N = 1000_000;
+        int RANGE = 10_000;
+        int SPAN = 100;
+        Random random = new Random();
+
+        for (int i = 0; i < N; ++i)
+        {
+            int pos = random.nextInt(RANGE);
+            int p = random.nextInt(parsers.length);
+            MemoEntry e = matrix.get(parsers[p], pos, null);
+            MemoEntry expected = map.get(pos * parsers.length + p);
+
+            if (expected == null) {
+                assertEquals(null, e);
+                MemoEntry entry = new MemoEntry(
+                    random.nextBoolean(),
+                    parsers[p],
+                    pos,
+                    pos + random.nextInt(SPAN),
+                    Collections.emptyList(),
+                    null);
+                matrix.memoize(entry);
+                map.put(pos * parsers.length + p, entry);
+            } else {
+                assertEquals(expected.parser, e.parser);
+                assertEquals(expected.end_position, e.end_position);
+            }
+        }
+
+        // forgetting slides the ring of chunks along the input
+        matrix = new MemoMatrix(true);
+        for (int pos = 0; pos < 100_000; ++pos)
+        {
+            Integer ctx = pos % 2 == 0 ? pos : null;
+            matrix.memoize(new MemoEntry(
+                true, parsers[pos % 3], pos, pos + 1, Collections.emptyList(), ctx));
+
+            if (pos % 100 == 99) {
+                int old = pos - 51, kept = pos - 50;
+                matrix.forget_before(kept);
+                assertEquals(null, matrix.get(parsers[old % 3], old, old % 2 == 0 ? old : null));
+                MemoEntry e = matrix.get(parsers[kept % 3], kept, kept % 2 == 0 ? kept : null);
+                assertEquals(kept + 1, e.end_position);
+                assertEquals(kept % 2 == 0 ? kept : null, e.ctx);
+            }
+        }
+
+        // results before the forgotten position are not memoized anymore
+        matrix.memoize(new MemoEntry(true, parsers[0], 0, 1, Collections.emptyList(), null));
+        assertEquals(null, matrix.get(parsers[0], 0, null));
+
+        // parsers from the home grammar of the matrix and from elsewhere
+        rule x = str("x"), y = str("y");
+        GrammarIndex.of(choice(x, y).get());
+        Parser[] mixed = { x.get(), a.get(), y.get(), str("z").get() };
+        matrix = new MemoMatrix(true);
+        for (int pos = 0; pos < 3000; ++pos)
+            matrix.memoize(new MemoEntry(
+                true, mixed[pos % 4], pos, pos + pos % 4, Collections.emptyList(), null));
+        for (int pos = 0; pos < 3000; ++pos)
+            for (int p = 0; p < 4; ++p) {
+                MemoEntry e = matrix.get(mixed[p], pos, null);
+                if (p != pos % 4) {
+                    assertEquals(null, e);
+                    continue;
+                }
+                assertEquals(mixed[p], e.parser);
+                assertEquals(pos + p, e.end_position);
+            }
+
+        // shared between rules, with a context
+        ParseState<Memoizer> shared = new ParseState<>("matrix", () -> new MemoMatrix(true));
+        rule amemo = a.memo(shared, p -> p.stack.size());
+        rule bmemo = b.memo(shared);
+        rule = choice(seq(amemo, bmemo, amemo, fail), seq(amemo, bmemo, a));
+        success("aba");
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Test public void memo_window()
+    {
+        MemoWindow window = new MemoWindow(10, false);
+        for (int pos = 0; pos < 100; pos += 5)
+            window.memoize(new MemoEntry(true, null, pos, pos + 5, Collections.emptyList(), null));
+
+        assertEquals(95, window.get(null, 95, null).start_position);
+        assertEquals(85, window.get(null, 85, null).start_position);
+        assertEquals(null, window.get(null, 80, null)); // too far behind
+        assertEquals(null, window.get(null, 10, null)); // too far behind
+        assertEquals(null, window.get(null, 93, null)); // never memoized
+        assertEquals(2L, window.hits);
+        assertEquals(3L, window.misses);
+        assertEquals(2L, window.evicted_hits);
+
+        ParseState<Memoizer> shared = new ParseState<>("window", () -> new MemoWindow(4, true));
+        rule amemo = a.memo(shared);
+        rule = choice(seq(amemo, amemo, amemo, fail), seq(amemo, amemo, a));
+        success("aaa");
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
     @Test public void tokens()
     {
         // Note: this pollutes the DSL state with these tokens, but it's okay since this
@@ -1125,4 +1278,1099 @@ public final class TestParsers extends DSL
     }
 
     // ---------------------------------------------------------------------------------------------
+
+    @Test public void log_rollback()
+    {
+        // Interleaves typed stack entries with a custom side-effect in the log, all of which must
+        // be undone when the first alternative fails.
+
+        ParseState<Slot<Integer>> ctr = new ParseState<>("counter", () -> new Slot<>(0));
+
+        rule = choice(
+            seq(a, a, b, empty.collect().action((p,xs) -> {
+                p.stack.pop(2);
+                p.log.apply(() -> {
+                    ++ ctr.data(p).x;
+                    return () -> -- ctr.data(p).x;
+                });
+                p.stack.push("x");
+                p.stack.pop();
+            }), fail),
+            seq(a, a, b).collect().action((p,xs) ->
+                p.stack.push("" + xs[0] + xs[1] + xs[2] + ctr.data(p).x)));
+
+        success("aab", "aab0");
+
+        // A memoized parser that pops an item pushed before it, then pushes its result: on a memo
+        // hit, its net effect on the stack is replayed.
+
+        rule bb = seq(b, b).collect().lookback(1).push(xs -> "" + xs[0] + xs[1] + xs[2]).memo();
+        rule = choice(seq(a, bb, fail), seq(a, bb));
+        success("abb", "abb");
+
+        // A memoized parser with a custom side-effect between stack operations: on a memo hit, the
+        // side-effect is replayed at the same point, and observes the same value stack.
+
+        ParseState<Slot<Object>> top = new ParseState<>("top", () -> new Slot<>(null));
+        rule xb = str("b").collect().action((p,xs) -> {
+            p.stack.push("x");
+            p.log.apply(() -> {
+                Object old = top.data(p).x;
+                top.data(p).x = p.stack.peek();
+                return () -> top.data(p).x = old;
+            });
+            p.stack.pop();
+        }).memo();
+        rule = choice(
+            seq(a, xb, fail),
+            seq(a, xb).collect().action((p,xs) -> p.stack.push("" + xs[0] + top.data(p).x)));
+        success("ab", "ax");
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Test public void cut()
+    {
+        // cut not reached: the other alternatives are tried
+        rule = choice(seq(a, b.cut()), seq(a, a));
+        success("aa");
+
+        // cut reached: no backtracking
+        rule = choice(seq(a, b.cut(), a), seq(a, b, b));
+        success("aba");
+        failure("abb", 2);
+
+        // the log is committed, but the stack is still usable
+        rule = seq(a.cut(), b.cut(), empty.collect().lookback(2).push(xs -> "" + xs[0] + xs[1]));
+        success("ab", "ab");
+
+        // memoized results before the cut are dropped, later results still usable
+        rule amemo = a.memo(new ParseState<>("matrix", () -> new MemoMatrix(true)));
+        rule = seq(amemo, b.cut(), choice(seq(amemo, b), seq(amemo, a)));
+        success("abaa");
+
+        // cuts inside a left-recursive parser do not commit
+        rule = left_recursive(A -> choice(
+            seq(A, str("+").cut(), a).push(this::pair_concat),
+            a));
+        success("a+a+a", "((a,a),a)");
+
+        // cuts inside a token do not commit, as the tokenizer rolls back each token it tries
+        Tokens tokens = new Tokens(() -> new MemoTable(false));
+        rule ab = rule(tokens.token_parser(seq(a, b.cut()).push(xs -> "" + xs[0] + xs[1]).get()));
+        rule = seq(ab, ab).push(xs -> "" + xs[0] + xs[1]);
+        success("abab", "abab");
+
+        // cuts do not commit while an optional, repetition or outer choice can still backtrack,
+        // whether or not there are side effects to roll back
+        rule c = str("c"), d = str("d");
+        for (rule x: new rule[] { a, str("a") })
+        {
+            rule = seq(seq(x, b.cut(), c).opt(), x, b, d);
+            success("abd");
+            rule = seq(seq(x, b.cut(), c).at_least(0), x, b);
+            success("abcab");
+            rule = choice(seq(choice(seq(x, b.cut(), c), d), d), seq(x, b, d));
+            success("abd");
+            rule = rule(Autumn.compile(seq(seq(x, b.cut(), c).opt(), x, b, d)));
+            success("abd");
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Test public void compiled()
+    {
+        // Without call stack recording, the first parse uses the compiled nodes. A failed first
+        // parse is re-run with call stack recording (i.e. uncompiled): this checks that both
+        // report the same error position.
+        fixture.record_call_stack = false;
+        try {
+            rule = rule(Autumn.compile(seq(a, str("+").opt(), choice(aa, b).at_least(1))));
+            success("aaab");
+            success("a+b");
+            prefix("abaa_", 4);
+            failure("a+", 2);
+            failure("_", 0);
+
+            rule = rule(Autumn.compile(seq(a, alpha.not(), digit.ahead(), any)));
+            success("a1");
+            failure("ab", 1);
+            failure("a_", 1);
+
+            rule = rule(Autumn.compile(choice(seq(a, a), seq(character('a'), b)).memo()));
+            success("ab", "b");
+
+            rule = rule(Autumn.compile(recursive(self -> choice(seq("(", self, ")"), a))));
+            success("((a))", "a");
+            failure("((a)", 4);
+        }
+        finally {
+            fixture.record_call_stack = true;
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Test public void input_sources()
+    {
+        Parser parser = seq(str("é"), alpha.at_least(1).collect().push_string_match(), str("!")).get();
+        ParseOptions options = ParseOptions.get();
+
+        InputSource[] inputs = {
+            InputSource.of("éabc!"),
+            Latin1Input.of("éabc!"),
+            new Utf16Input("éabc!".toCharArray()),
+            new CodePointInput("éabc!".codePoints().toArray())
+        };
+
+        for (InputSource input: inputs) {
+            result = Autumn.parse(parser, input, options);
+            assertEquals(true, result.full_match);
+            assertEquals("abc", result.value_stack.peek());
+        }
+
+        assertEquals(null, Latin1Input.of("\u0100"));
+        assertEquals(Latin1Input.class, InputSource.of("éabc!").getClass());
+        assertEquals(Utf16Input.class, InputSource.of("a\u0100").getClass());
+        assertEquals(CodePointInput.class, InputSource.of("a\uD83D\uDE00").getClass());
+        assertEquals("a\uD83D\uDE00b", InputSource.of("a\uD83D\uDE00b").substring(0, 3));
+        assertEquals(3, InputSource.of("a\uD83D\uDE00b").length());
+
+        // positions are code point indices
+        result = Autumn.parse(seq(str("a\uD83D\uDE00"), str("b")).get(), "a\uD83D\uDE00c", options);
+        assertEquals(2, result.error_position);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Test public void mapped_input() throws IOException
+    {
+        Path path = Files.createTempFile("autumn", ".txt");
+        try {
+            // "é" is two bytes in UTF-8
+            Files.write(path, "ab\n\u00e9ab!".getBytes(StandardCharsets.UTF_8));
+            rule = seq(
+                alpha.at_least(1), str("\n"),
+                range(0x80, 0xFF).at_least(1).collect().push_string_match(),
+                alpha.at_least(1), str("!"));
+
+            result = Autumn.parse(rule, path, ParseOptions.get());
+            assertEquals(true, result.full_match);
+            assertEquals("\u00e9", result.value_stack.peek());
+
+            MappedInput input = MappedInput.map(path);
+            result = Autumn.parse(rule, input, ParseOptions.get());
+            assertEquals(true, result.full_match);
+
+            LineMap map = new LineMap(input);
+            assertEquals(new LineMap.Position(2, 3), map.position_from(5));
+            assertEquals(5, map.offset_from(new LineMap.Position(2, 3)));
+        }
+        finally {
+            Files.delete(path);
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Test public void choice_dispatch()
+    {
+        rule = choice(seq(a, b), seq(str("c"), a), seq(a, a), digit.opt());
+        Autumn.dispatch_choices(rule);
+
+        int[][] table = ((Choice) rule.get()).dispatch();
+        assertEquals(Arrays.asList(0, 2, 3), Arrays.asList(box(table['a'])));
+        assertEquals(Arrays.asList(1, 3),    Arrays.asList(box(table['c'])));
+        assertEquals(Arrays.asList(3),       Arrays.asList(box(table['z'])));
+        assertEquals(Arrays.asList(3),       Arrays.asList(box(table['1'])));
+
+        success("ab");
+        success("aa");
+        success("ca");
+        success("1");
+        prefix("z", 0);
+
+        // recursive alternatives are dispatched on the first characters of the seed
+        rule = left_recursive(A -> choice(
+            seq(A, str("+"), a).push(this::pair_concat),
+            a));
+        Autumn.dispatch_choices(rule);
+        success("a+a+a", "((a,a),a)");
+
+        // a cut that doesn't consume input still prevents trying the next alternatives
+        rule = choice(seq(empty.cut(), b), a);
+        Autumn.dispatch_choices(rule);
+        failure("a");
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Test public void trie_match()
+    {
+        String[] ops = { "+", "++", "+=" };
+
+        rule = rule(new TrieMatch(ops, new Parser[3], false));
+        success("+");
+        prefix("++", 1);
+        failure("-");
+
+        rule = rule(new TrieMatch(ops, new Parser[3], true));
+        success("+");
+        success("++");
+        success("+=");
+        prefix("+-", 1);
+
+        // when the whitespace fails, the next candidate is tried
+        rule = rule(new TrieMatch(new String[] { "ab", "a" }, new Parser[] { fail.get(), null }, false));
+        prefix("ab", 1);
+
+        // runs of literals are fused
+        rule x_ws = rule(new StringMatch("x", usual_whitespace.get()));
+        rule = choice(str("<"), str("<="), a, x_ws, str("y"));
+        Parser fused = TrieFusion.fuse(rule.get());
+        assertEquals("choice(trie([<], [<=]), push_string_match([97]), trie([x], [y]))",
+            fused.toString());
+        rule = rule(fused);
+        prefix("<=", 1);
+        success("a", "a");
+        success("x  ");
+        success("y");
+
+        rule = longest(str("<"), str("<="), str("<<"));
+        assertEquals(TrieMatch.class, TrieFusion.fuse(rule.get()).getClass());
+        rule = rule(TrieFusion.fuse(rule.get()));
+        success("<=");
+        success("<<");
+
+        // whitespace parsers are transformed too
+        rule ws = choice(str(" "), str("\t")).at_least(0);
+        rule = choice(new StringMatch("x", ws.get()), str("y"));
+        TrieMatch trie = (TrieMatch) TrieFusion.fuse(rule.get());
+        assertEquals("repeat(trie([ ], [\\t]), 0)", trie.whitespace[0].toString());
+        assertEquals(0, trie.children().size());
+
+        // the transformation goes through lazy parsers
+        rule = recursive(self -> choice(seq(str("("), self, str(")")), str("x"), str("y")));
+        rule = rule(TrieFusion.fuse(rule.get()));
+        success("((y))");
+        failure("((z))", 2);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Test public void char_classes()
+    {
+        CharClass cls = CharClass.ranges('a', 'f', 0x1F600, 0x1F64F, 'c', 'k', 0x100, 0x100);
+        assertEquals(Arrays.asList(0x61, 0x6B, 0x100, 0x100, 0x1F600, 0x1F64F),
+            Arrays.asList(box(cls.ranges())));
+        assertEquals(true,  cls.test('k'));
+        assertEquals(false, cls.test('l'));
+        assertEquals(true,  cls.test(0x1F610));
+        assertEquals(false, cls.test(0x1F650));
+        assertEquals(false, cls.test(-1));
+
+        assertEquals(CharClass.range('0', '9'), CharClass.of(Character::isDigit).intersection(
+            CharClass.range(0, 0x7F)));
+        assertEquals(false, cls.negate().test(0));
+        assertEquals(true,  cls.negate().test(0x10FFFF));
+        assertEquals(CharClass.ranges('a', 'c', 'x', 'z'),
+            CharClass.range('a', 'z').intersection(CharClass.ranges(0, 'c', 'x', 0x10FFFF)));
+        assertEquals(CharClass.of(), CharClass.range('z', 'a'));
+
+        rule = range('z', 'a');
+        failure("a");
+        failure("z");
+
+        rule = char_union(digit, set("xyz")).at_least(1);
+        success("1x2y");
+        failure("a");
+
+        rule = char_inter(alpha, char_not(set("aeiou"))).at_least(1);
+        success("bcd");
+        prefix("bad", 1);
+
+        // opaque predicates can still be combined
+        rule = char_union(cpred(c -> c == '_'), alpha).at_least(1);
+        success("a_b");
+
+        // nul stands for the end of input and is never matched by a negation
+        rule = char_not(alpha).at_least(0);
+        success("12");
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Test public void span()
+    {
+        rule comment_body = seq(str("*/").not(), any).at_least(0);
+        rule[] rules = {
+            digit.at_least(1),
+            digit.repeat(3),
+            comment_body,
+            seq(str("/*"), comment_body, str("*/")),
+            digit.sep(1, set(",")),
+            digit.sep(0, set(",")),
+            digit.sep_exact(2, set(",")),
+            digit.sep_trailing(0, set(",")),
+        };
+        String[] inputs = { "", "1", "123", "1234", "12a", "1,2", "1,2,", "1,a", ",", "1,2,3",
+            "/* x */", "/* x *", "x */ y" };
+
+        for (rule original: rules)
+        {
+            Parser fused = SpanFusion.fuse(original.get());
+            assertEquals(Span.class, fused instanceof Sequence
+                ? ((Sequence) fused).children().get(1).getClass()
+                : fused.getClass());
+
+            for (String input: inputs) {
+                ParseResult expected = Autumn.parse(original, input, ParseOptions.get());
+                ParseResult actual   = Autumn.parse(fused, input, ParseOptions.get());
+                String msg = original + " on [" + input + "]";
+                assertEquals(msg, expected.success, actual.success);
+                assertEquals(msg, expected.match_size, actual.match_size);
+                assertEquals(msg, expected.error_position, actual.error_position);
+            }
+        }
+
+        // the failing element ends the call stack
+        rule = rule(SpanFusion.fuse(digit.at_least(2).get()));
+        failure("1a", 1);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Test public void scan_until()
+    {
+        rule = seq("/*", scan_until("*/"), "*/");
+        success("/**/");
+        success("/* a * b / c */");
+        prefix("/* a */ b */", 7);
+        failure("/* a *", 6);
+
+        rule = scan_until("ab");
+        success("");
+        success("aaa");
+        prefix("aaab", 2);
+
+        // unicode input
+        rule = seq(scan_until("\uD83D\uDE00"), str("\uD83D\uDE00"));
+        success("a\u00e9b\uD83D\uDE00");
+
+        rule = seq("\"", scan_until(set("\"\n"), '\\'), "\"");
+        success("\"\"");
+        success("\"a\\\"b\"");
+        prefix("\"a\" b", 3);
+        failure("\"a\nb\"", 2);
+        failure("\"a\\", 3);
+
+        rule = scan_until(set("x"), -1);
+        prefix("ab\\xc", 3);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Test public void concurrent_parses() throws Exception
+    {
+        // a grammar using lazy parsers, left-recursion (parse state) and memoization
+        rule lr = left_recursive(A -> choice(seq(A, a).push(this::pair_concat), a));
+        rule group = recursive(self -> choice(
+            seq("(", self.sep(1, ","), ")").push(Arrays::toString),
+            lr.memo()));
+        Parser parser = group.get();
+
+        String[] inputs = new String[200];
+        Random random = new Random(42);
+        for (int i = 0; i < inputs.length; ++i) {
+            StringBuilder b = new StringBuilder();
+            int depth = random.nextInt(4);
+            for (int j = 0; j < depth; ++j) b.append("(");
+            for (int j = 1 + random.nextInt(5); j > 0; --j) b.append("a");
+            for (int j = 0; j < depth; ++j) b.append(random.nextInt(3) == 0 ? ",a)" : ")");
+            inputs[i] = b.toString();
+        }
+
+        ParseMetrics metrics = new ParseMetrics();
+        ParseOptions traced = ParseOptions.metrics(() -> metrics).get();
+        ParseOptions options = ParseOptions.get();
+
+        String[] expected = new String[inputs.length];
+        for (int i = 0; i < inputs.length; ++i) {
+            ParseResult r = Autumn.parse(parser, inputs[i], options);
+            expected[i] = r.match_size + " " + r.value_stack;
+        }
+        ParseMetrics single = new ParseMetrics();
+        Autumn.parse(parser, inputs[0], ParseOptions.metrics(() -> single).get());
+
+        int threads = 8;
+        int rounds = 10;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<String>> futures = new ArrayList<>();
+            for (int t = 0; t < threads * rounds; ++t) {
+                int i0 = t;
+                futures.add(pool.submit(() -> {
+                    for (int i = 0; i < inputs.length; ++i) {
+                        int k = (i + i0) % inputs.length;
+                        ParseResult r = Autumn.parse(parser, inputs[k], options);
+                        String actual = r.match_size + " " + r.value_stack;
+                        if (!actual.equals(expected[k]))
+                            return inputs[k] + ": " + actual + " != " + expected[k];
+                    }
+                    Autumn.parse(parser, inputs[0], traced);
+                    return null;
+                }));
+            }
+            for (Future<String> future: futures)
+                assertEquals(null, future.get());
+        }
+        finally {
+            pool.shutdown();
+        }
+
+        // metrics from concurrent parses are all accounted for
+        assertEquals(single.get(parser).invocations * threads * rounds,
+            metrics.get(parser).invocations);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Test public void parse_all() throws IOException
+    {
+        rule = seq(a.at_least(1), b.opt()).push(xs -> xs.length);
+        List<String> inputs = new ArrayList<>();
+        for (int i = 0; i < 100; ++i)
+            inputs.add(i % 10 == 0
+                ? "c"
+                : new String(new char[1 + i % 7]).replace('\0', 'a') + "b");
+
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            BatchResult batch = Autumn.parse_all(rule, inputs, ParseOptions.get(), pool);
+            assertEquals(100, batch.size());
+            assertEquals(10, batch.failures);
+            for (int i = 0; i < 100; ++i) {
+                ParseResult r = batch.results.get(i);
+                assertEquals(i % 10 != 0, r.full_match);
+                if (r.full_match) assertEquals(2 + i % 7, r.value_stack.peek());
+                assertEquals((long) inputs.get(i).length(), batch.sizes[i]);
+            }
+            assertEquals(true, batch.throughput() > 0);
+
+            // sizes of strings are in UTF-8 bytes
+            batch = Autumn.parse_all(rule, Arrays.asList("a\u00e9\u20ac\ud83d\ude00"),
+                ParseOptions.get(), pool);
+            assertEquals(10L, batch.sizes[0]);
+        }
+        finally {
+            pool.shutdown();
+        }
+
+        // files, streamed to a consumer in input order (default executor)
+        List<Path> paths = new ArrayList<>();
+        try {
+            for (int i = 0; i < 20; ++i) {
+                Path path = Files.createTempFile("autumn", ".txt");
+                paths.add(path);
+                Files.write(path, inputs.get(i).getBytes(StandardCharsets.UTF_8));
+            }
+            List<Integer> sizes = new ArrayList<>();
+            BatchResult batch = Autumn.parse_all(rule.get(), paths.stream(), ParseOptions.get(),
+                null, r -> sizes.add(r.match_size));
+            assertEquals(0, batch.results.size());
+            assertEquals(2, batch.failures);
+            for (int i = 0; i < 20; ++i)
+                assertEquals(i % 10 == 0 ? -1 : inputs.get(i).length(), (int) sizes.get(i));
+        }
+        finally {
+            for (Path path: paths) Files.delete(path);
+        }
+
+        // an input that cannot be read does not abort the batch
+        List<Path> missing = new ArrayList<>();
+        try {
+            for (int i = 0; i < 3; ++i) {
+                Path path = Files.createTempFile("autumn", ".txt");
+                missing.add(path);
+                Files.write(path, inputs.get(1).getBytes(StandardCharsets.UTF_8));
+            }
+            Files.delete(missing.get(1));
+            BatchResult batch = Autumn.parse_all(rule.get(), missing.stream(), ParseOptions.get(),
+                null);
+            assertEquals(3, batch.size());
+            assertEquals(1, batch.failures);
+            assertEquals(true, batch.results.get(0).full_match);
+            assertEquals(false, batch.results.get(1).success);
+            assertEquals(true, batch.results.get(1).thrown != null);
+            assertEquals(0L, batch.sizes[1]);
+            assertEquals(true, batch.results.get(2).full_match);
+        }
+        finally {
+            Files.delete(missing.get(0));
+            Files.delete(missing.get(2));
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Test public void split_repeat()
+    {
+        // JSON-like values, plus <x,y> tuples that the JSON scanner does not know about
+        rule value = recursive(self -> choice(
+            digit.at_least(1).push(xs -> xs.length),
+            seq("\"", scan_until(set("\""), '\\'), "\"").push(xs -> "s"),
+            seq("[", self.sep(0, ","), "]").push(Arrays::toString),
+            seq("<", self.sep(2, ","), ">").push(Arrays::toString)));
+
+        Parser sequential = seq("[", value.sep(0, ","), "]").get();
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        Parser parallel = seq("[",
+            rule(new SplitRepeat(0, value.get(), str(",").get(), SplitScanner.JSON, 8, pool)),
+            "]").get();
+
+        Random random = new Random(42);
+        List<String> inputs = new ArrayList<>(Arrays.asList(
+            "[]", "[1]", "[1,2]", "[1,", "[[1,2],[3]]"));
+        for (int i = 0; i < 50; ++i) {
+            StringBuilder b = new StringBuilder("[");
+            for (int j = 0; j < 40; ++j) {
+                if (j > 0) b.append(',');
+                switch (random.nextInt(5)) {
+                    case 0:  b.append("[1,\"],[\\\",\",[22]]"); break;
+                    case 1:  b.append("<1,2,3>"); break;
+                    default: b.append(random.nextInt(1000));
+                }
+            }
+            // some inputs have an error, some an unbalanced bracket
+            if (i % 5 == 1) b.append(",x");
+            if (i % 5 == 2) b.insert(b.length() / 2, '[');
+            b.append(']');
+            inputs.add(b.toString());
+        }
+
+        try {
+            for (String input: inputs) {
+                ParseResult expected = Autumn.parse(sequential, input, ParseOptions.get());
+                ParseResult actual   = Autumn.parse(parallel, input, ParseOptions.get());
+                assertEquals(input, expected.full_match, actual.full_match);
+                assertEquals(input, expected.match_size, actual.match_size);
+                assertEquals(input, expected.error_position, actual.error_position);
+                assertEquals(input, "" + expected.value_stack, "" + actual.value_stack);
+            }
+        }
+        finally {
+            pool.shutdown();
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Test(timeOut = 60_000) public void split_repeat_nested()
+    {
+        // nested split repetitions on a small bounded pool must not deadlock
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        rule value = recursive(self -> choice(
+            digit.at_least(1).push(xs -> xs.length),
+            seq("[", rule(new SplitRepeat(0, self.get(), str(",").get(), SplitScanner.JSON, 8,
+                pool)), "]").push(Arrays::toString)));
+        Parser sequential = recursive(self -> choice(
+            digit.at_least(1).push(xs -> xs.length),
+            seq("[", self.sep(0, ","), "]").push(Arrays::toString))).get();
+
+        Random random = new Random(42);
+        List<String> inputs = new ArrayList<>();
+        List<ParseResult> expected_results = new ArrayList<>();
+        try {
+            for (int i = 0; i < 20; ++i) {
+                StringBuilder b = new StringBuilder("[");
+                for (int j = 0; j < 30; ++j) {
+                    if (j > 0) b.append(',');
+                    b.append('[');
+                    for (int k = 0; k < 20; ++k)
+                        b.append(k > 0 ? "," : "").append(random.nextInt(1000));
+                    b.append(']');
+                }
+                if (i % 4 == 1) b.append(",x");
+                b.append(']');
+                String input = b.toString();
+                ParseResult expected = Autumn.parse(sequential, input, ParseOptions.get());
+                ParseResult actual   = Autumn.parse(value, input, ParseOptions.get());
+                assertEquals(input, expected.full_match, actual.full_match);
+                assertEquals(input, expected.error_position, actual.error_position);
+                assertEquals(input, "" + expected.value_stack, "" + actual.value_stack);
+                inputs.add(input);
+                expected_results.add(expected);
+            }
+
+            // the parses themselves run on the pool that parses the chunks
+            BatchResult batch = Autumn.parse_all(value, inputs, ParseOptions.get(), pool);
+            for (int i = 0; i < inputs.size(); ++i) {
+                ParseResult expected = expected_results.get(i);
+                ParseResult actual = batch.results.get(i);
+                assertEquals(inputs.get(i), expected.full_match, actual.full_match);
+                assertEquals(inputs.get(i), "" + expected.value_stack, "" + actual.value_stack);
+            }
+        }
+        finally {
+            pool.shutdown();
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Test public void incremental_parse()
+    {
+        int[] calls = { 0 };
+        rule digits = cpred(c -> { ++ calls[0]; return '0' <= c && c <= '9'; }).at_least(1);
+        rule item = choice(
+            seq(digits, ";").push(xs -> "n"),
+            seq("(", digits, "+", digits, ")", ";").push(xs -> "p")).memo();
+        rule list = seq(item.at_least(0), "end");
+
+        StringBuilder b = new StringBuilder();
+        for (int i = 0; i < 200; ++i)
+            b.append(i % 10 == 0 ? "(" + i + "+1);" : i + ";");
+        b.append("end");
+
+        IncrementalParse inc = new IncrementalParse(list, b.toString(), ParseOptions.get());
+        assertEquals(true, inc.result().full_match);
+        int full_calls = calls[0];
+
+        calls[0] = 0;
+        inc.edit(b.indexOf("151;"), 0, "7");
+        assertEquals(true, inc.result().full_match);
+        assertEquals(true, calls[0] < 20 && full_calls > 500);
+
+        Random random = new Random(42);
+        for (int i = 0; i < 50; ++i)
+        {
+            int length = inc.text().length();
+            int offset = random.nextInt(length);
+            int removed = random.nextInt(Math.min(4, length - offset + 1));
+            String inserted = new String[] { "", "7", "1;", ";", "(2+" }[random.nextInt(5)];
+
+            boolean was_full = inc.result().full_match;
+            calls[0] = 0;
+            ParseResult actual = inc.edit(offset, removed, inserted);
+            int incremental_calls = calls[0];
+            ParseResult expected = Autumn.parse(list, inc.text(), ParseOptions.get());
+            String msg = "edit " + i + ": " + inc.text();
+
+            assertEquals(msg, expected.success, actual.success);
+            assertEquals(msg, expected.match_size, actual.match_size);
+            assertEquals(msg, "" + expected.value_stack, "" + actual.value_stack);
+            // if the whole input was memoized, only the items around the edit are reparsed
+            if (was_full) assertEquals(msg, true, incremental_calls < 40);
+        }
+
+        // compiled grammars run their original graph, so their results are reused in the same way
+        rule compiled = rule(Autumn.compile(list.get()));
+        inc = new IncrementalParse(compiled, b.toString(), ParseOptions.get());
+        assertEquals(true, inc.result().full_match);
+
+        calls[0] = 0;
+        inc.edit(b.indexOf("151;"), 0, "7");
+        assertEquals(true, inc.result().full_match);
+        assertEquals(true, calls[0] < 20);
+
+        calls[0] = 0;
+        inc.edit(b.indexOf("(10+1);"), 1, "");
+        assertEquals(false, inc.result().full_match);
+        assertEquals(Autumn.parse(list, inc.text(), ParseOptions.get()).match_size,
+            inc.result().match_size);
+        assertEquals(true, calls[0] < 40);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Test public void two_phase()
+    {
+        List<Boolean> phases = new ArrayList<>();
+        rule lr = left_recursive(A -> choice(seq(A, "+", digit).push(this::pair_concat), digit));
+        rule root = seq(
+            context(p -> phases.add(p.track_errors)),
+            choice(seq("(", lr, ")"), seq(lr, str("!").not())).push(xs -> xs[0]),
+            str(";").opt());
+
+        String[] inputs = { "1", "1+2", "(1+2)", "(1+2", "1+", "1+2!", "1;", "x", "" };
+        ParseOptions[] options = {
+            ParseOptions.get(),
+            ParseOptions.record_call_stack(true).get() };
+
+        for (ParseOptions normal: options)
+        {
+            ParseOptions two_phase = ParseOptions.builder()
+                .record_call_stack(normal.record_call_stack)
+                .two_phase(true)
+                .get();
+
+            for (String input: inputs) {
+                ParseResult expected = Autumn.parse(root, input, normal);
+                phases.clear();
+                ParseResult actual = Autumn.parse(root, input, two_phase);
+                assertEquals(input, expected.success, actual.success);
+                assertEquals(input, expected.full_match, actual.full_match);
+                assertEquals(input, expected.match_size, actual.match_size);
+                assertEquals(input, expected.error_position, actual.error_position);
+                assertEquals(input, expected.error_message, actual.error_message);
+                assertEquals(input, "" + expected.value_stack, "" + actual.value_stack);
+                assertEquals(input, "" + expected.error_call_stack, "" + actual.error_call_stack);
+                assertEquals(input, two_phase, actual.options);
+                // the diagnostic phase only runs if the input is not fully matched
+                assertEquals(input, expected.full_match
+                    ? Collections.singletonList(false)
+                    : Arrays.asList(false, true), phases);
+            }
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Test public void call_stack()
+    {
+        ParserCallStack stack = new ParserCallStack();
+        stack.push(a.get(), 0);
+        stack.push(b.get(), 1);
+        ParserCallStack snapshot = stack.clone();
+        stack.pop();
+        stack.push(digit.get(), 2);
+
+        assertEquals(2, snapshot.size());
+        assertEquals(b.get(), snapshot.peek().parser);
+        assertEquals(stack.peek().caller, snapshot.peek().caller);
+        assertEquals(false, stack.equals(snapshot));
+        stack.pop();
+        snapshot.pop();
+        assertEquals(stack, snapshot);
+
+        // deeply nested input: the error call stack holds a frame per invocation
+        rule nested = recursive(self -> choice(seq("(", self, ")"), a));
+        int depth = 500;
+        StringBuilder input = new StringBuilder();
+        for (int i = 0; i < depth; ++i) input.append('(');
+        input.append('b');
+
+        ParseResult r = Autumn.parse(nested, input.toString(),
+            ParseOptions.record_call_stack(true).get());
+        assertEquals(depth, r.error_position);
+        ParserCallFrame[] frames = r.error_call_stack.frames();
+        assertEquals(r.error_call_stack.size(), frames.length);
+        assertEquals(nested.get(), frames[0].parser);
+        assertEquals(0, frames[0].position);
+        assertEquals(depth, frames[frames.length - 1].position);
+        for (int i = 1; i < frames.length; ++i)
+            assertEquals(frames[i - 1], frames[i].caller);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Test public void parse_metrics()
+    {
+        // created before the parsers: the metrics arrays are sized by the first traced grammar
+        ParseMetrics metrics = new ParseMetrics();
+        rule nested = recursive(self -> choice(seq("(", self, ")"), a));
+        rule root = seq(nested, str("!").opt());
+        ParseOptions traced = ParseOptions.metrics(() -> metrics).get();
+
+        Autumn.parse(root, "((a))", traced);
+        Autumn.parse(root, "((a))!", traced);
+
+        Map<Parser, ParserMetrics> map = metrics.metrics();
+        assertEquals(2, map.get(root.get()).invocations);
+        assertEquals(6, map.get(nested.get()).invocations);
+        assertEquals(6, metrics.get(nested.get()).invocations);
+        assertEquals(null, metrics.get(digit.get()));
+
+        long self_times = 0;
+        for (ParserMetrics m: map.values()) {
+            assertEquals(true, m.self_time <= m.total_time);
+            self_times += m.self_time;
+        }
+
+        // the self times of all invocations add up to the time of the root invocations
+        assertEquals(map.get(root.get()).total_time, self_times);
+        // recursive invocations are only counted once in the total time
+        assertEquals(true, map.get(nested.get()).total_time <= map.get(root.get()).total_time);
+
+        // parsers have compact ids in each grammar, and metrics aggregate across grammars
+        GrammarIndex index = GrammarIndex.of(root.get());
+        assertEquals(0, index.id(root.get()));
+        assertEquals(-1, index.id(digit.get()));
+        assertEquals(true, index.size() < 20);
+        rule other = seq("[", nested, "]");
+        Autumn.parse(other, "[(a)]", traced);
+        assertEquals(8, metrics.get(nested.get()).invocations);
+        assertEquals(1, metrics.get(other.get()).invocations);
+        assertEquals(2, metrics.get(root.get()).invocations);
+
+        // a parser shared between grammars has a distinct id in each of them
+        GrammarIndex other_index = GrammarIndex.of(other.get());
+        assertEquals(nested.get(), index.parser(index.id(nested.get())));
+        assertEquals(nested.get(), other_index.parser(other_index.id(nested.get())));
+        assertEquals(0, other_index.id(other.get()));
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Test public void parse_state_slots() throws Exception
+    {
+        // states shared by grammars used in alternation, on multiple threads
+        ParseState<Slot<Integer>> ctr = new ParseState<>("counter", () -> new Slot<>(0));
+        ParseState<Slot<Integer>> ctr2 = new ParseState<>("counter2", () -> new Slot<>(0));
+        rule x = str("x").collect().action((p, xs) -> p.log.apply(() -> {
+            ++ ctr.data(p).x;
+            return () -> -- ctr.data(p).x;
+        }));
+        rule y = str("y").collect().action((p, xs) -> p.log.apply(() -> {
+            ++ ctr2.data(p).x;
+            return () -> -- ctr2.data(p).x;
+        }));
+        rule one = seq(x.at_least(0), y.at_least(0));
+        rule two = seq(y.at_least(0), x.at_least(0));
+
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 4; ++t)
+                futures.add(pool.submit(() -> {
+                    for (int i = 1; i < 500; ++i) {
+                        ParseResult r1 = Autumn.parse(one, "xxxy", ParseOptions.get());
+                        ParseResult r2 = Autumn.parse(two, "yyx", ParseOptions.get());
+                        assertEquals(3, (int) r1.<Slot<Integer>>parse_state("counter").x);
+                        assertEquals(1, (int) r1.<Slot<Integer>>parse_state("counter2").x);
+                        assertEquals(1, (int) r2.<Slot<Integer>>parse_state("counter").x);
+                        assertEquals(2, (int) r2.<Slot<Integer>>parse_state("counter2").x);
+                    }
+                }));
+            for (Future<?> future: futures)
+                future.get();
+        }
+        finally {
+            pool.shutdown();
+        }
+
+        // slots are numbered per grammar: a parse only holds slots for the states of its grammar,
+        // no matter how many parse states were created before
+        Field slots = Parse.class.getDeclaredField("state_slots");
+        slots.setAccessible(true);
+        List<Integer> sizes = new ArrayList<>();
+        for (int i = 0; i < 1000; ++i) {
+            rule memo = str("x").memo();
+            rule ys = left_recursive(self -> choice(seq(self, "y"), str("y")));
+            rule root = seq(memo, memo, ys, context(p -> {
+                try {
+                    sizes.add(((Object[]) slots.get(p)).length);
+                    return true;
+                }
+                catch (IllegalAccessException e) {
+                    throw new AssertionError(e);
+                }
+            }));
+            assertEquals(3, GrammarIndex.of(root.get()).state_count());
+            assertEquals(true, Autumn.parse(root, "xxyy", ParseOptions.get()).full_match);
+        }
+        assertEquals(Collections.nCopies(1000, 3), sizes);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Test public void parse_stats()
+    {
+        rule x = str("x").push($ -> "x");
+        rule root = choice(seq(x, x, "y"), seq(x, x));
+        ParseOptions counters = ParseOptions.counters(true).get();
+
+        assertEquals(null, Autumn.parse(root, "xx", ParseOptions.get()).stats);
+        ParseStats stats = Autumn.parse(root, "xx", counters).stats;
+        assertEquals(2L, stats.failures); // "y" and the first sequence
+        assertEquals(2L, stats.backtracked);
+        assertEquals(2, stats.peak_stack_size);
+        // the log entries of the first two items are rolled back
+        int log_size = Autumn.parse(seq(x, x), "xx", counters).stats.peak_log_size;
+        assertEquals((long) log_size, stats.rolled_back);
+        assertEquals(log_size, stats.peak_log_size);
+        assertEquals(0L, stats.memo_lookups);
+
+        // every invocation is counted, as in tracing mode
+        ParseMetrics metrics = new ParseMetrics();
+        ParseOptions both = ParseOptions.counters(true).metrics(() -> metrics).get();
+        stats = Autumn.parse(root, "xx", both).stats;
+        long invocations = 0;
+        for (ParserMetrics m: metrics.metrics().values())
+            invocations += m.invocations;
+        assertEquals(invocations, stats.invocations);
+
+        rule xm = x.memo();
+        stats = Autumn.parse(choice(seq(xm, "y"), xm), "x", counters).stats;
+        assertEquals(2L, stats.memo_lookups);
+        assertEquals(1L, stats.memo_hits);
+        assertEquals(1L, stats.memo_stores);
+
+        // a failing two-phase parse reports the counts of its second phase only
+        ParseOptions two_phase = ParseOptions.counters(true).two_phase(true).get();
+        long single = Autumn.parse(root, "xy", counters).stats.invocations;
+        assertEquals(single, Autumn.parse(root, "xy", two_phase).stats.invocations);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Test public void rule_profiler() throws InterruptedException
+    {
+        rule spin = cpred(c -> {
+            long t0 = System.nanoTime();
+            while (System.nanoTime() - t0 < 10_000);
+            return c == 'x';
+        });
+        rule item = spin.at_least(1);
+        rule root = item.sep(0, ",");
+        item.get().set_rule("item");
+        root.get().set_rule("root");
+
+        StringBuilder b = new StringBuilder();
+        for (int i = 0; i < 100; ++i) b.append(i == 0 ? "" : ",").append("xx");
+        String input = b.toString();
+
+        RuleProfiler profiler = new RuleProfiler(Duration.ofMillis(1));
+        ParseOptions options = ParseOptions.profiler(profiler).get();
+        ParseResult expected = Autumn.parse(root, input, ParseOptions.get());
+
+        profiler.start();
+        try {
+            long deadline = System.nanoTime() + 10_000_000_000L;
+            while (profiler.samples() < 10 && System.nanoTime() < deadline) {
+                ParseResult r = Autumn.parse(root, input, options);
+                assertEquals(expected.match_size, r.match_size);
+            }
+        }
+        finally {
+            profiler.stop();
+        }
+
+        // unnamed parsers do not appear, rules appear within their callers
+        for (List<String> path: profiler.path_samples().keySet())
+            assertEquals("" + path, true,
+                path.equals(Collections.singletonList("root"))
+                    || path.equals(Arrays.asList("root", "item")));
+
+        long samples = profiler.samples();
+        assertEquals(true, samples >= 10);
+        assertEquals(samples, (long) profiler.total_samples().get("root"));
+        assertEquals(true, profiler.self_samples().get("item") > 0);
+
+        String collapsed = profiler.collapsed_stacks();
+        assertEquals(true, collapsed.contains("root;item "));
+        long sum = 0;
+        for (String line: collapsed.split("\n"))
+            sum += Long.parseLong(line.substring(line.lastIndexOf(' ') + 1));
+        assertEquals(samples, sum);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Test public void jfr_events() throws IOException
+    {
+        rule item = str("x").memo();
+        rule root = item.sep(0, ",");
+        item.get().set_rule("item");
+        root.get().set_rule("root");
+
+        Path file = Files.createTempFile("autumn", ".jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable(ParseEvent.class);
+            recording.enable(MemoEvent.class);
+            recording.enable(SlowRuleEvent.class).withThreshold(Duration.ZERO);
+            recording.start();
+            Autumn.parse(root, "x,x,x", ParseOptions.get());
+            Autumn.parse(root, "x,x,x", ParseOptions.jfr(true).get());
+            recording.stop();
+            recording.dump(file);
+        }
+
+        Map<String, List<RecordedEvent>> events = new HashMap<>();
+        for (RecordedEvent event: RecordingFile.readAllEvents(file))
+            events.computeIfAbsent(event.getEventType().getName(), k -> new ArrayList<>())
+                .add(event);
+        Files.delete(file);
+
+        // only the parse with the option emits events
+        List<RecordedEvent> parses = events.get("norswap.autumn.Parse");
+        assertEquals(1, parses.size());
+        assertEquals("root", parses.get(0).getString("parser"));
+        assertEquals(5, parses.get(0).getInt("input_size"));
+        assertEquals(true, parses.get(0).getBoolean("full_match"));
+        assertEquals(true, parses.get(0).getLong("invocations") > 0);
+
+        List<RecordedEvent> memos = events.get("norswap.autumn.Memo");
+        assertEquals(1, memos.size());
+        assertEquals("MemoTable", memos.get(0).getString("memoizer"));
+        assertEquals(3, memos.get(0).getInt("entries"));
+
+        // with a zero threshold, every rule invocation is reported
+        List<RecordedEvent> rules = events.get("norswap.autumn.SlowRule");
+        assertEquals(4, rules.size());
+        int items = 0;
+        for (RecordedEvent event: rules)
+            if (event.getString("rule").equals("item")) ++ items;
+        assertEquals(3, items);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    @Test public void input_generator()
+    {
+        rule number = seq(character('0').not(), digit.at_least(1));
+        rule keyword = choice("true", "false");
+        rule list = recursive(self -> seq("[", choice(number, keyword, self).sep(0, ","), "]"));
+
+        // generated inputs are valid, and the same seed yields the same inputs
+        List<String> inputs = new InputGenerator(42).corpus(list.get(), 10_000, 100);
+        assertEquals(inputs, new InputGenerator(42).corpus(list.get(), 10_000, 100));
+        int size = 0;
+        for (String input: inputs) {
+            assertEquals(true, Autumn.parse(list, input, ParseOptions.get()).full_match);
+            size += input.length();
+        }
+        assertEquals(true, size >= 10_000);
+
+        // the lookahead is honored even without validation: no leading zeroes
+        InputGenerator unchecked = new InputGenerator(42);
+        String all = "";
+        for (int i = 0; i < 100; ++i)
+            all += unchecked.generate(list.get(), 100);
+        assertEquals(true, all.contains("0"));
+        assertEquals(false, all.matches("(?s).*[\\[,]0.*"));
+
+        // closing mode: the shallowest derivation once the target size is reached
+        assertEquals("[]", new InputGenerator(42).generate(list.get(), 0));
+
+        // nesting is bounded by the maximum depth
+        for (String input: new InputGenerator(42).max_depth(2).corpus(list.get(), 10_000, 1000)) {
+            int depth = 0, max = 0;
+            for (char c: input.toCharArray())
+                if (c == '[') max = Math.max(max, ++ depth);
+                else if (c == ']') -- depth;
+            assertEquals(true, max <= 3);
+        }
+
+        InputGenerator generator = new InputGenerator(42)
+            .max_repeat(8)
+            .weights(keyword.get(), 0, 1)
+            .override(number.get(), random -> "" + random.nextInt(10));
+        all = String.join(" ", generator.corpus(list.get(), 10_000, 100));
+        assertEquals(false, all.contains("true"));
+        assertEquals(true, all.contains("false"));
+        assertEquals(true, all.matches("[\\[\\],0-9a-z ]*"));
+        assertEquals(false, all.matches("(?s).*[0-9][0-9].*"));
+
+        assertEquals("[]", new InputGenerator(42).max_repeat(0).generate(list.get(), 1000));
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private static Integer[] box (int[] array) {
+        return Arrays.stream(array).boxed().toArray(Integer[]::new);
+    }
+
+    // ---------------------------------------------------------------------------------------------
 }
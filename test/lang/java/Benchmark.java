@@ -102,7 +102,7 @@ public final class Benchmark
 
     public void pretty_print_trace()
     {
-        parse_metrics.metrics.entrySet().stream()
+        parse_metrics.metrics().entrySet().stream()
             .sorted(Comparator.comparingLong(
                 (Map.Entry<Parser, ParserMetrics> it) -> it.getValue().self_time).reversed())
             .forEach(it -> {
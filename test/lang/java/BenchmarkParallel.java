@@ -0,0 +1,69 @@
+package lang.java;
+
+import norswap.autumn.Autumn;
+import norswap.autumn.BatchResult;
+import norswap.autumn.ParseOptions;
+import norswap.lang.java.Grammar;
+import norswap.utils.IO;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Parses a Java corpus in parallel using {@link Autumn#parse_all}, comparing against {@link
+ * Benchmark}, which parses files one by one.
+ *
+ * <p>Usage: {@code BenchmarkParallel <corpus path> [threads]}.
+ */
+public final class BenchmarkParallel
+{
+    // ---------------------------------------------------------------------------------------------
+
+    private static final int iter_count = 3;
+
+    // ---------------------------------------------------------------------------------------------
+
+    public static void main (String[] args) throws IOException
+    {
+        if (args.length == 0) {
+            System.out.println("Usage: BenchmarkParallel <corpus path> [threads]");
+            return;
+        }
+
+        int threads = args.length > 1
+            ? Integer.parseInt(args[1])
+            : Runtime.getRuntime().availableProcessors();
+
+        Grammar grammar = new Grammar();
+        List<Path> paths = IO.glob("**/*.java", Paths.get(args[0]));
+        ForkJoinPool pool = new ForkJoinPool(threads);
+
+        // Perform well-formed check only once!
+        Autumn.parse(grammar.root, "class Test {}", ParseOptions.get());
+        ParseOptions options = ParseOptions.well_formedness_check(false).get();
+
+        try {
+            for (int i = 0; i < iter_count; ++i) {
+                BatchResult result = Autumn.parse_all(grammar.root, paths.stream(), options, pool);
+                System.out.println(result);
+
+                long slowest = 0;
+                int slowest_index = 0;
+                for (int j = 0; j < result.size(); ++j)
+                    if (result.parse_times[j] > slowest)
+                        slowest = result.parse_times[slowest_index = j];
+
+                System.out.println("Slowest file: " + paths.get(slowest_index)
+                    + " (" + Duration.ofNanos(slowest) + ")");
+            }
+        }
+        finally {
+            pool.shutdown();
+        }
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
@@ -109,7 +109,7 @@ public final class BenchmarkTokens
 
     public void pretty_print_trace()
     {
-        parse_metrics.metrics.entrySet().stream()
+        parse_metrics.metrics().entrySet().stream()
             .sorted(Comparator.comparingLong(
                 (Map.Entry<Parser, ParserMetrics> it) -> it.getValue().self_time).reversed())
             .forEach(it -> {
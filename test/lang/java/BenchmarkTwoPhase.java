@@ -0,0 +1,101 @@
+package lang.java;
+
+import norswap.autumn.Autumn;
+import norswap.autumn.DSL;
+import norswap.autumn.ParseOptions;
+import norswap.autumn.ParseResult;
+import norswap.lang.java.Grammar;
+import norswap.lang.java.GrammarFast;
+import norswap.utils.IO;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compares normal parsing against {@link ParseOptions#two_phase} parsing on a Java corpus, with and
+ * without {@link ParseOptions#record_call_stack}.
+ *
+ * <p>The files are read in memory beforehand, so that only parsing is timed. Each configuration
+ * is run {@code iter_count} times, alternating between configurations to spread out JIT and GC
+ * effects; the best time is reported.
+ *
+ * <p>Usage: {@code BenchmarkTwoPhase <corpus path>}.
+ */
+public final class BenchmarkTwoPhase
+{
+    // ---------------------------------------------------------------------------------------------
+
+    private static final int iter_count = 5;
+
+    // ---------------------------------------------------------------------------------------------
+
+    private static long time (DSL.rule root, List<String> inputs, ParseOptions options)
+    {
+        long t0 = System.nanoTime();
+        int failures = 0;
+        for (String input: inputs) {
+            ParseResult result = Autumn.parse(root, input, options);
+            if (!result.full_match) ++ failures;
+        }
+        long time = System.nanoTime() - t0;
+        if (failures > 0)
+            System.out.println("  (" + failures + " files failed to parse)");
+        return time;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    public static void run (String name, DSL.rule root, List<String> inputs)
+    {
+        // Perform well-formed check only once!
+        Autumn.parse(root, "class Test {}", ParseOptions.get());
+
+        String[] labels = {
+            "normal",
+            "two-phase",
+            "normal + call stack",
+            "two-phase + call stack" };
+
+        ParseOptions[] options = new ParseOptions[labels.length];
+        for (int i = 0; i < options.length; ++i)
+            options[i] = ParseOptions
+                .well_formedness_check(false)
+                .two_phase(i % 2 == 1)
+                .record_call_stack(i >= 2)
+                .get();
+
+        long[] best = new long[labels.length];
+        for (int iter = 0; iter < iter_count; ++iter)
+            for (int i = 0; i < options.length; ++i) {
+                long time = time(root, inputs, options[i]);
+                if (iter == 0 || time < best[i]) best[i] = time;
+            }
+
+        System.out.println(name + ": " + inputs.size() + " files");
+        for (int i = 0; i < labels.length; ++i)
+            System.out.println(String.format("  %-24s %s (%.1f%% of normal)",
+                labels[i], Duration.ofNanos(best[i]), 100.0 * best[i] / best[0]));
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    public static void main (String[] args) throws IOException
+    {
+        if (args.length == 0) {
+            System.out.println("Usage: BenchmarkTwoPhase <corpus path>");
+            return;
+        }
+
+        List<String> inputs = new ArrayList<>();
+        for (Path path: IO.glob("**/*.java", Paths.get(args[0])))
+            inputs.add(IO.slurp("" + path));
+
+        run("Grammar", new Grammar().root, inputs);
+        run("GrammarFast", new GrammarFast().root, inputs);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}
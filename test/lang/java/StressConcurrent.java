@@ -0,0 +1,122 @@
+package lang.java;
+
+import norswap.autumn.Autumn;
+import norswap.autumn.DSL;
+import norswap.autumn.ParseMetrics;
+import norswap.autumn.ParseOptions;
+import norswap.autumn.ParseResult;
+import norswap.lang.java.Grammar;
+import norswap.lang.java.GrammarFast;
+import norswap.utils.IO;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Parses a Java corpus with a single grammar instance shared between N threads, and checks that
+ * the results are identical to those of single-threaded parsing.
+ *
+ * <p>Usage: {@code StressConcurrent <corpus path> [threads]}. Each file is parsed by every thread
+ * (in a different order on each thread), with tracing enabled on one thread out of two.
+ */
+public final class StressConcurrent
+{
+    // ---------------------------------------------------------------------------------------------
+
+    public static void run (String name, DSL.rule root, List<String> inputs, int threads)
+        throws InterruptedException, ExecutionException
+    {
+        ParseOptions options = ParseOptions.well_formedness_check(false).get();
+        ParseMetrics metrics = new ParseMetrics();
+        ParseOptions traced = ParseOptions
+            .well_formedness_check(false)
+            .metrics(() -> metrics)
+            .get();
+
+        // Perform well-formed check only once!
+        Autumn.parse(root, "class Test {}", ParseOptions.get());
+
+        long t0 = System.nanoTime();
+        String[] expected = new String[inputs.size()];
+        for (int i = 0; i < expected.length; ++i)
+            expected[i] = summary(Autumn.parse(root, inputs.get(i), options));
+        long single = System.nanoTime() - t0;
+
+        AtomicInteger mismatches = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        long t1 = System.nanoTime();
+
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; ++t) {
+                int offset = t * expected.length / threads;
+                ParseOptions opts = t % 2 == 0 ? options : traced;
+                futures.add(pool.submit(() -> {
+                    for (int i = 0; i < expected.length; ++i) {
+                        int k = (i + offset) % expected.length;
+                        String actual = summary(Autumn.parse(root, inputs.get(k), opts));
+                        if (!actual.equals(expected[k])) {
+                            mismatches.incrementAndGet();
+                            System.out.println(name + ": mismatch on input " + k);
+                        }
+                    }
+                }));
+            }
+            for (Future<?> future: futures)
+                future.get();
+        }
+        finally {
+            pool.shutdown();
+        }
+
+        long multi = System.nanoTime() - t1;
+
+        System.out.println(name + ": " + expected.length + " files, " + threads + " threads");
+        System.out.println("  single-threaded pass: " + Duration.ofNanos(single));
+        System.out.println("  concurrent passes:    " + Duration.ofNanos(multi));
+        System.out.println("  traced parsers:       " + metrics.metrics().size());
+        System.out.println("  mismatches:           " + mismatches.get());
+
+        if (mismatches.get() > 0)
+            throw new AssertionError(name + ": concurrent results differ from sequential results");
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    private static String summary (ParseResult result)
+    {
+        return result.full_match
+            ? "ok " + result.value_stack
+            : "fail " + result.error_position + " " + result.thrown;
+    }
+
+    // ---------------------------------------------------------------------------------------------
+
+    public static void main (String[] args) throws Exception
+    {
+        if (args.length == 0) {
+            System.out.println("Usage: StressConcurrent <corpus path> [threads]");
+            return;
+        }
+
+        int threads = args.length > 1
+            ? Integer.parseInt(args[1])
+            : Runtime.getRuntime().availableProcessors();
+
+        List<String> inputs = new ArrayList<>();
+        for (Path path: IO.glob("**/*.java", Paths.get(args[0])))
+            inputs.add(IO.slurp("" + path));
+
+        run("Grammar", new Grammar().root, inputs, threads);
+        run("GrammarFast", new GrammarFast().root, inputs, threads);
+    }
+
+    // ---------------------------------------------------------------------------------------------
+}